@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.model.GeocodingResult;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Replays a synthetic vehicle trace through a {@link ReverseGeocodingCache} of each precision, to
+ * help choose one. The trace clusters the way fleet telemetry does: vehicles parked at depots,
+ * driving along highways, and spread around a city center, with a few meters of GPS noise. Run with
+ * {@code ./gradlew jmh}; the hit rate of each precision is {@code hits / (hits + misses)}, from the
+ * counters reported next to the time per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReverseGeocodingCacheBenchmark {
+  private static final double METERS_PER_DEGREE = 111_320;
+  private static final double CENTER_LAT = -33.8688;
+  private static final double CENTER_LNG = 151.2093;
+  private static final double GPS_NOISE_METERS = 4;
+  private static final GeocodingResult[] RESULT = new GeocodingResult[0];
+
+  /** The precision of the grid: cells are about 110 m high at 3, 11 m at 4 and 1.1 m at 5. */
+  @Param({"3", "4", "5"})
+  public int precision;
+
+  @Param({"100000"})
+  public int maxCells;
+
+  private ReverseGeocodingCache cache;
+  private Random random;
+  private double[][] depots;
+  private double[][] highways;
+
+  /** The outcome of the lookups, reported by JMH as events per iteration. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class HitRate {
+    public long hits;
+    public long misses;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cache = new ReverseGeocodingCache(precision, maxCells, 1, TimeUnit.DAYS);
+    random = new Random(42);
+    depots = new double[20][];
+    for (int i = 0; i < depots.length; i++) {
+      depots[i] = offset(CENTER_LAT, CENTER_LNG, gaussian(20_000), gaussian(20_000));
+    }
+    // Each highway runs 50 km from somewhere near the center, in a random direction.
+    highways = new double[5][];
+    for (int i = 0; i < highways.length; i++) {
+      double[] start = offset(CENTER_LAT, CENTER_LNG, gaussian(5_000), gaussian(5_000));
+      double bearing = random.nextDouble() * 2 * Math.PI;
+      double[] end =
+          offset(start[0], start[1], 50_000 * Math.cos(bearing), 50_000 * Math.sin(bearing));
+      highways[i] = new double[] {start[0], start[1], end[0], end[1]};
+    }
+  }
+
+  @Benchmark
+  public GeocodingResult[] lookUp(HitRate hitRate) {
+    double[] location = nextLocation();
+    String key = cache.cell(location[0], location[1]);
+    GeocodingResult[] results = cache.get(key);
+    if (results == null) {
+      hitRate.misses++;
+      cache.put(key, RESULT);
+      return RESULT;
+    }
+    hitRate.hits++;
+    return results;
+  }
+
+  /** @return The next location of the trace: 40% at depots, 40% on highways, 20% downtown. */
+  private double[] nextLocation() {
+    double kind = random.nextDouble();
+    double[] location;
+    if (kind < 0.4) {
+      location = depots[random.nextInt(depots.length)];
+    } else if (kind < 0.8) {
+      double[] highway = highways[random.nextInt(highways.length)];
+      double along = random.nextDouble();
+      location =
+          new double[] {
+            highway[0] + (highway[2] - highway[0]) * along,
+            highway[1] + (highway[3] - highway[1]) * along
+          };
+    } else {
+      location = offset(CENTER_LAT, CENTER_LNG, gaussian(1_500), gaussian(1_500));
+    }
+    return offset(location[0], location[1], gaussian(GPS_NOISE_METERS), gaussian(GPS_NOISE_METERS));
+  }
+
+  private double gaussian(double sigmaMeters) {
+    return random.nextGaussian() * sigmaMeters;
+  }
+
+  private static double[] offset(double lat, double lng, double northMeters, double eastMeters) {
+    return new double[] {
+      lat + northMeters / METERS_PER_DEGREE,
+      lng + eastMeters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)))
+    };
+  }
+}
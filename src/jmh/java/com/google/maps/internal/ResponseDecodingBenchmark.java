@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.maps.DirectionsApi;
+import com.google.maps.DistanceMatrixApi;
+import com.google.maps.GeocodingApi;
+import com.google.maps.GeolocationApi;
+import com.google.maps.PlaceDetailsRequest;
+import com.google.maps.TestUtils;
+import com.google.maps.model.AddressComponentType;
+import com.google.maps.model.AddressType;
+import com.google.maps.model.Distance;
+import com.google.maps.model.Duration;
+import com.google.maps.model.EncodedPolyline;
+import com.google.maps.model.Fare;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.LocationType;
+import com.google.maps.model.OpeningHours.Period.OpenClose.DayOfWeek;
+import com.google.maps.model.PlaceDetails.Review.AspectRating.RatingType;
+import com.google.maps.model.PriceLevel;
+import com.google.maps.model.TravelMode;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares building a {@link Gson} for every response, as the request handlers used to, with the
+ * shared {@link ResponseCodecRegistry}. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseDecodingBenchmark {
+
+  @Param({"geocode", "directions", "distanceMatrix", "placeDetails"})
+  public String fixture;
+
+  private String json;
+  private Class<?> responseClass;
+
+  @Setup
+  public void setUp() {
+    switch (fixture) {
+      case "geocode":
+        json = TestUtils.retrieveBody("SimpleGeocodeResponse.json");
+        responseClass = GeocodingApi.Response.class;
+        break;
+      case "directions":
+        json = TestUtils.retrieveBody("GetDirectionsResponse.json");
+        responseClass = DirectionsApi.Response.class;
+        break;
+      case "distanceMatrix":
+        json = TestUtils.retrieveBody("GetDistanceMatrixWithBasicStringParams.json");
+        responseClass = DistanceMatrixApi.Response.class;
+        break;
+      case "placeDetails":
+        json = TestUtils.retrieveBody("PlaceDetailsResponse.json");
+        responseClass = PlaceDetailsRequest.Response.class;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown fixture " + fixture);
+    }
+  }
+
+  @Benchmark
+  public Object gsonPerResponse() {
+    return perResponseGson(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+        .fromJson(json, responseClass);
+  }
+
+  @Benchmark
+  public Object sharedRegistry() {
+    return ResponseCodecRegistry.getInstance()
+        .fromJson(json, responseClass, FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+  }
+
+  /** The Gson construction previously done for every response. */
+  private static Gson perResponseGson(FieldNamingPolicy fieldNamingPolicy) {
+    return new GsonBuilder()
+        .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeAdapter())
+        .registerTypeAdapter(Distance.class, new DistanceAdapter())
+        .registerTypeAdapter(Duration.class, new DurationAdapter())
+        .registerTypeAdapter(Fare.class, new FareAdapter())
+        .registerTypeAdapter(LatLng.class, new LatLngAdapter())
+        .registerTypeAdapter(
+            AddressComponentType.class, new SafeEnumAdapter<>(AddressComponentType.UNKNOWN))
+        .registerTypeAdapter(AddressType.class, new SafeEnumAdapter<>(AddressType.UNKNOWN))
+        .registerTypeAdapter(TravelMode.class, new SafeEnumAdapter<>(TravelMode.UNKNOWN))
+        .registerTypeAdapter(LocationType.class, new SafeEnumAdapter<>(LocationType.UNKNOWN))
+        .registerTypeAdapter(RatingType.class, new SafeEnumAdapter<>(RatingType.UNKNOWN))
+        .registerTypeAdapter(DayOfWeek.class, new DayOfWeekAdapter())
+        .registerTypeAdapter(PriceLevel.class, new PriceLevelAdapter())
+        .registerTypeAdapter(Instant.class, new InstantAdapter())
+        .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
+        .registerTypeAdapter(GeolocationApi.Response.class, new GeolocationResponseAdapter())
+        .registerTypeAdapter(EncodedPolyline.class, new EncodedPolylineInstanceCreator(""))
+        .setFieldNamingPolicy(fieldNamingPolicy)
+        .create();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.errors.ApiException;
+import com.google.maps.errors.ZeroResultsException;
+import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.CanonicalRequest;
+import com.google.maps.internal.Deadline;
+import com.google.maps.internal.ExceptionsAllowedToRetry;
+import com.google.maps.metrics.RequestMetrics;
+import java.io.IOException;
+
+/**
+ * A {@link GeoApiContext.RequestHandler} that answers requests from a {@link ResponseCache} where
+ * it can, and caches the responses to the requests it has to send.
+ *
+ * @see GeoApiContext.Builder#responseCache(ResponseCache)
+ */
+public class CachingRequestHandler implements GeoApiContext.RequestHandler {
+  private final GeoApiContext.RequestHandler delegate;
+  private final ResponseCache cache;
+
+  /**
+   * @param delegate The handler that sends the requests that aren't answered from the cache.
+   * @param cache The cache of responses.
+   */
+  public CachingRequestHandler(GeoApiContext.RequestHandler delegate, ResponseCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+      String hostName,
+      String url,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics) {
+    return new CachedResult<>(
+        CanonicalRequest.of(hostName, url, null, clazz),
+        url,
+        metrics,
+        delegate.<T, R>handle(
+            hostName,
+            url,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics));
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+      String hostName,
+      String url,
+      String payload,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics) {
+    return new CachedResult<>(
+        CanonicalRequest.of(hostName, url, payload, clazz),
+        url,
+        metrics,
+        delegate.<T, R>handlePost(
+            hostName,
+            url,
+            payload,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics));
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+      String hostName,
+      String url,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
+    return new CachedResult<>(
+        CanonicalRequest.of(hostName, url, null, clazz),
+        url,
+        metrics,
+        delegate.<T, R>handle(
+            hostName,
+            url,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics,
+            priority,
+            deadline));
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+      String hostName,
+      String url,
+      String payload,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
+    return new CachedResult<>(
+        CanonicalRequest.of(hostName, url, payload, clazz),
+        url,
+        metrics,
+        delegate.<T, R>handlePost(
+            hostName,
+            url,
+            payload,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics,
+            priority,
+            deadline));
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return delegate.getQueueDepth();
+  }
+
+  @Override
+  public long getQueueWaitMillis() {
+    return delegate.getQueueWaitMillis();
+  }
+
+  /**
+   * A request that is only sent if its response isn't in the cache. A request answered from the
+   * cache ends its metrics itself, as the request that would have ended them is never sent.
+   */
+  private class CachedResult<T> implements PendingResult<T> {
+    private final String key;
+    private final String path;
+    private final RequestMetrics metrics;
+    private final PendingResult<T> upstream;
+
+    CachedResult(String key, String url, RequestMetrics metrics, PendingResult<T> upstream) {
+      this.key = key;
+      int query = url.indexOf('?');
+      this.path = query < 0 ? url : url.substring(0, query);
+      this.metrics = metrics;
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void setCallback(final Callback<T> callback) {
+      ResponseCache.CachedResponse cached = cache.get(key);
+      if (cached != null) {
+        if (cached.zeroResults) {
+          ZeroResultsException e = cached.newZeroResultsException();
+          metrics.endRequest(e, 0, 0);
+          callback.onFailure(e);
+        } else {
+          metrics.endRequest(null, 0, 0);
+          callback.onResult(resultOf(cached));
+        }
+        return;
+      }
+      upstream.setCallback(
+          new Callback<T>() {
+            @Override
+            public void onResult(T result) {
+              cache.put(key, path, result, null);
+              callback.onResult(result);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+              if (e instanceof ZeroResultsException) {
+                cache.put(key, path, null, (ZeroResultsException) e);
+              }
+              callback.onFailure(e);
+            }
+          });
+    }
+
+    @Override
+    public T await() throws ApiException, InterruptedException, IOException {
+      ResponseCache.CachedResponse cached = cache.get(key);
+      if (cached != null) {
+        if (cached.zeroResults) {
+          ZeroResultsException e = cached.newZeroResultsException();
+          metrics.endRequest(e, 0, 0);
+          throw e;
+        }
+        metrics.endRequest(null, 0, 0);
+        return resultOf(cached);
+      }
+      try {
+        T result = upstream.await();
+        cache.put(key, path, result, null);
+        return result;
+      } catch (ZeroResultsException e) {
+        cache.put(key, path, null, e);
+        throw e;
+      }
+    }
+
+    @Override
+    public T awaitIgnoreError() {
+      try {
+        return await();
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void cancel() {
+      upstream.cancel();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T resultOf(ResponseCache.CachedResponse cached) {
+      // Requests for the same URL always have the same response type.
+      return (T) cached.result;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps;
+
+/**
+ * The state of the circuit breaker guarding one API endpoint.
+ *
+ * @see OkHttpRequestHandler.Builder#circuitBreaker(int, long, java.util.concurrent.TimeUnit)
+ */
+public enum CircuitBreakerState {
+  /** The endpoint is healthy, and requests are sent as normal. */
+  CLOSED,
+
+  /** The endpoint keeps failing, so requests fail immediately without being sent. */
+  OPEN,
+
+  /** The endpoint has had time to recover, and a single trial request is let through. */
+  HALF_OPEN
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.errors.ApiException;
+import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.CanonicalRequest;
+import com.google.maps.internal.Deadline;
+import com.google.maps.internal.ExceptionsAllowedToRetry;
+import com.google.maps.internal.Outcome;
+import com.google.maps.metrics.RequestMetrics;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link GeoApiContext.RequestHandler} that merges identical requests made while one of them is
+ * already in flight. The later requests don't reach the server; they wait for the call that is
+ * already under way and complete with its result, or its failure. Requests are identical if they
+ * have the same host, the same query parameters in any order, and the same body. Nothing is kept
+ * once a call completes, so a request never sees a response older than itself.
+ *
+ * <p>The callers of a merged request all receive the same result object, which they must
+ * therefore treat as read-only. The call is made with the priority and deadline of the request
+ * that started it, and is only cancelled once every caller waiting for it has cancelled. If that
+ * request was waiting in {@link PendingResult#await()} and its thread is interrupted, the call is
+ * made again for the callers still waiting. The metrics of a request that joined another's call
+ * are ended when it receives the outcome.
+ *
+ * @see GeoApiContext.Builder#coalesceRequests()
+ */
+public class CoalescingRequestHandler implements GeoApiContext.RequestHandler {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(CoalescingRequestHandler.class.getName());
+
+  private final GeoApiContext.RequestHandler delegate;
+  private final ConcurrentMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+
+  /** @param delegate The handler that makes the calls. */
+  public CoalescingRequestHandler(GeoApiContext.RequestHandler delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+      String hostName,
+      String url,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics) {
+    return new CoalescedResult<>(
+        CanonicalRequest.of(hostName, url, null, clazz),
+        delegate.<T, R>handle(
+            hostName,
+            url,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics),
+        metrics);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+      String hostName,
+      String url,
+      String payload,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics) {
+    return new CoalescedResult<>(
+        CanonicalRequest.of(hostName, url, payload, clazz),
+        delegate.<T, R>handlePost(
+            hostName,
+            url,
+            payload,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics),
+        metrics);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+      String hostName,
+      String url,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
+    return new CoalescedResult<>(
+        CanonicalRequest.of(hostName, url, null, clazz),
+        delegate.<T, R>handle(
+            hostName,
+            url,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics,
+            priority,
+            deadline),
+        metrics);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+      String hostName,
+      String url,
+      String payload,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
+    return new CoalescedResult<>(
+        CanonicalRequest.of(hostName, url, payload, clazz),
+        delegate.<T, R>handlePost(
+            hostName,
+            url,
+            payload,
+            userAgent,
+            experienceIdHeaderValue,
+            clazz,
+            fieldNamingPolicy,
+            errorTimeout,
+            maxRetries,
+            exceptionsAllowedToRetry,
+            metrics,
+            priority,
+            deadline),
+        metrics);
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return delegate.getQueueDepth();
+  }
+
+  @Override
+  public long getQueueWaitMillis() {
+    return delegate.getQueueWaitMillis();
+  }
+
+  /** @return The number of distinct requests in flight. */
+  public int getInFlightCount() {
+    return flights.size();
+  }
+
+  /** A caller's request, which shares the call of any identical request already in flight. */
+  private class CoalescedResult<T> implements PendingResult<T> {
+    private final String key;
+    private final PendingResult<T> upstream;
+    private final RequestMetrics metrics;
+    private volatile boolean calling;
+    private Flight<T> flight;
+    private Callback<T> waiter;
+    private boolean cancelled;
+
+    CoalescedResult(String key, PendingResult<T> upstream, RequestMetrics metrics) {
+      this.key = key;
+      this.upstream = upstream;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void setCallback(Callback<T> callback) {
+      Flight<T> made = start(callback);
+      if (made != null) {
+        upstream.setCallback(made);
+      }
+    }
+
+    @Override
+    public T await() throws ApiException, InterruptedException, IOException {
+      Outcome<T> outcome = new Outcome<>();
+      Flight<T> made = start(outcome);
+      if (made != null) {
+        try {
+          made.onResult(upstream.await());
+        } catch (InterruptedException e) {
+          // Only this caller was interrupted; the others keep waiting for the call.
+          made.handOff(outcome);
+          throw e;
+        } catch (Exception e) {
+          made.onFailure(e);
+        }
+      }
+      return outcome.await(this);
+    }
+
+    @Override
+    public T awaitIgnoreError() {
+      try {
+        return await();
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void cancel() {
+      Flight<T> joined;
+      Callback<T> joinedWaiter;
+      synchronized (this) {
+        cancelled = true;
+        joined = flight;
+        joinedWaiter = waiter;
+      }
+      if (joined != null && joined.leave(joinedWaiter)) {
+        IOException canceled = new IOException("Canceled");
+        joinedWaiter.onFailure(canceled);
+        finished(canceled);
+      }
+    }
+
+    /**
+     * Joins the call in flight for an identical request, or creates one if there is none.
+     *
+     * @param callback Receives the outcome of the call.
+     * @return The flight to make the call for, or null if this request joined another's call.
+     */
+    private Flight<T> start(Callback<T> callback) {
+      Flight<T> created = new Flight<>(key, this);
+      Flight<T> joined;
+      do {
+        synchronized (this) {
+          if (cancelled) {
+            joined = null;
+            break;
+          }
+          @SuppressWarnings("unchecked")
+          Flight<T> existing = (Flight<T>) flights.putIfAbsent(key, created);
+          joined = existing == null ? created : existing;
+          flight = joined;
+          waiter = callback;
+        }
+      } while (!joined.join(callback, this));
+
+      if (joined == null) {
+        IOException canceled = new IOException("Canceled");
+        callback.onFailure(canceled);
+        finished(canceled);
+        return null;
+      }
+      if (joined != created) {
+        return null;
+      }
+      calling = true;
+      return created;
+    }
+
+    /**
+     * Ends the metrics of a request that made no call of its own; a call ends them itself.
+     *
+     * @param failure The failure the request completed with, or null.
+     */
+    void finished(Throwable failure) {
+      if (!calling) {
+        metrics.endRequest(failure instanceof Exception ? (Exception) failure : null, 0, 0);
+      }
+    }
+  }
+
+  /** A call in flight, and the callers waiting for its outcome. */
+  private class Flight<T> implements PendingResult.Callback<T> {
+    private final String key;
+    private final Map<PendingResult.Callback<T>, CoalescedResult<T>> waiters =
+        new LinkedHashMap<>();
+    private CoalescedResult<T> caller;
+    private boolean done;
+    private boolean abandoned;
+    private T result;
+    private Throwable failure;
+
+    Flight(String key, CoalescedResult<T> caller) {
+      this.key = key;
+      this.caller = caller;
+    }
+
+    /**
+     * Adds a caller waiting for the outcome, which it is given right away if the call has already
+     * completed.
+     *
+     * @return False if the call was abandoned by all its callers, so a new one has to be made.
+     */
+    boolean join(PendingResult.Callback<T> waiter, CoalescedResult<T> request) {
+      synchronized (this) {
+        if (abandoned) {
+          flights.remove(key, this);
+          return false;
+        }
+        if (!done) {
+          waiters.put(waiter, request);
+          return true;
+        }
+      }
+      deliver(waiter, request);
+      return true;
+    }
+
+    /**
+     * Removes a caller that no longer wants the outcome. The call is cancelled once no caller is
+     * left waiting for it.
+     *
+     * @return Whether the caller was removed before the outcome was delivered to it.
+     */
+    boolean leave(PendingResult.Callback<T> waiter) {
+      PendingResult<T> call;
+      synchronized (this) {
+        if (done || waiters.remove(waiter) == null) {
+          return false;
+        }
+        if (!waiters.isEmpty()) {
+          return true;
+        }
+        done = true;
+        abandoned = true;
+        call = caller.upstream;
+      }
+      flights.remove(key, this);
+      call.cancel();
+      return true;
+    }
+
+    /**
+     * Removes the caller making the call on its own thread, after that thread was interrupted. The
+     * call is made again for the next caller still waiting, if any, since the interrupted one's
+     * response is lost.
+     */
+    void handOff(PendingResult.Callback<T> waiter) {
+      PendingResult<T> interrupted;
+      CoalescedResult<T> next = null;
+      synchronized (this) {
+        if (done || waiters.remove(waiter) == null) {
+          return;
+        }
+        interrupted = caller.upstream;
+        if (waiters.isEmpty()) {
+          done = true;
+          abandoned = true;
+        } else {
+          next = waiters.values().iterator().next();
+          next.calling = true;
+          caller = next;
+        }
+      }
+      interrupted.cancel();
+      if (next == null) {
+        flights.remove(key, this);
+      } else {
+        next.upstream.setCallback(this);
+      }
+    }
+
+    @Override
+    public void onResult(T result) {
+      finish(result, null);
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      finish(null, e);
+    }
+
+    private void finish(T result, Throwable failure) {
+      // Identical requests made from here on make a call of their own.
+      flights.remove(key, this);
+      Map<PendingResult.Callback<T>, CoalescedResult<T>> notify;
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        done = true;
+        this.result = result;
+        this.failure = failure;
+        notify = new LinkedHashMap<>(waiters);
+        waiters.clear();
+      }
+      for (Map.Entry<PendingResult.Callback<T>, CoalescedResult<T>> waiter : notify.entrySet()) {
+        deliver(waiter.getKey(), waiter.getValue());
+      }
+    }
+
+    private void deliver(PendingResult.Callback<T> waiter, CoalescedResult<T> request) {
+      request.finished(failure);
+      try {
+        if (failure == null) {
+          waiter.onResult(result);
+        } else {
+          waiter.onFailure(failure);
+        }
+      } catch (RuntimeException e) {
+        // Don't let one caller's callback keep the outcome from the others.
+        LOG.warn("Callback of coalesced request failed", e);
+      }
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.google.maps;
 import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.model.CompactDistanceMatrix;
 import com.google.maps.model.DistanceMatrix;
 import com.google.maps.model.DistanceMatrixRow;
 
@@ -78,4 +79,32 @@ public class DistanceMatrixApi {
       return new DistanceMatrix(originAddresses, destinationAddresses, rows);
     }
   }
+
+  /**
+   * A Distance Matrix API response decoded into a {@link CompactDistanceMatrix} by {@link
+   * com.google.maps.internal.CompactDistanceMatrixAdapter}.
+   */
+  public static class CompactResponse implements ApiResponse<CompactDistanceMatrix> {
+    public String status;
+    public String errorMessage;
+    public CompactDistanceMatrix matrix;
+
+    @Override
+    public boolean successful() {
+      return "OK".equals(status);
+    }
+
+    @Override
+    public ApiException getError() {
+      if (successful()) {
+        return null;
+      }
+      return ApiException.from(status, errorMessage);
+    }
+
+    @Override
+    public CompactDistanceMatrix getResult() {
+      return matrix;
+    }
+  }
 }
@@ -19,6 +19,8 @@ import static com.google.maps.internal.StringJoin.join;
 
 import com.google.maps.DirectionsApi.RouteRestriction;
 import com.google.maps.DistanceMatrixApi.Response;
+import com.google.maps.errors.ApiException;
+import com.google.maps.model.CompactDistanceMatrix;
 import com.google.maps.model.DistanceMatrix;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.TrafficModel;
@@ -26,12 +28,20 @@ import com.google.maps.model.TransitMode;
 import com.google.maps.model.TransitRoutingPreference;
 import com.google.maps.model.TravelMode;
 import com.google.maps.model.Unit;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** A request to the Distance Matrix API. */
 public class DistanceMatrixApiRequest
     extends PendingResultBase<DistanceMatrix, DistanceMatrixApiRequest, Response> {
 
+  private String[] origins;
+  private String[] destinations;
+
   public DistanceMatrixApiRequest(GeoApiContext context) {
     super(context, DistanceMatrixApi.API_CONFIG, Response.class);
   }
@@ -58,6 +68,7 @@ public class DistanceMatrixApiRequest
    * @return Returns this {@code DistanceMatrixApiRequest} for call chaining.
    */
   public DistanceMatrixApiRequest origins(String... origins) {
+    this.origins = origins.clone();
     return param("origins", join('|', origins));
   }
 
@@ -68,6 +79,7 @@ public class DistanceMatrixApiRequest
    * @return Returns this {@code DistanceMatrixApiRequest} for call chaining.
    */
   public DistanceMatrixApiRequest origins(LatLng... points) {
+    this.origins = urlValues(points);
     return param("origins", join('|', points));
   }
 
@@ -79,6 +91,7 @@ public class DistanceMatrixApiRequest
    * @return Returns this {@code DistanceMatrixApiRequest} for call chaining.
    */
   public DistanceMatrixApiRequest destinations(String... destinations) {
+    this.destinations = destinations.clone();
     return param("destinations", join('|', destinations));
   }
 
@@ -89,6 +102,7 @@ public class DistanceMatrixApiRequest
    * @return Returns this {@code DistanceMatrixApiRequest} for call chaining.
    */
   public DistanceMatrixApiRequest destinations(LatLng... points) {
+    this.destinations = urlValues(points);
     return param("destinations", join('|', points));
   }
 
@@ -202,4 +216,68 @@ public class DistanceMatrixApiRequest
   public DistanceMatrixApiRequest transitRoutingPreference(TransitRoutingPreference pref) {
     return param("transit_routing_preference", pref);
   }
+
+  /**
+   * Sends this request, decoding the response into a {@link CompactDistanceMatrix} of primitive
+   * durations, distances and statuses instead of a {@link DistanceMatrix}. The human readable text
+   * of each duration and distance, and any fares, are skipped, which saves time and memory on
+   * large matrices.
+   *
+   * <p>The returned result is independent of this request: calling {@link #cancel()} here does not
+   * cancel it, and this request may still be sent with {@link #await()} as well.
+   *
+   * @return The pending compact result.
+   */
+  public PendingResult<CompactDistanceMatrix> compact() {
+    validateRequest();
+    return send(DistanceMatrixApi.CompactResponse.class, params());
+  }
+
+  /**
+   * Performs the request synchronously, returning a {@link CompactDistanceMatrix}.
+   *
+   * @return The compact result.
+   * @throws ApiException Thrown if the API Returned result is an error.
+   * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied,
+   *     and the thread is interrupted.
+   * @throws IOException Thrown when an I/O exception of some sort has occurred.
+   * @see #compact()
+   */
+  public CompactDistanceMatrix awaitCompact()
+      throws ApiException, InterruptedException, IOException {
+    return compact().await();
+  }
+
+  /** @return The origins of this request, as sent. */
+  String[] originValues() {
+    return origins;
+  }
+
+  /** @return The destinations of this request, as sent. */
+  String[] destinationValues() {
+    return destinations;
+  }
+
+  /**
+   * Sends this request for some of its origins and destinations only, with its other parameters.
+   *
+   * @param origins The origins to send.
+   * @param destinations The destinations to send.
+   * @return The pending result of the smaller request.
+   */
+  PendingResult<DistanceMatrix> sendPart(String[] origins, String[] destinations) {
+    validateRequest();
+    Map<String, List<String>> params = new HashMap<>(params());
+    params.put("origins", Collections.singletonList(join('|', origins)));
+    params.put("destinations", Collections.singletonList(join('|', destinations)));
+    return send(params);
+  }
+
+  private static String[] urlValues(LatLng[] points) {
+    String[] values = new String[points.length];
+    for (int i = 0; i < points.length; i++) {
+      values[i] = points[i].toUrlValue();
+    }
+    return values;
+  }
 }
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.errors.ApiException;
+import com.google.maps.internal.Outcome;
+import com.google.maps.model.DistanceMatrix;
+import com.google.maps.model.DistanceMatrixElement;
+import com.google.maps.model.DistanceMatrixRow;
+import com.google.maps.store.TravelTimeMatrixStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a Distance Matrix request of any size as tiles small enough for the API, which takes at
+ * most 25 origins, 25 destinations and 100 elements per request, and assembles their results into
+ * one {@link DistanceMatrix}.
+ *
+ * <p>Tiles are sent a few at a time, through the context's rate limit like any other request, and
+ * each has the parameters of the request it was planned from. If any tile fails, the others are
+ * cancelled and the whole matrix fails. A {@link TileListener} is told of each tile as it arrives,
+ * so that work can start on part of the matrix before the rest. Matrices too large to hold as
+ * objects can be fetched {@link #into(TravelTimeMatrixStore) into a store} on disk instead.
+ *
+ * <pre>{@code
+ * DistanceMatrix matrix =
+ *     new DistanceMatrixPlanner(
+ *             DistanceMatrixApi.newRequest(context).origins(stops).destinations(stops))
+ *         .await();
+ * }</pre>
+ */
+public class DistanceMatrixPlanner implements PendingResult<DistanceMatrix> {
+  private static final Logger LOG = LoggerFactory.getLogger(DistanceMatrixPlanner.class.getName());
+
+  /** The most origins the Distance Matrix API takes in one request. */
+  public static final int MAX_ORIGINS = 25;
+  /** The most destinations the Distance Matrix API takes in one request. */
+  public static final int MAX_DESTINATIONS = 25;
+  /** The most origin and destination pairs the Distance Matrix API takes in one request. */
+  public static final int MAX_ELEMENTS = 100;
+
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  /** A block of adjacent origins and destinations that is sent as one request. */
+  public static final class Tile {
+    /** The position of this tile in {@link #tiles()}. */
+    public final int index;
+    /** The index in the whole matrix of the first origin of this tile. */
+    public final int originOffset;
+    /** The number of origins in this tile. */
+    public final int originCount;
+    /** The index in the whole matrix of the first destination of this tile. */
+    public final int destinationOffset;
+    /** The number of destinations in this tile. */
+    public final int destinationCount;
+
+    Tile(
+        int index,
+        int originOffset,
+        int originCount,
+        int destinationOffset,
+        int destinationCount) {
+      this.index = index;
+      this.originOffset = originOffset;
+      this.originCount = originCount;
+      this.destinationOffset = destinationOffset;
+      this.destinationCount = destinationCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "[Tile %d: origins %d+%d, destinations %d+%d]",
+          index, originOffset, originCount, destinationOffset, destinationCount);
+    }
+  }
+
+  /** Told of each tile of the matrix as its result arrives. */
+  public interface TileListener {
+    /**
+     * Called once for each tile, on the thread that received it. Calls may overlap.
+     *
+     * @param tile The tile.
+     * @param result The tile's own matrix, whose rows and elements are indexed from the tile's
+     *     first origin and destination.
+     */
+    void onTile(Tile tile, DistanceMatrix result);
+  }
+
+  private final DistanceMatrixApiRequest request;
+  private final String[] origins;
+  private final String[] destinations;
+  private int maxOrigins = MAX_ORIGINS;
+  private int maxDestinations = MAX_DESTINATIONS;
+  private int maxElements = MAX_ELEMENTS;
+  private int parallelism = 4;
+  private TileListener listener;
+  private Run<?> run;
+
+  /**
+   * @param request The request to send in tiles. Its origins and destinations must have been set,
+   *     and its other parameters are sent with every tile.
+   */
+  public DistanceMatrixPlanner(DistanceMatrixApiRequest request) {
+    if (request.originValues() == null || request.destinationValues() == null) {
+      throw new IllegalArgumentException("Request must contain 'origins' and 'destinations'");
+    }
+    this.request = request;
+    this.origins = request.originValues();
+    this.destinations = request.destinationValues();
+  }
+
+  /**
+   * Sets the largest tile to send, for plans that need smaller tiles than the API allows, such as
+   * to keep URLs of long addresses short enough.
+   *
+   * @param maxOrigins The most origins in one tile.
+   * @param maxDestinations The most destinations in one tile.
+   * @param maxElements The most origin and destination pairs in one tile.
+   * @return Returns this planner for call chaining.
+   */
+  public DistanceMatrixPlanner limits(int maxOrigins, int maxDestinations, int maxElements) {
+    if (maxOrigins < 1 || maxDestinations < 1 || maxElements < 1) {
+      throw new IllegalArgumentException("Limits must be positive");
+    }
+    this.maxOrigins = Math.min(maxOrigins, MAX_ORIGINS);
+    this.maxDestinations = Math.min(maxDestinations, MAX_DESTINATIONS);
+    this.maxElements = Math.min(maxElements, MAX_ELEMENTS);
+    return this;
+  }
+
+  /**
+   * @param parallelism The most tiles to have in flight at once. Defaults to 4.
+   * @return Returns this planner for call chaining.
+   */
+  public DistanceMatrixPlanner parallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * @param listener Told of each tile as its result arrives.
+   * @return Returns this planner for call chaining.
+   */
+  public DistanceMatrixPlanner onTile(TileListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Plans the tiles of the matrix: the fewest that cover it within the limits, as evenly sized as
+   * they can be. Tiles run across the destinations of a block of origins before moving on to the
+   * next block.
+   *
+   * @return The tiles, in the order they are sent.
+   */
+  public List<Tile> tiles() {
+    int n = origins.length;
+    int m = destinations.length;
+    if (n == 0 || m == 0) {
+      return Collections.emptyList();
+    }
+    int bestHeight = 1;
+    int bestWidth = 1;
+    long bestCount = Long.MAX_VALUE;
+    for (int height = 1; height <= Math.min(maxOrigins, n); height++) {
+      int width = Math.min(Math.min(maxDestinations, m), maxElements / height);
+      if (width == 0) {
+        break;
+      }
+      long count = (long) ceilDiv(n, height) * ceilDiv(m, width);
+      if (count < bestCount) {
+        bestCount = count;
+        bestHeight = height;
+        bestWidth = width;
+      }
+    }
+    // Spread the origins and destinations evenly over the tiles rather than leaving a thin edge.
+    int rows = ceilDiv(n, bestHeight);
+    int columns = ceilDiv(m, bestWidth);
+    List<Tile> tiles = new ArrayList<>(rows * columns);
+    for (int row = 0; row < rows; row++) {
+      int originOffset = row * n / rows;
+      int originEnd = (row + 1) * n / rows;
+      for (int column = 0; column < columns; column++) {
+        int destinationOffset = column * m / columns;
+        int destinationEnd = (column + 1) * m / columns;
+        tiles.add(
+            new Tile(
+                tiles.size(),
+                originOffset,
+                originEnd - originOffset,
+                destinationOffset,
+                destinationEnd - destinationOffset));
+      }
+    }
+    return tiles;
+  }
+
+  private static int ceilDiv(int a, int b) {
+    return (a + b - 1) / b;
+  }
+
+  /**
+   * Fetches the matrix into {@code store} rather than assembling it on the heap. Tiles whose
+   * elements are all in the store already, such as from an earlier run that was interrupted, are
+   * not fetched again. The store is flushed to disk every ten seconds while it fills, and once it
+   * is full.
+   *
+   * @param store The store to fill, whose size must match the request's.
+   * @return The store once it is filled, as a {@link PendingResult}.
+   */
+  public PendingResult<TravelTimeMatrixStore> into(final TravelTimeMatrixStore store) {
+    if (store.getOriginCount() != origins.length
+        || store.getDestinationCount() != destinations.length) {
+      throw new IllegalArgumentException("The store is not the size of the request's matrix");
+    }
+    return new PendingResult<TravelTimeMatrixStore>() {
+      @Override
+      public void setCallback(Callback<TravelTimeMatrixStore> callback) {
+        start(new StoringRun(store, callback));
+      }
+
+      @Override
+      public TravelTimeMatrixStore await() throws ApiException, InterruptedException, IOException {
+        Outcome<TravelTimeMatrixStore> outcome = new Outcome<>();
+        setCallback(outcome);
+        return outcome.await(this);
+      }
+
+      @Override
+      public TravelTimeMatrixStore awaitIgnoreError() {
+        try {
+          return await();
+        } catch (Exception e) {
+          return null;
+        }
+      }
+
+      @Override
+      public void cancel() {
+        DistanceMatrixPlanner.this.cancel();
+      }
+    };
+  }
+
+  @Override
+  public void setCallback(Callback<DistanceMatrix> callback) {
+    start(new AssemblingRun(callback));
+  }
+
+  @Override
+  public DistanceMatrix await() throws ApiException, InterruptedException, IOException {
+    Outcome<DistanceMatrix> outcome = new Outcome<>();
+    setCallback(outcome);
+    return outcome.await(this);
+  }
+
+  @Override
+  public DistanceMatrix awaitIgnoreError() {
+    try {
+      return await();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void cancel() {
+    Run<?> run;
+    synchronized (this) {
+      run = this.run;
+    }
+    if (run != null) {
+      run.cancel();
+    }
+  }
+
+  private void start(Run<?> run) {
+    synchronized (this) {
+      if (this.run != null) {
+        throw new IllegalStateException(
+            "'await', 'awaitIgnoreError' or 'setCallback' was already called.");
+      }
+      this.run = run;
+    }
+    run.start();
+  }
+
+  /**
+   * One fetch of the matrix, tile by tile.
+   *
+   * @param <T> The type of the result, once every tile has arrived.
+   */
+  private abstract class Run<T> {
+    private final List<Tile> tiles;
+    private final Callback<T> callback;
+    private final Map<Tile, PendingResult<DistanceMatrix>> inFlight = new HashMap<>();
+    private int next;
+    private int remaining;
+    private int freeSlots;
+    private boolean sending;
+    private boolean finished;
+
+    Run(List<Tile> tiles, Callback<T> callback) {
+      this.tiles = tiles;
+      this.callback = callback;
+      this.remaining = tiles.size();
+    }
+
+    /** Takes in the result of a tile. Tiles may be accepted on several threads at once. */
+    abstract void accept(Tile tile, DistanceMatrix result) throws IOException;
+
+    /** @return The result, once every tile has been accepted. */
+    abstract T result();
+
+    void start() {
+      if (tiles.isEmpty()) {
+        callback.onResult(result());
+        return;
+      }
+      synchronized (this) {
+        freeSlots = parallelism;
+      }
+      send();
+    }
+
+    /**
+     * Sends tiles while fewer than {@link #parallelism} are in flight. Only one thread sends at a
+     * time: a tile that arrives meanwhile, even synchronously from within the loop, such as from a
+     * cache, leaves its slot for the loop to fill rather than sending the next tile itself, so that
+     * the stack doesn't grow with every tile.
+     */
+    private void send() {
+      synchronized (this) {
+        if (sending) {
+          return;
+        }
+        sending = true;
+      }
+      while (true) {
+        final Tile tile;
+        PendingResult<DistanceMatrix> pending = null;
+        RuntimeException failure = null;
+        synchronized (this) {
+          if (finished || freeSlots == 0 || next == tiles.size()) {
+            sending = false;
+            return;
+          }
+          freeSlots--;
+          tile = tiles.get(next++);
+          try {
+            pending =
+                request.sendPart(
+                    slice(origins, tile.originOffset, tile.originCount),
+                    slice(destinations, tile.destinationOffset, tile.destinationCount));
+            inFlight.put(tile, pending);
+          } catch (RuntimeException e) {
+            failure = e;
+          }
+        }
+        if (failure != null) {
+          fail(failure);
+          continue;
+        }
+        pending.setCallback(
+            new Callback<DistanceMatrix>() {
+              @Override
+              public void onResult(DistanceMatrix result) {
+                arrived(tile, result);
+              }
+
+              @Override
+              public void onFailure(Throwable e) {
+                synchronized (Run.this) {
+                  inFlight.remove(tile);
+                }
+                fail(e);
+              }
+            });
+      }
+    }
+
+    private void arrived(Tile tile, DistanceMatrix result) {
+      if (!fits(tile, result)) {
+        fail(new IllegalStateException("Unexpected shape of result for " + tile));
+        return;
+      }
+      synchronized (this) {
+        inFlight.remove(tile);
+        if (finished) {
+          return;
+        }
+      }
+      try {
+        accept(tile, result);
+      } catch (IOException | RuntimeException e) {
+        fail(e);
+        return;
+      }
+      if (listener != null) {
+        try {
+          listener.onTile(tile, result);
+        } catch (RuntimeException e) {
+          LOG.warn("Distance Matrix tile listener threw", e);
+        }
+      }
+      boolean complete;
+      synchronized (this) {
+        if (finished) {
+          return;
+        }
+        complete = --remaining == 0;
+        finished = complete;
+        freeSlots++;
+      }
+      if (complete) {
+        callback.onResult(result());
+      } else {
+        send();
+      }
+    }
+
+    private boolean fits(Tile tile, DistanceMatrix result) {
+      if (result.rows == null || result.rows.length != tile.originCount) {
+        return false;
+      }
+      for (DistanceMatrixRow row : result.rows) {
+        if (row == null || row.elements == null || row.elements.length != tile.destinationCount) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void fail(Throwable e) {
+      List<PendingResult<DistanceMatrix>> others;
+      synchronized (this) {
+        if (finished) {
+          return;
+        }
+        finished = true;
+        others = new ArrayList<>(inFlight.values());
+        inFlight.clear();
+      }
+      for (PendingResult<DistanceMatrix> other : others) {
+        other.cancel();
+      }
+      callback.onFailure(e);
+    }
+
+    void cancel() {
+      fail(new IOException("Canceled"));
+    }
+  }
+
+  /** Assembles the tiles into one {@link DistanceMatrix}. */
+  private class AssemblingRun extends Run<DistanceMatrix> {
+    private final String[] originAddresses = new String[origins.length];
+    private final String[] destinationAddresses = new String[destinations.length];
+    private final DistanceMatrixRow[] rows = new DistanceMatrixRow[origins.length];
+
+    AssemblingRun(Callback<DistanceMatrix> callback) {
+      super(tiles(), callback);
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = new DistanceMatrixRow();
+        rows[i].elements = new DistanceMatrixElement[destinations.length];
+      }
+    }
+
+    @Override
+    synchronized void accept(Tile tile, DistanceMatrix result) {
+      for (int i = 0; i < tile.originCount; i++) {
+        System.arraycopy(
+            result.rows[i].elements,
+            0,
+            rows[tile.originOffset + i].elements,
+            tile.destinationOffset,
+            tile.destinationCount);
+      }
+      copy(result.originAddresses, originAddresses, tile.originOffset, tile.originCount);
+      copy(
+          result.destinationAddresses,
+          destinationAddresses,
+          tile.destinationOffset,
+          tile.destinationCount);
+    }
+
+    @Override
+    synchronized DistanceMatrix result() {
+      return new DistanceMatrix(originAddresses, destinationAddresses, rows);
+    }
+  }
+
+  /**
+   * Writes the tiles to a {@link TravelTimeMatrixStore}, skipping those it already has, and flushes
+   * it every so often so that a stopped machine loses little of the fill.
+   */
+  private class StoringRun extends Run<TravelTimeMatrixStore> {
+    private final TravelTimeMatrixStore store;
+    private long lastFlushNanos = System.nanoTime();
+
+    StoringRun(TravelTimeMatrixStore store, Callback<TravelTimeMatrixStore> callback) {
+      super(missingTiles(store), callback);
+      this.store = store;
+    }
+
+    @Override
+    void accept(Tile tile, DistanceMatrix result) throws IOException {
+      store.put(tile.originOffset, tile.destinationOffset, result);
+      boolean due;
+      synchronized (this) {
+        long now = System.nanoTime();
+        due = now - lastFlushNanos >= FLUSH_INTERVAL_NANOS;
+        if (due) {
+          lastFlushNanos = now;
+        }
+      }
+      if (due) {
+        store.flush();
+      }
+    }
+
+    @Override
+    TravelTimeMatrixStore result() {
+      store.flush();
+      return store;
+    }
+  }
+
+  private List<Tile> missingTiles(TravelTimeMatrixStore store) {
+    List<Tile> missing = new ArrayList<>();
+    for (Tile tile : tiles()) {
+      if (!store.isFilled(
+          tile.originOffset, tile.originCount, tile.destinationOffset, tile.destinationCount)) {
+        missing.add(tile);
+      }
+    }
+    return missing;
+  }
+
+  private static String[] slice(String[] values, int offset, int count) {
+    String[] slice = new String[count];
+    System.arraycopy(values, offset, slice, 0, count);
+    return slice;
+  }
+
+  private static void copy(String[] from, String[] to, int offset, int count) {
+    if (from != null && from.length == count) {
+      System.arraycopy(from, 0, to, offset, count);
+    }
+  }
+}
@@ -20,10 +20,23 @@ import static com.google.maps.internal.StringJoin.join;
 import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.MicroBatcher;
 import com.google.maps.internal.PolylineEncoding;
 import com.google.maps.model.ElevationResult;
 import com.google.maps.model.EncodedPolyline;
 import com.google.maps.model.LatLng;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Google Elevation API provides a simple interface to query locations on the earth for
@@ -35,6 +48,11 @@ import com.google.maps.model.LatLng;
  */
 public class ElevationApi {
   private static final ApiConfig API_CONFIG = new ApiConfig("/maps/api/elevation/json");
+  // The most locations the Elevation API takes in one request.
+  private static final int MAX_LOCATIONS = 512;
+  // The most characters of locations in one request, which leaves room in its 16384 character URL
+  // for everything else.
+  private static final int MAX_LOCATIONS_LENGTH = 15000;
 
   private ElevationApi() {}
 
@@ -47,6 +65,9 @@ public class ElevationApi {
    */
   public static PendingResult<ElevationResult[]> getByPoints(
       GeoApiContext context, LatLng... points) {
+    if (context.getElevationGridCache() != null) {
+      return new GridCachedResult(context, context.getElevationGridCache(), points);
+    }
     return context.get(API_CONFIG, MultiResponse.class, "locations", shortestParam(points));
   }
 
@@ -107,6 +128,13 @@ public class ElevationApi {
    * @return The elevation as a {@link PendingResult}.
    */
   public static PendingResult<ElevationResult> getByPoint(GeoApiContext context, LatLng location) {
+    if (context.getElevationBatcher() != null) {
+      return context.getElevationBatcher().add(location);
+    }
+    if (context.getElevationGridCache() != null) {
+      return new SingularResult(
+          new GridCachedResult(context, context.getElevationGridCache(), location));
+    }
     return context.get(API_CONFIG, SingularResponse.class, "locations", location.toString());
   }
 
@@ -143,6 +171,9 @@ public class ElevationApi {
    */
   public static PendingResult<ElevationResult[]> getByPoints(
       GeoApiContext context, EncodedPolyline encodedPolyline) {
+    if (context.getElevationGridCache() != null) {
+      return getByPoints(context, encodedPolyline.decodePath().toArray(new LatLng[0]));
+    }
     return context.get(
         API_CONFIG, MultiResponse.class, "locations", "enc:" + encodedPolyline.getEncodedPath());
   }
@@ -170,4 +201,250 @@ public class ElevationApi {
       return ApiException.from(status, errorMessage);
     }
   }
+
+  /**
+   * Answers the points that {@link ElevationGridCache} has elevations for, and fetches the rest,
+   * whose results are added to the cache. Interpolating takes up to four grid nodes per point, so
+   * the locations to fetch are split into requests that each fit the API's limits.
+   */
+  private static class GridCachedResult implements PendingResult<ElevationResult[]> {
+    private final GeoApiContext context;
+    private final ElevationGridCache cache;
+    private final LatLng[] points;
+    private final List<PendingResult<ElevationResult[]>> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    GridCachedResult(GeoApiContext context, ElevationGridCache cache, LatLng... points) {
+      this.context = context;
+      this.cache = cache;
+      this.points = points;
+    }
+
+    @Override
+    public void setCallback(final Callback<ElevationResult[]> callback) {
+      final ElevationResult[] results = new ElevationResult[points.length];
+      final List<List<LatLng>> chunks = chunks(lookup(results));
+      if (chunks.isEmpty()) {
+        callback.onResult(results);
+        return;
+      }
+      final ElevationResult[][] fetched = new ElevationResult[chunks.size()][];
+      final AtomicInteger remaining = new AtomicInteger(chunks.size());
+      final AtomicBoolean failed = new AtomicBoolean();
+      for (int i = 0; i < chunks.size(); i++) {
+        final int chunk = i;
+        fetch(chunks.get(i))
+            .setCallback(
+                new Callback<ElevationResult[]>() {
+                  @Override
+                  public void onResult(ElevationResult[] result) {
+                    fetched[chunk] = result;
+                    if (remaining.decrementAndGet() > 0) {
+                      return;
+                    }
+                    ElevationResult[] merged;
+                    try {
+                      merged = merge(results, chunks, fetched);
+                    } catch (RuntimeException e) {
+                      callback.onFailure(e);
+                      return;
+                    }
+                    callback.onResult(merged);
+                  }
+
+                  @Override
+                  public void onFailure(Throwable e) {
+                    // The first failure fails the request, and the other chunks aren't needed.
+                    if (failed.compareAndSet(false, true)) {
+                      cancel();
+                      callback.onFailure(e);
+                    }
+                  }
+                });
+      }
+    }
+
+    @Override
+    public ElevationResult[] await() throws ApiException, InterruptedException, IOException {
+      ElevationResult[] results = new ElevationResult[points.length];
+      List<List<LatLng>> chunks = chunks(lookup(results));
+      ElevationResult[][] fetched = new ElevationResult[chunks.size()][];
+      for (int i = 0; i < chunks.size(); i++) {
+        fetched[i] = fetch(chunks.get(i)).await();
+      }
+      return merge(results, chunks, fetched);
+    }
+
+    @Override
+    public ElevationResult[] awaitIgnoreError() {
+      try {
+        return await();
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      for (PendingResult<ElevationResult[]> request : requests) {
+        request.cancel();
+      }
+    }
+
+    /**
+     * Fills in {@code results} from the cache.
+     *
+     * @return The locations to fetch to answer the rest.
+     */
+    private List<LatLng> lookup(ElevationResult[] results) {
+      Set<LatLng> locations = new LinkedHashSet<>();
+      for (int i = 0; i < points.length; i++) {
+        results[i] = cache.get(points[i]);
+        if (results[i] == null) {
+          locations.addAll(cache.locationsToFetch(points[i]));
+        }
+      }
+      return new ArrayList<>(locations);
+    }
+
+    /** @return The locations split into requests of at most 512 locations that fit a URL. */
+    private static List<List<LatLng>> chunks(List<LatLng> locations) {
+      List<List<LatLng>> chunks = new ArrayList<>();
+      List<LatLng> chunk = new ArrayList<>();
+      int length = 0;
+      for (LatLng location : locations) {
+        int weight = weight(location);
+        if (chunk.size() >= MAX_LOCATIONS
+            || (!chunk.isEmpty() && length + weight > MAX_LOCATIONS_LENGTH)) {
+          chunks.add(chunk);
+          chunk = new ArrayList<>();
+          length = 0;
+        }
+        chunk.add(location);
+        length += weight;
+      }
+      if (!chunk.isEmpty()) {
+        chunks.add(chunk);
+      }
+      return chunks;
+    }
+
+    private PendingResult<ElevationResult[]> fetch(List<LatLng> locations) {
+      PendingResult<ElevationResult[]> request =
+          context.get(
+              API_CONFIG,
+              MultiResponse.class,
+              "locations",
+              shortestParam(locations.toArray(new LatLng[0])));
+      requests.add(request);
+      if (cancelled) {
+        request.cancel();
+      }
+      return request;
+    }
+
+    private ElevationResult[] merge(
+        ElevationResult[] results, List<List<LatLng>> chunks, ElevationResult[][] fetched) {
+      Map<LatLng, ElevationResult> byLocation = new HashMap<>();
+      for (int c = 0; c < chunks.size(); c++) {
+        List<LatLng> locations = chunks.get(c);
+        if (fetched[c].length != locations.size()) {
+          throw new IllegalStateException(
+              "Expected " + locations.size() + " elevations but got " + fetched[c].length);
+        }
+        for (int i = 0; i < fetched[c].length; i++) {
+          byLocation.put(locations.get(i), fetched[c][i]);
+          cache.put(locations.get(i), fetched[c][i]);
+        }
+      }
+      for (int i = 0; i < results.length; i++) {
+        if (results[i] == null) {
+          results[i] = cache.find(points[i], byLocation);
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Merges concurrent {@link #getByPoint} requests into {@link #getByPoints} requests of up to 512
+   * locations, the most the Elevation API takes, and no longer than its 16384 character URLs.
+   */
+  static class PointBatcher extends MicroBatcher<LatLng, ElevationResult[], ElevationResult> {
+    private final GeoApiContext context;
+
+    PointBatcher(
+        GeoApiContext context, ScheduledExecutorService scheduler, long window, TimeUnit unit) {
+      super(scheduler, window, unit, MAX_LOCATIONS, MAX_LOCATIONS_LENGTH);
+      this.context = context;
+    }
+
+    @Override
+    protected PendingResult<ElevationResult[]> send(List<LatLng> locations) {
+      return getByPoints(context, locations.toArray(new LatLng[0]));
+    }
+
+    @Override
+    protected ElevationResult resultFor(
+        ElevationResult[] results, List<LatLng> locations, int index) {
+      if (results.length != locations.size()) {
+        throw new IllegalStateException(
+            "Expected " + locations.size() + " elevations but got " + results.length);
+      }
+      return results[index];
+    }
+
+    @Override
+    protected int weight(LatLng location) {
+      return ElevationApi.weight(location);
+    }
+  }
+
+  /** @return The length of the location once URL encoded, with the "|" that separates it. */
+  private static int weight(LatLng location) {
+    // "," and "|" each take three characters when encoded.
+    return location.toString().length() + 5;
+  }
+
+  /** The only result of a request for the elevations of one point. */
+  private static class SingularResult implements PendingResult<ElevationResult> {
+    private final PendingResult<ElevationResult[]> request;
+
+    SingularResult(PendingResult<ElevationResult[]> request) {
+      this.request = request;
+    }
+
+    @Override
+    public void setCallback(final Callback<ElevationResult> callback) {
+      request.setCallback(
+          new Callback<ElevationResult[]>() {
+            @Override
+            public void onResult(ElevationResult[] results) {
+              callback.onResult(results[0]);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+              callback.onFailure(e);
+            }
+          });
+    }
+
+    @Override
+    public ElevationResult await() throws ApiException, InterruptedException, IOException {
+      return request.await()[0];
+    }
+
+    @Override
+    public ElevationResult awaitIgnoreError() {
+      ElevationResult[] results = request.awaitIgnoreError();
+      return results == null ? null : results[0];
+    }
+
+    @Override
+    public void cancel() {
+      request.cancel();
+    }
+  }
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.model.ElevationResult;
+import com.google.maps.model.LatLng;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of elevations at the nodes of a grid, so that route profiles over the same regions are
+ * answered locally rather than by the Elevation API. Nodes are spaced by rounding latitude and
+ * longitude to a number of decimal places, its precision: about 110 m apart at precision 3 and 11
+ * m at precision 4.
+ *
+ * <p>The grid is split into square tiles of {@value #TILE_SIZE} by {@value #TILE_SIZE} nodes, each
+ * held outside the Java heap as pairs of {@code float}s: the elevation and the resolution it was
+ * measured at, both in meters. Only the handles of tiles are on the heap, so the cost to the
+ * garbage collector does not grow with the area covered. Tiles are kept in direct buffers, or in
+ * files mapped into memory when the cache is given a directory, where they outlive the process.
+ *
+ * <p>By default a location is given the elevation of its nearest node. With {@link
+ * #interpolate()}, it is instead interpolated bilinearly from the four nodes around it, and those
+ * nodes are what is fetched from the server.
+ *
+ * @see GeoApiContext.Builder#elevationGridCache(ElevationGridCache)
+ */
+public class ElevationGridCache {
+  /** The number of nodes along each side of a tile. */
+  public static final int TILE_SIZE = 64;
+
+  private static final int FLOATS_PER_NODE = 2;
+  private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * FLOATS_PER_NODE * 4;
+
+  private final int precision;
+  private final double scale;
+  private final int maxTiles;
+  private final File directory;
+  private final Map<Long, FloatBuffer> tiles;
+  private boolean interpolate;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Creates a cache whose tiles are kept in direct buffers, and lost when it is discarded.
+   *
+   * @param precision The number of decimal places of latitude and longitude between nodes, from 0
+   *     to 6.
+   * @param maxTiles The most tiles to keep, each taking {@code 32} KiB outside the heap.
+   */
+  public ElevationGridCache(int precision, int maxTiles) {
+    this(precision, maxTiles, null);
+  }
+
+  /**
+   * Creates a cache whose tiles are files in {@code directory} mapped into memory, so that
+   * elevations fetched by one process are there for the next. Tiles of grids of different
+   * precisions can share a directory.
+   *
+   * @param precision The number of decimal places of latitude and longitude between nodes, from 0
+   *     to 6.
+   * @param maxTiles The most tiles to keep mapped at once. Tiles dropped from memory stay on disk.
+   * @param directory The directory of tile files, which is created if it does not exist.
+   */
+  public ElevationGridCache(int precision, final int maxTiles, File directory) {
+    if (precision < 0 || precision > 6) {
+      throw new IllegalArgumentException("precision must be between 0 and 6");
+    }
+    if (maxTiles < 1) {
+      throw new IllegalArgumentException("maxTiles must be positive");
+    }
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create directory " + directory);
+    }
+    this.precision = precision;
+    this.scale = Math.pow(10, precision);
+    this.maxTiles = maxTiles;
+    this.directory = directory;
+    this.tiles =
+        new LinkedHashMap<Long, FloatBuffer>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, FloatBuffer> eldest) {
+            return size() > maxTiles;
+          }
+        };
+  }
+
+  /**
+   * Interpolates elevations bilinearly from the four nodes around each location, rather than
+   * taking that of the nearest node.
+   *
+   * @return Returns this cache for call chaining.
+   */
+  public synchronized ElevationGridCache interpolate() {
+    this.interpolate = true;
+    return this;
+  }
+
+  /** @return The number of locations answered from the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** @return The number of locations that had to be sent to the server. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** @return The number of tiles held in memory. */
+  public synchronized int getTileCount() {
+    return tiles.size();
+  }
+
+  /** @return The most tiles held in memory at once. */
+  public int getMaxTiles() {
+    return maxTiles;
+  }
+
+  /**
+   * Drops every tile held in memory. Tiles mapped from a directory keep their elevations on disk.
+   */
+  public synchronized void invalidateAll() {
+    tiles.clear();
+  }
+
+  /**
+   * Looks up the elevation of a location.
+   *
+   * @return The elevation at {@code location}, or null if the nodes it needs are not cached.
+   */
+  synchronized ElevationResult get(LatLng location) {
+    ElevationResult result = find(location, Collections.<LatLng, ElevationResult>emptyMap());
+    if (result == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return result;
+  }
+
+  /**
+   * Looks up the elevation of a location, taking the elevations of any locations in {@code
+   * fetched} from there rather than the grid, so that a request is answered even if its tiles
+   * were dropped while it was sent.
+   *
+   * @param fetched Elevations fetched from the server, by the location they were fetched for.
+   * @return The elevation at {@code location}, or null if the nodes it needs are not cached.
+   */
+  synchronized ElevationResult find(LatLng location, Map<LatLng, ElevationResult> fetched) {
+    if (!interpolate) {
+      ElevationResult result = fetched.get(location);
+      return result != null ? result : nearest(location);
+    }
+    return interpolated(location, fetched);
+  }
+
+  /**
+   * @return The locations to fetch from the server before {@code location} can be answered: the
+   *     location itself, or the nodes around it that are not cached when interpolating.
+   */
+  synchronized List<LatLng> locationsToFetch(LatLng location) {
+    List<LatLng> locations = new ArrayList<>();
+    if (!interpolate) {
+      locations.add(location);
+      return locations;
+    }
+    long lat0 = (long) Math.floor(location.lat * scale);
+    long lng0 = (long) Math.floor(location.lng * scale);
+    for (long lat = lat0; lat <= lat0 + 1; lat++) {
+      for (long lng = lng0; lng <= lng0 + 1; lng++) {
+        if (Float.isNaN(elevation(lat, lng))) {
+          locations.add(node(lat, lng));
+        }
+      }
+    }
+    return locations;
+  }
+
+  /** Keeps {@code result} as the elevation of the node nearest to {@code location}. */
+  synchronized void put(LatLng location, ElevationResult result) {
+    long lat = Math.round(location.lat * scale);
+    long lng = Math.round(location.lng * scale);
+    FloatBuffer tile = tile(lat, lng, true);
+    if (tile != null) {
+      int index = index(lat, lng);
+      tile.put(index, (float) result.elevation);
+      tile.put(index + 1, (float) result.resolution);
+    }
+  }
+
+  private ElevationResult nearest(LatLng location) {
+    long lat = Math.round(location.lat * scale);
+    long lng = Math.round(location.lng * scale);
+    FloatBuffer tile = tile(lat, lng, false);
+    if (tile == null) {
+      return null;
+    }
+    int index = index(lat, lng);
+    float elevation = tile.get(index);
+    if (Float.isNaN(elevation)) {
+      return null;
+    }
+    return result(location, elevation, tile.get(index + 1));
+  }
+
+  private ElevationResult interpolated(LatLng location, Map<LatLng, ElevationResult> fetched) {
+    double y = location.lat * scale;
+    double x = location.lng * scale;
+    long lat0 = (long) Math.floor(y);
+    long lng0 = (long) Math.floor(x);
+    // The nodes below-left, below-right, above-left and above-right of the location.
+    float[] elevations = new float[4];
+    double resolution = 0;
+    for (int i = 0; i < 4; i++) {
+      long lat = lat0 + i / 2;
+      long lng = lng0 + i % 2;
+      ElevationResult node = fetched.get(node(lat, lng));
+      if (node != null) {
+        elevations[i] = (float) node.elevation;
+        resolution = Math.max(resolution, node.resolution);
+        continue;
+      }
+      FloatBuffer tile = tile(lat, lng, false);
+      if (tile == null || Float.isNaN(tile.get(index(lat, lng)))) {
+        return null;
+      }
+      elevations[i] = tile.get(index(lat, lng));
+      resolution = Math.max(resolution, tile.get(index(lat, lng) + 1));
+    }
+    double dy = y - lat0;
+    double dx = x - lng0;
+    double below = elevations[0] * (1 - dx) + elevations[1] * dx;
+    double above = elevations[2] * (1 - dx) + elevations[3] * dx;
+    return result(location, below * (1 - dy) + above * dy, resolution);
+  }
+
+  private LatLng node(long lat, long lng) {
+    return new LatLng(lat / scale, lng / scale);
+  }
+
+  private static ElevationResult result(LatLng location, double elevation, double resolution) {
+    ElevationResult result = new ElevationResult();
+    result.location = new LatLng(location.lat, location.lng);
+    result.elevation = elevation;
+    result.resolution = resolution;
+    return result;
+  }
+
+  private float elevation(long lat, long lng) {
+    FloatBuffer tile = tile(lat, lng, false);
+    return tile == null ? Float.NaN : tile.get(index(lat, lng));
+  }
+
+  private static int index(long lat, long lng) {
+    return (int) (Math.floorMod(lat, TILE_SIZE) * TILE_SIZE + Math.floorMod(lng, TILE_SIZE))
+        * FLOATS_PER_NODE;
+  }
+
+  /**
+   * @return The tile holding node ({@code lat}, {@code lng}), or null if there is none and {@code
+   *     create} is false, or it can't be mapped.
+   */
+  private FloatBuffer tile(long lat, long lng, boolean create) {
+    long row = Math.floorDiv(lat, TILE_SIZE);
+    long column = Math.floorDiv(lng, TILE_SIZE);
+    Long key = (row << 32) | (column & 0xffffffffL);
+    FloatBuffer tile = tiles.get(key);
+    if (tile != null) {
+      return tile;
+    }
+    if (directory == null) {
+      if (!create) {
+        return null;
+      }
+      tile = empty(ByteBuffer.allocateDirect(TILE_BYTES));
+    } else {
+      String name = "elevation-" + precision + "_" + row + "_" + column + ".tile";
+      File file = new File(directory, name);
+      if (!create && !file.exists()) {
+        return null;
+      }
+      try {
+        tile = map(file);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    tiles.put(key, tile);
+    return tile;
+  }
+
+  private static FloatBuffer map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      boolean created = raf.length() != TILE_BYTES;
+      MappedByteBuffer buffer =
+          raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, TILE_BYTES);
+      return created ? empty(buffer) : buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+  }
+
+  /** @return {@code buffer} as floats, with every node marked as not cached. */
+  private static FloatBuffer empty(ByteBuffer buffer) {
+    FloatBuffer tile = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    for (int i = 0; i < tile.capacity(); i++) {
+      tile.put(i, Float.NaN);
+    }
+    return tile;
+  }
+}
@@ -20,21 +20,28 @@ import com.google.maps.errors.ApiException;
 import com.google.maps.errors.OverQueryLimitException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.Deadline;
 import com.google.maps.internal.ExceptionsAllowedToRetry;
 import com.google.maps.internal.HttpHeaders;
+import com.google.maps.internal.MicroBatcher;
 import com.google.maps.internal.StringJoin;
 import com.google.maps.internal.UrlSigner;
 import com.google.maps.metrics.NoOpRequestMetricsReporter;
 import com.google.maps.metrics.RequestMetrics;
 import com.google.maps.metrics.RequestMetricsReporter;
+import com.google.maps.ratelimit.SharedRateLimiter;
+import com.google.maps.ratelimit.TokenStoreRateLimiter;
+import com.google.maps.store.GeocodingResultStore;
 import java.io.UnsupportedEncodingException;
 import java.net.Proxy;
 import java.net.URLEncoder;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -68,6 +75,17 @@ public class GeoApiContext {
   private final UrlSigner urlSigner;
   private String experienceIdHeaderValue;
   private final RequestMetricsReporter requestMetricsReporter;
+  private final RequestPriority defaultPriority;
+  private final long defaultDeadlineMillis;
+  private final GeocodingResultStore geocodingResultStore;
+  private final PlaceDetailsCache placeDetailsCache;
+  private final ReverseGeocodingCache reverseGeocodingCache;
+  private final ElevationGridCache elevationGridCache;
+  private final TimeZoneCache timeZoneCache;
+  private final ScheduledExecutorService batchScheduler;
+  private final ElevationApi.PointBatcher elevationBatcher;
+  private final RoadsApi.NearestRoadsBatcher nearestRoadsBatcher;
+  private final RoadsApi.SpeedLimitsBatcher speedLimitsBatcher;
 
   /* package */
   GeoApiContext(
@@ -81,6 +99,15 @@ public class GeoApiContext {
       Integer maxRetries,
       UrlSigner urlSigner,
       RequestMetricsReporter requestMetricsReporter,
+      RequestPriority defaultPriority,
+      long defaultDeadlineMillis,
+      GeocodingResultStore geocodingResultStore,
+      PlaceDetailsCache placeDetailsCache,
+      ReverseGeocodingCache reverseGeocodingCache,
+      ElevationGridCache elevationGridCache,
+      TimeZoneCache timeZoneCache,
+      long elevationBatchWindowMillis,
+      long roadsBatchWindowMillis,
       String... experienceIdHeaderValue) {
     this.requestHandler = requestHandler;
     this.apiKey = apiKey;
@@ -92,6 +119,32 @@ public class GeoApiContext {
     this.maxRetries = maxRetries;
     this.urlSigner = urlSigner;
     this.requestMetricsReporter = requestMetricsReporter;
+    this.defaultPriority = defaultPriority;
+    this.defaultDeadlineMillis = defaultDeadlineMillis;
+    this.geocodingResultStore = geocodingResultStore;
+    this.placeDetailsCache = placeDetailsCache;
+    this.reverseGeocodingCache = reverseGeocodingCache;
+    this.elevationGridCache = elevationGridCache;
+    this.timeZoneCache = timeZoneCache;
+    this.batchScheduler =
+        elevationBatchWindowMillis > 0 || roadsBatchWindowMillis > 0
+            ? MicroBatcher.newScheduler()
+            : null;
+    this.elevationBatcher =
+        elevationBatchWindowMillis > 0
+            ? new ElevationApi.PointBatcher(
+                this, batchScheduler, elevationBatchWindowMillis, TimeUnit.MILLISECONDS)
+            : null;
+    this.nearestRoadsBatcher =
+        roadsBatchWindowMillis > 0
+            ? new RoadsApi.NearestRoadsBatcher(
+                this, batchScheduler, roadsBatchWindowMillis, TimeUnit.MILLISECONDS)
+            : null;
+    this.speedLimitsBatcher =
+        roadsBatchWindowMillis > 0
+            ? new RoadsApi.SpeedLimitsBatcher(
+                this, batchScheduler, roadsBatchWindowMillis, TimeUnit.MILLISECONDS)
+            : null;
     setExperienceId(experienceIdHeaderValue);
   }
 
@@ -130,8 +183,84 @@ public class GeoApiContext {
         ExceptionsAllowedToRetry exceptionsAllowedToRetry,
         RequestMetrics metrics);
 
+    /**
+     * Like {@link #handle(String, String, String, String, Class, FieldNamingPolicy, long, Integer,
+     * ExceptionsAllowedToRetry, RequestMetrics)}, for handlers that queue requests by priority and
+     * enforce deadlines. Handlers that don't queue requests ignore {@code priority}, and handlers
+     * that can't enforce deadlines ignore {@code deadline}.
+     */
+    default <T, R extends ApiResponse<T>> PendingResult<T> handle(
+        String hostName,
+        String url,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics,
+        RequestPriority priority,
+        Deadline deadline) {
+      return handle(
+          hostName,
+          url,
+          userAgent,
+          experienceIdHeaderValue,
+          clazz,
+          fieldNamingPolicy,
+          errorTimeout,
+          maxRetries,
+          exceptionsAllowedToRetry,
+          metrics);
+    }
+
+    /**
+     * Like {@link #handlePost(String, String, String, String, String, Class, FieldNamingPolicy,
+     * long, Integer, ExceptionsAllowedToRetry, RequestMetrics)}, for handlers that queue requests
+     * by priority and enforce deadlines. Handlers that don't queue requests ignore {@code
+     * priority}, and handlers that can't enforce deadlines ignore {@code deadline}.
+     */
+    default <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+        String hostName,
+        String url,
+        String payload,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics,
+        RequestPriority priority,
+        Deadline deadline) {
+      return handlePost(
+          hostName,
+          url,
+          payload,
+          userAgent,
+          experienceIdHeaderValue,
+          clazz,
+          fieldNamingPolicy,
+          errorTimeout,
+          maxRetries,
+          exceptionsAllowedToRetry,
+          metrics);
+    }
+
     void shutdown();
 
+    /** @return The number of requests waiting to be sent, if this handler queues requests. */
+    default int getQueueDepth() {
+      return 0;
+    }
+
+    /** @return How long the oldest queued request has been waiting, in milliseconds. */
+    default long getQueueWaitMillis() {
+      return 0;
+    }
+
     /** Builder pattern for {@code GeoApiContext.RequestHandler}. */
     interface Builder {
 
@@ -143,6 +272,35 @@ public class GeoApiContext {
 
       Builder queriesPerSecond(int maxQps);
 
+      /**
+       * Gives requests whose path starts with {@code pathPrefix} a rate limit of their own. Not all
+       * handlers support this.
+       *
+       * @throws UnsupportedOperationException If the handler has no per-API rate limits.
+       */
+      default Builder queriesPerSecond(String pathPrefix, int maxQps) {
+        throw new UnsupportedOperationException("Per-API rate limits are not supported");
+      }
+
+      /**
+       * Caps the combined rate of all requests. Not all handlers support this.
+       *
+       * @throws UnsupportedOperationException If the handler has no global rate limit.
+       */
+      default Builder globalQueriesPerSecond(int maxQps) {
+        throw new UnsupportedOperationException("A global rate limit is not supported");
+      }
+
+      /**
+       * Makes requests also wait for permits from a rate limiter shared with other clients. Not all
+       * handlers support this.
+       *
+       * @throws UnsupportedOperationException If the handler can't use a shared rate limiter.
+       */
+      default Builder sharedRateLimiter(SharedRateLimiter sharedRateLimiter) {
+        throw new UnsupportedOperationException("Shared rate limiters are not supported");
+      }
+
       Builder proxy(Proxy proxy);
 
       Builder proxyAuthentication(String proxyUserName, String proxyUserPassword);
@@ -179,16 +337,57 @@ public class GeoApiContext {
     experienceIdHeaderValue = null;
   }
 
+  /**
+   * Returns the number of requests waiting for the rate limit. Batch producers can use this to
+   * throttle themselves rather than queueing more work than the rate limit can drain.
+   *
+   * @return The current queue depth.
+   */
+  public int getQueueDepth() {
+    return requestHandler.getQueueDepth();
+  }
+
+  /** @return How long the oldest request waiting for the rate limit has waited, in milliseconds. */
+  public long getQueueWaitMillis() {
+    return requestHandler.getQueueWaitMillis();
+  }
+
   /**
    * Shut down this GeoApiContext instance, reclaiming resources. After shutdown() has been called,
-   * no further queries may be done against this instance.
+   * no further queries may be done against this instance. Requests still waiting to be merged into
+   * a batch are handed to the request handler before it shuts down, so that they complete or fail
+   * like the requests already queued there, rather than wait forever.
    */
   public void shutdown() {
+    if (batchScheduler != null) {
+      batchScheduler.shutdownNow();
+      // The windows that were due to send these batches were cancelled with the scheduler.
+      for (MicroBatcher<?, ?, ?> batcher :
+          Arrays.<MicroBatcher<?, ?, ?>>asList(
+              elevationBatcher, nearestRoadsBatcher, speedLimitsBatcher)) {
+        if (batcher != null) {
+          batcher.flush();
+        }
+      }
+    }
     requestHandler.shutdown();
   }
 
   <T, R extends ApiResponse<T>> PendingResult<T> get(
       ApiConfig config, Class<? extends R> clazz, Map<String, List<String>> params) {
+    return get(config, clazz, params, null, null);
+  }
+
+  /**
+   * @param priority The priority of the request, or null for the context's default priority.
+   * @param deadline The request's own deadline, or null for the context's default deadline.
+   */
+  <T, R extends ApiResponse<T>> PendingResult<T> get(
+      ApiConfig config,
+      Class<? extends R> clazz,
+      Map<String, List<String>> params,
+      RequestPriority priority,
+      Deadline deadline) {
     if (channel != null && !channel.isEmpty() && !params.containsKey("channel")) {
       params.put("channel", Collections.singletonList(channel));
     }
@@ -215,7 +414,9 @@ public class GeoApiContext {
         config.path,
         config.supportsClientId,
         query.toString(),
-        requestMetricsReporter.newRequest(config.path));
+        requestMetricsReporter.newRequest(config.path),
+        priority,
+        deadline);
   }
 
   <T, R extends ApiResponse<T>> PendingResult<T> get(
@@ -255,11 +456,26 @@ public class GeoApiContext {
         config.path,
         config.supportsClientId,
         query.toString(),
-        requestMetricsReporter.newRequest(config.path));
+        requestMetricsReporter.newRequest(config.path),
+        null,
+        null);
   }
 
   <T, R extends ApiResponse<T>> PendingResult<T> post(
       ApiConfig config, Class<? extends R> clazz, Map<String, List<String>> params) {
+    return post(config, clazz, params, null, null);
+  }
+
+  /**
+   * @param priority The priority of the request, or null for the context's default priority.
+   * @param deadline The request's own deadline, or null for the context's default deadline.
+   */
+  <T, R extends ApiResponse<T>> PendingResult<T> post(
+      ApiConfig config,
+      Class<? extends R> clazz,
+      Map<String, List<String>> params,
+      RequestPriority priority,
+      Deadline deadline) {
 
     checkContext(config.supportsClientId);
 
@@ -291,7 +507,9 @@ public class GeoApiContext {
         errorTimeout,
         maxRetries,
         exceptionsAllowedToRetry,
-        requestMetricsReporter.newRequest(config.path));
+        requestMetricsReporter.newRequest(config.path),
+        priority == null ? defaultPriority : priority,
+        deadline(deadline));
   }
 
   private <T, R extends ApiResponse<T>> PendingResult<T> getWithPath(
@@ -301,7 +519,9 @@ public class GeoApiContext {
       String path,
       boolean canUseClientId,
       String encodedPath,
-      RequestMetrics metrics) {
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
     checkContext(canUseClientId);
     if (!encodedPath.startsWith("&")) {
       throw new IllegalArgumentException("encodedPath must start with &");
@@ -334,7 +554,58 @@ public class GeoApiContext {
         errorTimeout,
         maxRetries,
         exceptionsAllowedToRetry,
-        metrics);
+        metrics,
+        priority == null ? defaultPriority : priority,
+        deadline(deadline));
+  }
+
+  /** @return The store geocoding requests are answered from, if there is one. */
+  GeocodingResultStore getGeocodingResultStore() {
+    return geocodingResultStore;
+  }
+
+  /** @return The cache Place Details requests are answered from, if there is one. */
+  PlaceDetailsCache getPlaceDetailsCache() {
+    return placeDetailsCache;
+  }
+
+  /** @return The cache reverse geocoding requests are answered from, if there is one. */
+  ReverseGeocodingCache getReverseGeocodingCache() {
+    return reverseGeocodingCache;
+  }
+
+  /** @return The cache elevation requests for points are answered from, if there is one. */
+  ElevationGridCache getElevationGridCache() {
+    return elevationGridCache;
+  }
+
+  /** @return The cache time zone requests are answered from, if there is one. */
+  TimeZoneCache getTimeZoneCache() {
+    return timeZoneCache;
+  }
+
+  /** @return The batcher single point elevation requests are merged by, if there is one. */
+  ElevationApi.PointBatcher getElevationBatcher() {
+    return elevationBatcher;
+  }
+
+  /** @return The batcher nearest roads requests are merged by, if there is one. */
+  RoadsApi.NearestRoadsBatcher getNearestRoadsBatcher() {
+    return nearestRoadsBatcher;
+  }
+
+  /** @return The batcher speed limit requests by place ID are merged by, if there is one. */
+  RoadsApi.SpeedLimitsBatcher getSpeedLimitsBatcher() {
+    return speedLimitsBatcher;
+  }
+
+  /** @return The earlier of the request's own deadline and the context's default, if any. */
+  private Deadline deadline(Deadline requestDeadline) {
+    if (defaultDeadlineMillis <= 0) {
+      return requestDeadline;
+    }
+    return Deadline.earliest(
+        requestDeadline, Deadline.after(defaultDeadlineMillis, TimeUnit.MILLISECONDS));
   }
 
   private void checkContext(boolean canUseClientId) {
@@ -364,6 +635,17 @@ public class GeoApiContext {
     private UrlSigner urlSigner;
     private RequestMetricsReporter requestMetricsReporter = new NoOpRequestMetricsReporter();
     private String[] experienceIdHeaderValue;
+    private RequestPriority defaultPriority = RequestPriority.INTERACTIVE;
+    private long defaultDeadlineMillis;
+    private boolean coalesceRequests;
+    private ResponseCache responseCache;
+    private GeocodingResultStore geocodingResultStore;
+    private PlaceDetailsCache placeDetailsCache;
+    private ReverseGeocodingCache reverseGeocodingCache;
+    private ElevationGridCache elevationGridCache;
+    private TimeZoneCache timeZoneCache;
+    private long elevationBatchWindowMillis;
+    private long roadsBatchWindowMillis;
 
     /** Builder pattern for the enclosing {@code GeoApiContext}. */
     public Builder() {
@@ -546,6 +828,51 @@ public class GeoApiContext {
       return this;
     }
 
+    /**
+     * Gives one API a rate limit of its own, separate from {@link #queryRateLimit(int)}, which then
+     * only applies to the remaining APIs. The quotas of the different Maps APIs are independent,
+     * so this lets a burst of traffic to one API proceed without holding back calls to another.
+     *
+     * <p>The API is identified by the prefix of its request path, such as {@code
+     * "/maps/api/place/"} for all of the Places API, or {@code "/maps/api/directions/"}. Where
+     * prefixes overlap, the longest match applies.
+     *
+     * @param pathPrefix The path prefix of the API.
+     * @param maxQps The maximum queries per second for the API.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder queryRateLimit(String pathPrefix, int maxQps) {
+      builder.queriesPerSecond(pathPrefix, maxQps);
+      return this;
+    }
+
+    /**
+     * Caps the combined queries per second across every API, on top of the per-API limits set with
+     * {@link #queryRateLimit(String, int)}. There is no global ceiling by default.
+     *
+     * @param maxQps The maximum total queries per second.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder globalQueryRateLimit(int maxQps) {
+      builder.globalQueriesPerSecond(maxQps);
+      return this;
+    }
+
+    /**
+     * Shares a rate limit with other clients, such as the other processes of a cluster that use the
+     * same API key. Each request then also waits for a permit from {@code sharedRateLimiter}, so
+     * the cluster can share its quota dynamically instead of dividing it between processes up
+     * front. The local limits still apply, so set {@link #queryRateLimit(int)} high enough not to
+     * get in the way.
+     *
+     * @param sharedRateLimiter The shared rate limit, for example a {@link TokenStoreRateLimiter}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder sharedRateLimiter(SharedRateLimiter sharedRateLimiter) {
+      builder.sharedRateLimiter(sharedRateLimiter);
+      return this;
+    }
+
     /**
      * Allows specific API exceptions to be retried or not retried.
      *
@@ -603,14 +930,170 @@ public class GeoApiContext {
       return this;
     }
 
+    /**
+     * Sets the priority of requests that don't set one themselves with their {@code priority}
+     * method. A context used only for bulk jobs can make
+     * {@link RequestPriority#BATCH} its default.
+     *
+     * @param defaultPriority The default request priority. Defaults to {@link
+     *     RequestPriority#INTERACTIVE}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder defaultPriority(RequestPriority defaultPriority) {
+      this.defaultPriority = defaultPriority;
+      return this;
+    }
+
+    /**
+     * Sets how long each request may take from start to finish, including time spent waiting for
+     * the rate limit, backing off between retries, and waiting for the server. Unlike {@link
+     * #retryTimeout}, which only bounds the time spent backing off, a request that runs out of time
+     * fails with a {@link com.google.maps.errors.DeadlineExceededException}. Requests still queued
+     * when their deadline passes are shed without using up any of the rate limit. Individual
+     * requests may set a shorter deadline of their own. Defaults to no deadline.
+     *
+     * @param timeout How long each request may take.
+     * @param unit The unit of {@code timeout}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder requestDeadline(long timeout, TimeUnit unit) {
+      this.defaultDeadlineMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * Merges identical requests made while one of them is in flight, so that they share a single
+     * call to the server and its result. This saves quota when many callers ask for the same thing
+     * at once, such as when a popular place is looked up by many users. The merged requests receive
+     * the same result object, so they must not modify it.
+     *
+     * @return Returns this builder for call chaining.
+     * @see CoalescingRequestHandler
+     */
+    public Builder coalesceRequests() {
+      this.coalesceRequests = true;
+      return this;
+    }
+
+    /**
+     * Answers repeated requests from {@code responseCache} for as long as it keeps their
+     * responses, rather than sending them to the server again. Keep a reference to the cache to
+     * read its hit, miss and eviction counts.
+     *
+     * @param responseCache The cache of responses.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder responseCache(ResponseCache responseCache) {
+      this.responseCache = responseCache;
+      return this;
+    }
+
+    /**
+     * Answers geocoding requests from {@code geocodingResultStore} where it has their results, and
+     * stores the results of the geocoding requests that are sent. Since the store is kept on disk,
+     * this saves geocoding everything again after a restart. The store stays open when the context
+     * is shut down; the application closes it when it is done with it.
+     *
+     * @param geocodingResultStore The store of geocoding results.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder geocodingResultStore(GeocodingResultStore geocodingResultStore) {
+      this.geocodingResultStore = geocodingResultStore;
+      return this;
+    }
+
+    /**
+     * Answers Place Details requests from {@code placeDetailsCache} where it has the fields they
+     * ask for, and fetches only the fields it lacks otherwise.
+     *
+     * @param placeDetailsCache The cache of Place Details.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder placeDetailsCache(PlaceDetailsCache placeDetailsCache) {
+      this.placeDetailsCache = placeDetailsCache;
+      return this;
+    }
+
+    /**
+     * Answers reverse geocoding requests from {@code reverseGeocodingCache} when it has results
+     * for a location close enough to theirs, as set by the precision of its grid.
+     *
+     * @param reverseGeocodingCache The cache of reverse geocoding results.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder reverseGeocodingCache(ReverseGeocodingCache reverseGeocodingCache) {
+      this.reverseGeocodingCache = reverseGeocodingCache;
+      return this;
+    }
+
+    /**
+     * Answers elevation requests for points from {@code elevationGridCache} where it has the
+     * elevations they need, and sends only the points it lacks to the server.
+     *
+     * @param elevationGridCache The grid of cached elevations.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder elevationGridCache(ElevationGridCache elevationGridCache) {
+      this.elevationGridCache = elevationGridCache;
+      return this;
+    }
+
+    /**
+     * Answers time zone requests from {@code timeZoneCache} when it has the time zone of a
+     * location close enough to theirs, as set by the precision of its grid.
+     *
+     * @param timeZoneCache The cache of time zones.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder timeZoneCache(TimeZoneCache timeZoneCache) {
+      this.timeZoneCache = timeZoneCache;
+      return this;
+    }
+
+    /**
+     * Merges single point elevation requests made within {@code window} of each other into one
+     * request for all of their points, so that each costs a share of one request rather than a
+     * whole one. Requests wait up to {@code window} for others to join them, and a batch is sent
+     * sooner once it reaches the most locations one request can carry.
+     *
+     * @param window How long a request waits for others, for example 5 to 20 milliseconds.
+     * @param unit The unit of {@code window}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder batchElevationRequests(long window, TimeUnit unit) {
+      this.elevationBatchWindowMillis = unit.toMillis(window);
+      return this;
+    }
+
+    /**
+     * Merges Roads API nearest roads requests, and speed limit requests by place ID, made within
+     * {@code window} of each other into requests of up to 100 points or place IDs. Each caller is
+     * given only the snapped points or speed limits of what it asked for.
+     *
+     * @param window How long a request waits for others, for example 5 to 20 milliseconds.
+     * @param unit The unit of {@code window}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder batchRoadsRequests(long window, TimeUnit unit) {
+      this.roadsBatchWindowMillis = unit.toMillis(window);
+      return this;
+    }
+
     /**
      * Converts this builder into a {@code GeoApiContext}.
      *
      * @return Returns the built {@code GeoApiContext}.
      */
     public GeoApiContext build() {
+      RequestHandler requestHandler = builder.build();
+      if (coalesceRequests) {
+        requestHandler = new CoalescingRequestHandler(requestHandler);
+      }
+      if (responseCache != null) {
+        requestHandler = new CachingRequestHandler(requestHandler, responseCache);
+      }
       return new GeoApiContext(
-          builder.build(),
+          requestHandler,
           apiKey,
           baseUrlOverride,
           channel,
@@ -620,6 +1103,15 @@ public class GeoApiContext {
           maxRetries,
           urlSigner,
           requestMetricsReporter,
+          defaultPriority,
+          defaultDeadlineMillis,
+          geocodingResultStore,
+          placeDetailsCache,
+          reverseGeocodingCache,
+          elevationGridCache,
+          timeZoneCache,
+          elevationBatchWindowMillis,
+          roadsBatchWindowMillis,
           experienceIdHeaderValue);
     }
   }
@@ -18,11 +18,18 @@ package com.google.maps;
 import static com.google.maps.internal.StringJoin.join;
 
 import com.google.maps.internal.ApiConfig;
+import com.google.maps.internal.StoreBackedResult;
 import com.google.maps.model.AddressType;
 import com.google.maps.model.ComponentFilter;
 import com.google.maps.model.GeocodingResult;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.LocationType;
+import com.google.maps.store.GeocodingResultStore;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** A request for the Geocoding API. */
 public class GeocodingApiRequest
@@ -54,6 +61,99 @@ public class GeocodingApiRequest
     }
   }
 
+  @Override
+  protected PendingResult<GeocodingResult[]> send() {
+    StoreBackedResult.Sender<GeocodingResult[]> sender =
+        new StoreBackedResult.Sender<GeocodingResult[]>() {
+          @Override
+          public PendingResult<GeocodingResult[]> send() {
+            return GeocodingApiRequest.super.send();
+          }
+        };
+    final GeocodingResultStore store = context().getGeocodingResultStore();
+    if (store != null) {
+      final String key = canonicalParams(null);
+      sender =
+          storeBacked(
+              sender,
+              new StoreBackedResult.Store<GeocodingResult[]>() {
+                @Override
+                public GeocodingResult[] load() throws IOException {
+                  return store.get(key);
+                }
+
+                @Override
+                public GeocodingResult[] save(GeocodingResult[] results) throws IOException {
+                  store.put(key, results);
+                  return results;
+                }
+              });
+    }
+    final ReverseGeocodingCache cache = context().getReverseGeocodingCache();
+    if (cache != null && params().containsKey("latlng")) {
+      String[] latlng = params().get("latlng").get(0).split(",");
+      final String key =
+          cache.cell(Double.parseDouble(latlng[0]), Double.parseDouble(latlng[1]))
+              + "|"
+              + canonicalParams("latlng");
+      sender =
+          storeBacked(
+              sender,
+              new StoreBackedResult.Store<GeocodingResult[]>() {
+                @Override
+                public GeocodingResult[] load() {
+                  return cache.get(key);
+                }
+
+                @Override
+                public GeocodingResult[] save(GeocodingResult[] results) {
+                  cache.put(key, results);
+                  return results;
+                }
+              });
+    }
+    return sender.send();
+  }
+
+  /**
+   * @return A sender of requests that are answered from {@code store} where they can be, and made
+   *     by {@code sender} otherwise.
+   */
+  private static StoreBackedResult.Sender<GeocodingResult[]> storeBacked(
+      final StoreBackedResult.Sender<GeocodingResult[]> sender,
+      final StoreBackedResult.Store<GeocodingResult[]> store) {
+    return new StoreBackedResult.Sender<GeocodingResult[]>() {
+      @Override
+      public PendingResult<GeocodingResult[]> send() {
+        return new StoreBackedResult<>(sender, store);
+      }
+    };
+  }
+
+  /**
+   * @param excluded A parameter to leave out, or null.
+   * @return The parameters that determine the results of this request, in a canonical order. The
+   *     address is normalized so that it matches the same address typed differently.
+   */
+  private String canonicalParams(String excluded) {
+    StringBuilder key = new StringBuilder();
+    for (Map.Entry<String, List<String>> param : new TreeMap<>(params()).entrySet()) {
+      if ("channel".equals(param.getKey()) || param.getKey().equals(excluded)) {
+        continue;
+      }
+      for (String value : param.getValue()) {
+        if (key.length() > 0) {
+          key.append('&');
+        }
+        if ("address".equals(param.getKey())) {
+          value = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        }
+        key.append(param.getKey()).append('=').append(value);
+      }
+    }
+    return key.toString();
+  }
+
   /**
    * Creates a forward geocode for {@code address}.
    *
@@ -18,18 +18,29 @@ package com.google.maps;
 import com.google.gson.FieldNamingPolicy;
 import com.google.maps.GeoApiContext.RequestHandler;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.CircuitBreaker;
+import com.google.maps.internal.Deadline;
 import com.google.maps.internal.ExceptionsAllowedToRetry;
+import com.google.maps.internal.HedgingPolicy;
 import com.google.maps.internal.HttpHeaders;
 import com.google.maps.internal.OkHttpPendingResult;
 import com.google.maps.internal.RateLimitExecutorService;
+import com.google.maps.internal.VirtualThreads;
 import com.google.maps.metrics.RequestMetrics;
+import com.google.maps.ratelimit.SharedRateLimiter;
 import java.io.IOException;
 import java.net.Proxy;
-import java.util.concurrent.ExecutorService;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import okhttp3.Authenticator;
 import okhttp3.Credentials;
-import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -45,11 +56,47 @@ import okhttp3.Route;
 public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
   private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
   private final OkHttpClient client;
-  private final ExecutorService executorService;
+  private final RateLimitExecutorService executorService;
+  private final boolean streamResponses;
+  private final ScheduledExecutorService retryScheduler;
+  private final HedgingPolicy hedgingPolicy;
+  private final int circuitBreakerThreshold;
+  private final long circuitBreakerOpenMillis;
+  private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
 
-  /* package */ OkHttpRequestHandler(OkHttpClient client, ExecutorService executorService) {
+  /* package */ OkHttpRequestHandler(
+      OkHttpClient client,
+      RateLimitExecutorService executorService,
+      boolean streamResponses,
+      HedgingPolicy hedgingPolicy,
+      int circuitBreakerThreshold,
+      long circuitBreakerOpenMillis) {
     this.client = client;
     this.executorService = executorService;
+    this.streamResponses = streamResponses;
+    this.hedgingPolicy = hedgingPolicy;
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+    this.circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+    this.retryScheduler = newRetryScheduler();
+  }
+
+  /**
+   * Asynchronous requests wait out their retry backoff on this scheduler instead of sleeping on a
+   * dispatcher thread. Its single thread only re-queues calls, and is refused rather than kept
+   * waiting by a full queue, so it is never busy for long.
+   */
+  private static ScheduledExecutorService newRetryScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return RateLimitExecutorService.newTimerThread(runnable, "OkHttpRetryScheduler");
+              }
+            });
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
   }
 
   @Override
@@ -64,6 +111,35 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
       Integer maxRetries,
       ExceptionsAllowedToRetry exceptionsAllowedToRetry,
       RequestMetrics metrics) {
+    return handle(
+        hostName,
+        url,
+        userAgent,
+        experienceIdHeaderValue,
+        clazz,
+        fieldNamingPolicy,
+        errorTimeout,
+        maxRetries,
+        exceptionsAllowedToRetry,
+        metrics,
+        RequestPriority.INTERACTIVE,
+        null);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+      String hostName,
+      String url,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
     Request.Builder builder = new Request.Builder().get().header("User-Agent", userAgent);
     if (experienceIdHeaderValue != null) {
       builder = builder.header(HttpHeaders.X_GOOG_MAPS_EXPERIENCE_ID, experienceIdHeaderValue);
@@ -73,12 +149,19 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
     return new OkHttpPendingResult<>(
         req,
         client,
+        executorService,
         clazz,
         fieldNamingPolicy,
         errorTimeout,
         maxRetries,
         exceptionsAllowedToRetry,
-        metrics);
+        metrics,
+        priority,
+        deadline,
+        streamResponses,
+        retryScheduler,
+        hedgingPolicy,
+        circuitBreakerFor(hostName, url));
   }
 
   @Override
@@ -94,6 +177,37 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
       Integer maxRetries,
       ExceptionsAllowedToRetry exceptionsAllowedToRetry,
       RequestMetrics metrics) {
+    return handlePost(
+        hostName,
+        url,
+        payload,
+        userAgent,
+        experienceIdHeaderValue,
+        clazz,
+        fieldNamingPolicy,
+        errorTimeout,
+        maxRetries,
+        exceptionsAllowedToRetry,
+        metrics,
+        RequestPriority.INTERACTIVE,
+        null);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+      String hostName,
+      String url,
+      String payload,
+      String userAgent,
+      String experienceIdHeaderValue,
+      Class<R> clazz,
+      FieldNamingPolicy fieldNamingPolicy,
+      long errorTimeout,
+      Integer maxRetries,
+      ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline) {
     RequestBody body = RequestBody.create(JSON, payload);
     Request.Builder builder = new Request.Builder().post(body).header("User-Agent", userAgent);
 
@@ -105,31 +219,84 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
     return new OkHttpPendingResult<>(
         req,
         client,
+        executorService,
         clazz,
         fieldNamingPolicy,
         errorTimeout,
         maxRetries,
         exceptionsAllowedToRetry,
-        metrics);
+        metrics,
+        priority,
+        deadline,
+        streamResponses,
+        retryScheduler,
+        hedgingPolicy,
+        circuitBreakerFor(hostName, url));
+  }
+
+  /**
+   * Returns the circuit breaker of the endpoint {@code url} is for, creating it on first use.
+   *
+   * @return The breaker, or null if circuit breaking is disabled.
+   */
+  private CircuitBreaker circuitBreakerFor(String hostName, String url) {
+    if (circuitBreakerThreshold <= 0) {
+      return null;
+    }
+    int query = url.indexOf('?');
+    String endpoint = hostName + (query < 0 ? url : url.substring(0, query));
+    CircuitBreaker breaker = circuitBreakers.get(endpoint);
+    if (breaker == null) {
+      CircuitBreaker created =
+          new CircuitBreaker(
+              endpoint, circuitBreakerThreshold, circuitBreakerOpenMillis, TimeUnit.MILLISECONDS);
+      breaker = circuitBreakers.putIfAbsent(endpoint, created);
+      if (breaker == null) {
+        breaker = created;
+      }
+    }
+    return breaker;
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return executorService.getQueueDepth();
+  }
+
+  @Override
+  public long getQueueWaitMillis() {
+    return executorService.getQueueWaitMillis();
   }
 
   @Override
   public void shutdown() {
     executorService.shutdown();
+    retryScheduler.shutdownNow();
     client.connectionPool().evictAll();
   }
 
   /** Builder strategy for constructing an {@code OkHTTPRequestHandler}. */
   public static class Builder implements GeoApiContext.RequestHandler.Builder {
     private final OkHttpClient.Builder builder;
-    private final RateLimitExecutorService rateLimitExecutorService;
-    private final Dispatcher dispatcher;
+    private Integer queriesPerSecond;
+    private Integer maxConcurrentRequests;
+    private final Map<String, Integer> apiQueriesPerSecond = new LinkedHashMap<>();
+    private Integer globalQueriesPerSecond;
+    private SharedRateLimiter sharedRateLimiter;
+    private boolean streamResponses;
+    private boolean virtualThreads;
+    private boolean adaptiveRateLimit;
+    private int maxQueueDepth = Integer.MAX_VALUE;
+    private RateLimitExecutorService.OverflowPolicy overflowPolicy =
+        RateLimitExecutorService.OverflowPolicy.BLOCK;
+    private final Map<RequestPriority, Integer> priorityWeights =
+        new EnumMap<>(RequestPriority.class);
+    private HedgingPolicy hedgingPolicy;
+    private int circuitBreakerThreshold;
+    private long circuitBreakerOpenMillis;
 
     public Builder() {
       builder = new OkHttpClient.Builder();
-      rateLimitExecutorService = new RateLimitExecutorService();
-      dispatcher = new Dispatcher(rateLimitExecutorService);
-      builder.dispatcher(dispatcher);
     }
 
     @Override
@@ -152,9 +319,25 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
 
     @Override
     public Builder queriesPerSecond(int maxQps) {
-      dispatcher.setMaxRequests(maxQps);
-      dispatcher.setMaxRequestsPerHost(maxQps);
-      rateLimitExecutorService.setQueriesPerSecond(maxQps);
+      queriesPerSecond = maxQps;
+      return this;
+    }
+
+    @Override
+    public Builder queriesPerSecond(String pathPrefix, int maxQps) {
+      apiQueriesPerSecond.put(pathPrefix, maxQps);
+      return this;
+    }
+
+    @Override
+    public Builder globalQueriesPerSecond(int maxQps) {
+      globalQueriesPerSecond = maxQps;
+      return this;
+    }
+
+    @Override
+    public Builder sharedRateLimiter(SharedRateLimiter sharedRateLimiter) {
+      this.sharedRateLimiter = sharedRateLimiter;
       return this;
     }
 
@@ -184,6 +367,152 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
       return this;
     }
 
+    /**
+     * Decodes JSON responses directly from the connection instead of reading the whole body into
+     * memory first. This lowers peak heap usage for large responses, such as Directions results
+     * with alternatives or large Distance Matrix requests. Defaults to false.
+     *
+     * @param streamResponses Whether to stream responses into the JSON parser.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder streamResponses(boolean streamResponses) {
+      this.streamResponses = streamResponses;
+      return this;
+    }
+
+    /**
+     * Runs requests on virtual threads rather than on a pool of platform threads, so that slow
+     * responses don't each tie up an OS thread. Rate limiting is unaffected. Requires Java 21 or
+     * later. Defaults to false.
+     *
+     * @param virtualThreads Whether to dispatch requests on virtual threads.
+     * @return Returns this builder for call chaining.
+     * @throws UnsupportedOperationException If enabled on a JVM without virtual threads.
+     */
+    public Builder virtualThreads(boolean virtualThreads) {
+      if (virtualThreads && !VirtualThreads.isSupported()) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+      }
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    /**
+     * Adapts the query rate to the server's feedback. Whenever a request is rejected with {@code
+     * OVER_QUERY_LIMIT}, {@code RESOURCE_EXHAUSTED} or HTTP 429, the rate of the limit it was sent
+     * under is halved. It then climbs back by one query per second for each second's worth of
+     * successful requests, up to the configured rate. This allows the configured rate to be set to
+     * the nominal quota without tuning it down per deployment. Defaults to false.
+     *
+     * @param adaptiveRateLimit Whether to adapt the query rate.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder adaptiveRateLimit(boolean adaptiveRateLimit) {
+      this.adaptiveRateLimit = adaptiveRateLimit;
+      return this;
+    }
+
+    /**
+     * Limits how many requests may wait for the rate limit at once, so that producers which outrun
+     * {@link #queriesPerSecond} are pushed back on instead of queueing without bound. Defaults to
+     * unbounded.
+     *
+     * @param maxQueueDepth The most requests that may be queued.
+     * @param overflowPolicy What to do with requests made while the queue is full.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder maxQueueDepth(
+        int maxQueueDepth, RateLimitExecutorService.OverflowPolicy overflowPolicy) {
+      if (maxQueueDepth < 1) {
+        throw new IllegalArgumentException("maxQueueDepth must be positive");
+      }
+      this.maxQueueDepth = maxQueueDepth;
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Limits how many requests may be in flight at once. Requests are sent with {@link
+     * okhttp3.Call#execute()} on the rate limited executor, so the limits of OkHttp's {@link
+     * okhttp3.Dispatcher} don't apply to them. Defaults to the rate set with {@link
+     * #queriesPerSecond(int)}, or 50 if none is set.
+     *
+     * @param maxConcurrentRequests The most requests to have in flight.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+      if (maxConcurrentRequests < 1) {
+        throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+      }
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    /**
+     * Sets the share of the rate limit given to requests of {@code priority} while requests of
+     * other priorities are also waiting. By default nine {@link RequestPriority#INTERACTIVE}
+     * requests are let through for every {@link RequestPriority#BATCH} request. A weight of zero
+     * starves the lane until every more urgent lane is empty, giving strict priority, so it is not
+     * allowed for {@link RequestPriority#INTERACTIVE}, the most urgent lane.
+     *
+     * @param priority The priority lane.
+     * @param weight The lane's relative share, zero or more.
+     * @return Returns this builder for call chaining.
+     * @throws IllegalArgumentException If {@code weight} is negative, or zero for {@link
+     *     RequestPriority#INTERACTIVE}.
+     */
+    public Builder priorityWeight(RequestPriority priority, int weight) {
+      if (weight < 0) {
+        throw new IllegalArgumentException("weight must not be negative");
+      }
+      if (weight == 0 && priority == RequestPriority.INTERACTIVE) {
+        throw new IllegalArgumentException("The weight of " + priority + " must be positive");
+      }
+      priorityWeights.put(priority, weight);
+      return this;
+    }
+
+    /**
+     * Hedges slow GET requests: if a request has had no response by the time {@code percentile}
+     * of recent requests to the same API had theirs, an identical request is sent as well. The
+     * first response wins and the other request is cancelled. Hedges wait for the rate limit like
+     * any other request, and at most {@code maxHedgeRatio} of requests are hedged. Defaults to no
+     * hedging.
+     *
+     * @param percentile The latency percentile after which to hedge, for example 0.95.
+     * @param minDelay The least time to wait before hedging.
+     * @param unit The unit of {@code minDelay}.
+     * @param maxHedgeRatio The most hedges to send per request, for example 0.05.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder hedging(double percentile, long minDelay, TimeUnit unit, double maxHedgeRatio) {
+      this.hedgingPolicy = new HedgingPolicy(percentile, minDelay, unit, maxHedgeRatio);
+      return this;
+    }
+
+    /**
+     * Guards each API endpoint with a circuit breaker. After {@code failureThreshold} consecutive
+     * server errors or connection failures the breaker opens, and requests to that endpoint fail
+     * immediately with a {@link com.google.maps.errors.CircuitBreakerOpenException} instead of
+     * waiting for the rate limit and retrying. After {@code openDuration} a single trial request is
+     * let through, whose success closes the breaker again. State changes are reported to {@link
+     * com.google.maps.metrics.RequestMetrics#circuitBreakerStateChanged}. Defaults to no circuit
+     * breaking.
+     *
+     * @param failureThreshold How many consecutive failures open the breaker.
+     * @param openDuration How long the breaker stays open before a trial request.
+     * @param unit The unit of {@code openDuration}.
+     * @return Returns this builder for call chaining.
+     */
+    public Builder circuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+      if (failureThreshold < 1) {
+        throw new IllegalArgumentException("failureThreshold must be positive");
+      }
+      this.circuitBreakerThreshold = failureThreshold;
+      this.circuitBreakerOpenMillis = unit.toMillis(openDuration);
+      return this;
+    }
+
     /**
      * Gets a reference to the OkHttpClient.Builder used to build the OkHttpRequestHandler's
      * internal OkHttpClient. This allows you to fully customize the OkHttpClient that the resulting
@@ -198,8 +527,34 @@ public class OkHttpRequestHandler implements GeoApiContext.RequestHandler {
 
     @Override
     public RequestHandler build() {
+      RateLimitExecutorService rateLimitExecutorService =
+          new RateLimitExecutorService(virtualThreads, maxQueueDepth, overflowPolicy);
+      if (queriesPerSecond != null) {
+        rateLimitExecutorService.setQueriesPerSecond(queriesPerSecond);
+        rateLimitExecutorService.setMaxConcurrentRequests(queriesPerSecond);
+      }
+      if (maxConcurrentRequests != null) {
+        rateLimitExecutorService.setMaxConcurrentRequests(maxConcurrentRequests);
+      }
+      for (Map.Entry<String, Integer> api : apiQueriesPerSecond.entrySet()) {
+        rateLimitExecutorService.setQueriesPerSecond(api.getKey(), api.getValue());
+      }
+      if (globalQueriesPerSecond != null) {
+        rateLimitExecutorService.setGlobalQueriesPerSecond(globalQueriesPerSecond);
+      }
+      rateLimitExecutorService.setSharedRateLimiter(sharedRateLimiter);
+      rateLimitExecutorService.setAdaptive(adaptiveRateLimit);
+      for (Map.Entry<RequestPriority, Integer> lane : priorityWeights.entrySet()) {
+        rateLimitExecutorService.setPriorityWeight(lane.getKey(), lane.getValue());
+      }
       OkHttpClient client = builder.build();
-      return new OkHttpRequestHandler(client, rateLimitExecutorService);
+      return new OkHttpRequestHandler(
+          client,
+          rateLimitExecutorService,
+          streamResponses,
+          hedgingPolicy,
+          circuitBreakerThreshold,
+          circuitBreakerOpenMillis);
     }
   }
 }
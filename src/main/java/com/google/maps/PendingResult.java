@@ -16,7 +16,10 @@
 package com.google.maps;
 
 import com.google.maps.errors.ApiException;
+import com.google.maps.internal.PendingResultFuture;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A pending result from an API call.
@@ -57,6 +60,30 @@ public interface PendingResult<T> {
   /** Attempts to cancel the request. */
   void cancel();
 
+  /**
+   * Performs the request asynchronously, returning a future for its result. The future is
+   * completed on the thread that delivers the response, and cancelling it cancels the request.
+   *
+   * @return A future that completes with the result, or exceptionally with the failure.
+   */
+  default CompletableFuture<T> toCompletableFuture() {
+    return PendingResultFuture.start(this, null);
+  }
+
+  /**
+   * Performs the request asynchronously, returning a future for its result that is completed on
+   * {@code executor}. Cancelling the future cancels the request.
+   *
+   * @param executor The executor to complete the future on.
+   * @return A future that completes with the result, or exceptionally with the failure.
+   */
+  default CompletableFuture<T> toCompletableFuture(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor must not be null");
+    }
+    return PendingResultFuture.start(this, executor);
+  }
+
   /**
    * The callback interface the API client code needs to implement to handle API results.
    *
@@ -18,6 +18,7 @@ package com.google.maps;
 import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.Deadline;
 import com.google.maps.internal.StringJoin.UrlValue;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -25,6 +26,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base implementation for {@code PendingResult}.
@@ -40,6 +42,8 @@ abstract class PendingResultBase<T, A extends PendingResultBase<T, A, R>, R exte
   private HashMap<String, List<String>> params = new HashMap<>();
   private PendingResult<T> delegate;
   private Class<? extends R> responseClass;
+  private RequestPriority priority;
+  private long deadlineMillis;
 
   protected PendingResultBase(GeoApiContext context, ApiConfig config, Class<? extends R> clazz) {
     this.context = context;
@@ -77,18 +81,60 @@ abstract class PendingResultBase<T, A extends PendingResultBase<T, A, R>, R exte
           "'await', 'awaitIgnoreError' or 'setCallback' was already called.");
     }
     validateRequest();
+    return delegate = send();
+  }
+
+  protected abstract void validateRequest();
+
+  /**
+   * Sends the request to the API. Request types that can answer requests locally, such as from a
+   * store of earlier results, override this to do so.
+   *
+   * @return The pending result of the request.
+   */
+  protected PendingResult<T> send() {
+    return send(params);
+  }
+
+  /**
+   * Sends the request to the API with other parameters in place of its own, keeping its priority
+   * and deadline.
+   *
+   * @param params The parameters to send.
+   * @return The pending result of the request.
+   */
+  protected final PendingResult<T> send(Map<String, List<String>> params) {
+    return send(responseClass, params);
+  }
+
+  /**
+   * Sends the request to the API with the given parameters, decoding the response as {@code
+   * responseClass} rather than as this request's own response type. This lets a request offer
+   * alternative representations of its result.
+   *
+   * @param responseClass The class to decode the response as.
+   * @param params The parameters to send.
+   * @param <U> The type of the alternative result.
+   * @return The pending result of the request.
+   */
+  protected final <U> PendingResult<U> send(
+      Class<? extends ApiResponse<U>> responseClass, Map<String, List<String>> params) {
+    Deadline deadline =
+        deadlineMillis > 0 ? Deadline.after(deadlineMillis, TimeUnit.MILLISECONDS) : null;
     switch (config.requestVerb) {
       case "GET":
-        return delegate = context.get(config, responseClass, params);
+        return context.get(config, responseClass, params, priority, deadline);
       case "POST":
-        return delegate = context.post(config, responseClass, params);
+        return context.post(config, responseClass, params, priority, deadline);
       default:
         throw new IllegalStateException(
             String.format("Unexpected request method '%s'", config.requestVerb));
     }
   }
 
-  protected abstract void validateRequest();
+  protected GeoApiContext context() {
+    return context;
+  }
 
   private A getInstance() {
     @SuppressWarnings("unchecked")
@@ -159,6 +205,33 @@ abstract class PendingResultBase<T, A extends PendingResultBase<T, A, R>, R exte
     return param("channel", channel);
   }
 
+  /**
+   * The priority of the request while it waits for the client's rate limit. Interactive requests
+   * are let through ahead of batch requests. Defaults to the priority set with {@link
+   * GeoApiContext.Builder#defaultPriority(RequestPriority)}.
+   *
+   * @param priority The priority of this request.
+   * @return Returns the request for call chaining.
+   */
+  public A priority(RequestPriority priority) {
+    this.priority = priority;
+    return getInstance();
+  }
+
+  /**
+   * How long this request may take from start to finish, including queueing and retries. If the
+   * context has a default deadline as well, the earlier of the two applies. See {@link
+   * GeoApiContext.Builder#requestDeadline(long, TimeUnit)}.
+   *
+   * @param timeout How long the request may take, counted from when it is made.
+   * @param unit The unit of {@code timeout}.
+   * @return Returns the request for call chaining.
+   */
+  public A deadline(long timeout, TimeUnit unit) {
+    this.deadlineMillis = unit.toMillis(timeout);
+    return getInstance();
+  }
+
   /**
    * Custom parameter. For advanced usage only.
    *
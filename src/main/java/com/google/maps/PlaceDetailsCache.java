@@ -0,0 +1,405 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.PlaceDetailsRequest.FieldMask;
+import com.google.maps.model.Bounds;
+import com.google.maps.model.Geometry;
+import com.google.maps.model.PlaceDetails;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of Place Details that remembers each place's details field by field, so that requests
+ * for different fields of the same place can share what was fetched before. A request is answered
+ * from the cache if it has every field the request asks for. Otherwise only the fields it lacks are
+ * fetched, and merged into what it has. A request without a field mask asks for every field.
+ *
+ * <p>Places are cached by place ID, which the Google Maps Platform terms allow to be kept
+ * indefinitely. The other fields are kept for a limited time, which can be set for each field to
+ * what the terms allow for it. The least recently used places make room for new ones once the cache
+ * is full. Callers must treat the details they get as read-only, since they share their parts with
+ * the cache.
+ *
+ * @see GeoApiContext.Builder#placeDetailsCache(PlaceDetailsCache)
+ */
+public class PlaceDetailsCache {
+
+  /** The fields that a request without a field mask returns. */
+  static final List<FieldMask> ALL_FIELDS;
+
+  private static final Map<String, FieldMask> FIELDS_BY_NAME = new HashMap<>();
+
+  static {
+    List<FieldMask> all = new ArrayList<>();
+    for (FieldMask field : FieldMask.values()) {
+      FIELDS_BY_NAME.put(field.toUrlValue(), field);
+      if (field.toUrlValue().indexOf('/') < 0 && !isDeprecated(field)) {
+        all.add(field);
+      }
+    }
+    ALL_FIELDS = Collections.unmodifiableList(all);
+  }
+
+  /** The details cached for a place, and when each of their fields was fetched. */
+  static final class CachedPlace {
+    final PlaceDetails details = new PlaceDetails();
+    final Map<FieldMask, Long> fetchedAtNanos = new EnumMap<>(FieldMask.class);
+  }
+
+  private final int maxPlaces;
+  private final long defaultTtlNanos;
+  private final Map<FieldMask, Long> ttlNanos = new EnumMap<>(FieldMask.class);
+  private final LinkedHashMap<String, CachedPlace> entries;
+  private long hitCount;
+  private long partialHitCount;
+  private long missCount;
+
+  /**
+   * @param maxPlaces The most places to keep details for.
+   * @param ttl How long fields are kept, unless set differently with {@link #ttl(FieldMask, long,
+   *     TimeUnit)}.
+   * @param unit The unit of {@code ttl}.
+   */
+  public PlaceDetailsCache(int maxPlaces, long ttl, TimeUnit unit) {
+    if (maxPlaces <= 0) {
+      throw new IllegalArgumentException("maxPlaces must be positive");
+    }
+    this.maxPlaces = maxPlaces;
+    this.defaultTtlNanos = unit.toNanos(ttl);
+    this.entries =
+        new LinkedHashMap<String, CachedPlace>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, CachedPlace> eldest) {
+            return size() > PlaceDetailsCache.this.maxPlaces;
+          }
+        };
+  }
+
+  /**
+   * Sets how long one field is kept. The setting also applies to the parts of the field, such as
+   * {@link FieldMask#GEOMETRY_LOCATION} for {@link FieldMask#GEOMETRY}, unless they have a setting
+   * of their own. The place ID is always kept.
+   *
+   * @param field The field.
+   * @param ttl How long the field is kept.
+   * @param unit The unit of {@code ttl}.
+   * @return Returns this cache for call chaining.
+   */
+  public synchronized PlaceDetailsCache ttl(FieldMask field, long ttl, TimeUnit unit) {
+    ttlNanos.put(field, unit.toNanos(ttl));
+    return this;
+  }
+
+  /** @return The number of requests answered entirely from the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** @return The number of requests for which only some of the fields had to be fetched. */
+  public synchronized long getPartialHitCount() {
+    return partialHitCount;
+  }
+
+  /** @return The number of requests for which every field had to be fetched. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** @return The number of places in the cache. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Drops every cached place. */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * @param name The name of a field as sent to the API, such as {@code "geometry/location"}.
+   * @return The field, or null if there is no such field.
+   */
+  static FieldMask field(String name) {
+    return FIELDS_BY_NAME.get(name);
+  }
+
+  /**
+   * @return The entry for a place, or a new one if it isn't in the cache yet, which is only added
+   *     once fields are merged into it.
+   */
+  synchronized CachedPlace entry(String key) {
+    CachedPlace entry = entries.get(key);
+    return entry != null ? entry : new CachedPlace();
+  }
+
+  /** @return The fields of {@code requested} that the entry lacks, and which must be fetched. */
+  synchronized List<FieldMask> missing(CachedPlace entry, List<FieldMask> requested) {
+    long now = System.nanoTime();
+    List<FieldMask> missing = new ArrayList<>();
+    for (FieldMask field : requested) {
+      if (!isCovered(entry, field, now)) {
+        missing.add(field);
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Answers a request from the entry, which counts as a hit.
+   *
+   * @return The requested fields of the entry, or null if it lacks any of them.
+   */
+  synchronized PlaceDetails get(CachedPlace entry, List<FieldMask> requested) {
+    long now = System.nanoTime();
+    PlaceDetails details = new PlaceDetails();
+    for (FieldMask field : requested) {
+      if (!isCovered(entry, field, now)) {
+        return null;
+      }
+      copy(field, entry.details, details);
+    }
+    details.htmlAttributions = entry.details.htmlAttributions;
+    hitCount++;
+    return details;
+  }
+
+  /**
+   * Merges newly fetched fields into the entry for a place, which is added to the cache if it
+   * isn't there, and counts the request as a partial hit or a miss.
+   *
+   * @return The requested fields of the entry, once merged.
+   */
+  synchronized PlaceDetails merge(
+      String key,
+      CachedPlace entry,
+      List<FieldMask> fetched,
+      PlaceDetails result,
+      List<FieldMask> requested) {
+    long now = System.nanoTime();
+    update(entry, fetched, result, now);
+    CachedPlace cached = entries.get(key);
+    if (cached == null) {
+      entries.put(key, entry);
+    } else if (cached != entry) {
+      // Another request added the place while these fields were being fetched.
+      update(cached, fetched, result, now);
+    }
+    if (fetched.size() < requested.size()) {
+      partialHitCount++;
+    } else {
+      missCount++;
+    }
+
+    PlaceDetails details = new PlaceDetails();
+    for (FieldMask field : requested) {
+      copy(field, entry.details, details);
+    }
+    details.htmlAttributions = entry.details.htmlAttributions;
+    return details;
+  }
+
+  /** Copies newly fetched fields into an entry. */
+  private static void update(
+      CachedPlace entry, List<FieldMask> fetched, PlaceDetails result, long now) {
+    for (FieldMask field : fetched) {
+      copy(field, result, entry.details);
+      entry.fetchedAtNanos.put(field, now);
+    }
+    entry.details.placeId = result.placeId != null ? result.placeId : entry.details.placeId;
+    entry.details.htmlAttributions = result.htmlAttributions;
+  }
+
+  /** @return Whether the entry has the field, or a field it is part of, and it hasn't expired. */
+  private boolean isCovered(CachedPlace entry, FieldMask field, long now) {
+    if (field == FieldMask.PLACE_ID) {
+      return entry.details.placeId != null;
+    }
+    for (FieldMask f = field; f != null; f = parent(f)) {
+      Long fetchedAt = entry.fetchedAtNanos.get(f);
+      if (fetchedAt != null && now - fetchedAt < ttlNanos(f)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long ttlNanos(FieldMask field) {
+    for (FieldMask f = field; f != null; f = parent(f)) {
+      Long ttl = ttlNanos.get(f);
+      if (ttl != null) {
+        return ttl;
+      }
+    }
+    return defaultTtlNanos;
+  }
+
+  private static FieldMask parent(FieldMask field) {
+    String name = field.toUrlValue();
+    int slash = name.lastIndexOf('/');
+    return slash < 0 ? null : FIELDS_BY_NAME.get(name.substring(0, slash));
+  }
+
+  private static boolean isDeprecated(FieldMask field) {
+    try {
+      return FieldMask.class.getField(field.name()).isAnnotationPresent(Deprecated.class);
+    } catch (NoSuchFieldException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** Copies one field from one set of details to another. */
+  @SuppressWarnings("deprecation")
+  private static void copy(FieldMask field, PlaceDetails from, PlaceDetails to) {
+    switch (field) {
+      case ADDRESS_COMPONENT:
+        to.addressComponents = from.addressComponents;
+        break;
+      case ADR_ADDRESS:
+        to.adrAddress = from.adrAddress;
+        break;
+      case ALT_ID:
+        to.altIds = from.altIds;
+        break;
+      case BUSINESS_STATUS:
+        to.businessStatus = from.businessStatus;
+        break;
+      case FORMATTED_ADDRESS:
+        to.formattedAddress = from.formattedAddress;
+        break;
+      case FORMATTED_PHONE_NUMBER:
+        to.formattedPhoneNumber = from.formattedPhoneNumber;
+        break;
+      case GEOMETRY:
+        to.geometry = from.geometry;
+        break;
+      case GEOMETRY_LOCATION:
+      case GEOMETRY_LOCATION_LAT:
+      case GEOMETRY_LOCATION_LNG:
+        if (from.geometry != null) {
+          geometry(to).location = from.geometry.location;
+        }
+        break;
+      case GEOMETRY_VIEWPORT:
+        if (from.geometry != null) {
+          geometry(to).viewport = from.geometry.viewport;
+        }
+        break;
+      case GEOMETRY_VIEWPORT_NORTHEAST:
+      case GEOMETRY_VIEWPORT_NORTHEAST_LAT:
+      case GEOMETRY_VIEWPORT_NORTHEAST_LNG:
+        if (from.geometry != null && from.geometry.viewport != null) {
+          viewport(geometry(to)).northeast = from.geometry.viewport.northeast;
+        }
+        break;
+      case GEOMETRY_VIEWPORT_SOUTHWEST:
+      case GEOMETRY_VIEWPORT_SOUTHWEST_LAT:
+      case GEOMETRY_VIEWPORT_SOUTHWEST_LNG:
+        if (from.geometry != null && from.geometry.viewport != null) {
+          viewport(geometry(to)).southwest = from.geometry.viewport.southwest;
+        }
+        break;
+      case ICON:
+        to.icon = from.icon;
+        break;
+      case INTERNATIONAL_PHONE_NUMBER:
+        to.internationalPhoneNumber = from.internationalPhoneNumber;
+        break;
+      case NAME:
+        to.name = from.name;
+        break;
+      case OPENING_HOURS:
+        to.openingHours = from.openingHours;
+        break;
+      case PERMANENTLY_CLOSED:
+        to.permanentlyClosed = from.permanentlyClosed;
+        break;
+      case USER_RATINGS_TOTAL:
+        to.userRatingsTotal = from.userRatingsTotal;
+        break;
+      case PHOTOS:
+        to.photos = from.photos;
+        break;
+      case PLACE_ID:
+        to.placeId = from.placeId;
+        break;
+      case PLUS_CODE:
+        to.plusCode = from.plusCode;
+        break;
+      case PRICE_LEVEL:
+        to.priceLevel = from.priceLevel;
+        break;
+      case RATING:
+        to.rating = from.rating;
+        break;
+      case REVIEW:
+        to.reviews = from.reviews;
+        break;
+      case SCOPE:
+        to.scope = from.scope;
+        break;
+      case TYPES:
+        to.types = from.types;
+        break;
+      case URL:
+        to.url = from.url;
+        break;
+      case UTC_OFFSET:
+        to.utcOffset = from.utcOffset;
+        break;
+      case VICINITY:
+        to.vicinity = from.vicinity;
+        break;
+      case WEBSITE:
+        to.website = from.website;
+        break;
+      default:
+        // ID and REFERENCE have no counterpart in PlaceDetails.
+        break;
+    }
+  }
+
+  /**
+   * @return A copy of the geometry of {@code details}, which replaces it there, so that geometry
+   *     already handed out isn't changed.
+   */
+  private static Geometry geometry(PlaceDetails details) {
+    Geometry geometry = new Geometry();
+    if (details.geometry != null) {
+      geometry.bounds = details.geometry.bounds;
+      geometry.location = details.geometry.location;
+      geometry.locationType = details.geometry.locationType;
+      geometry.viewport = details.geometry.viewport;
+    }
+    return details.geometry = geometry;
+  }
+
+  /** @return A copy of the viewport of {@code geometry}, which replaces it there. */
+  private static Bounds viewport(Geometry geometry) {
+    Bounds viewport = new Bounds();
+    if (geometry.viewport != null) {
+      viewport.northeast = geometry.viewport.northeast;
+      viewport.southwest = geometry.viewport.southwest;
+    }
+    return geometry.viewport = viewport;
+  }
+}
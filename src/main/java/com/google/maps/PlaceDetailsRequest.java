@@ -19,9 +19,14 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.StoreBackedResult;
 import com.google.maps.internal.StringJoin;
 import com.google.maps.internal.StringJoin.UrlValue;
 import com.google.maps.model.PlaceDetails;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A <a href="https://developers.google.com/places/web-service/details#PlaceDetailsRequests">Place
@@ -88,6 +93,72 @@ public class PlaceDetailsRequest
     }
   }
 
+  @Override
+  protected PendingResult<PlaceDetails> send() {
+    final PlaceDetailsCache cache = context().getPlaceDetailsCache();
+    final List<FieldMask> requested = requestedFields();
+    if (cache == null || requested == null) {
+      return super.send();
+    }
+    final String key = cacheKey();
+    final PlaceDetailsCache.CachedPlace entry = cache.entry(key);
+    List<FieldMask> missing = cache.missing(entry, requested);
+    final List<FieldMask> fetched = missing.isEmpty() ? requested : missing;
+
+    return new StoreBackedResult<>(
+        new StoreBackedResult.Sender<PlaceDetails>() {
+          @Override
+          public PendingResult<PlaceDetails> send() {
+            if (!params().containsKey("fields") && fetched.size() == requested.size()) {
+              return PlaceDetailsRequest.super.send();
+            }
+            Map<String, List<String>> params = new HashMap<>(params());
+            List<String> fields = new ArrayList<>();
+            fields.add(StringJoin.join(',', fetched.toArray(new FieldMask[0])));
+            params.put("fields", fields);
+            return PlaceDetailsRequest.this.send(params);
+          }
+        },
+        new StoreBackedResult.Store<PlaceDetails>() {
+          @Override
+          public PlaceDetails load() {
+            return cache.get(entry, requested);
+          }
+
+          @Override
+          public PlaceDetails save(PlaceDetails result) {
+            return cache.merge(key, entry, fetched, result, requested);
+          }
+        });
+  }
+
+  /** @return The fields this request asks for, or null if they can't all be cached. */
+  private List<FieldMask> requestedFields() {
+    List<String> fields = params().get("fields");
+    if (fields == null) {
+      return PlaceDetailsCache.ALL_FIELDS;
+    }
+    List<FieldMask> requested = new ArrayList<>();
+    for (String name : fields.get(0).split(",")) {
+      FieldMask field = PlaceDetailsCache.field(name);
+      if (field == null) {
+        return null;
+      }
+      requested.add(field);
+    }
+    return requested;
+  }
+
+  /** @return The parameters that determine which place, and in what language, it is about. */
+  private String cacheKey() {
+    StringBuilder key = new StringBuilder(params().get("placeid").get(0));
+    for (String param : new String[] {"language", "region"}) {
+      List<String> value = params().get(param);
+      key.append('|').append(value == null ? "" : value.get(0));
+    }
+    return key.toString();
+  }
+
   public static class Response implements ApiResponse<PlaceDetails> {
     public String status;
     public PlaceDetails result;
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+/**
+ * How urgently a request should be sent, relative to the other requests waiting for the same rate
+ * limit. Each priority is queued separately, so a backlog of batch work doesn't delay requests a
+ * user is waiting on.
+ *
+ * @see GeoApiContext.Builder#defaultPriority(RequestPriority)
+ */
+public enum RequestPriority {
+  /** Requests whose results someone is waiting for, such as autocomplete or directions. */
+  INTERACTIVE,
+
+  /** Background work, such as bulk geocoding, that can tolerate queueing. */
+  BATCH
+}
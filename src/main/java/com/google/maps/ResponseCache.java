@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.errors.ZeroResultsException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A size-bounded, in-memory cache of API responses, which saves both the quota and the latency of
+ * repeating a request made shortly before. Results are cached as parsed, for a time that can be
+ * set for each API, and the least recently used results make room for new ones once the cache is
+ * full. Only successful responses are cached, including those with no results; errors never are.
+ *
+ * <p>Requests are matched on their host, their query parameters in any order, and their body. The
+ * API key and signature are not part of the match. Callers whose requests are answered from the
+ * cache all receive the same result object, which they must therefore treat as read-only.
+ *
+ * <p>A cache is installed with {@link GeoApiContext.Builder#responseCache(ResponseCache)}, and
+ * can be kept by the application to read its statistics.
+ */
+public class ResponseCache {
+
+  /** A cached response: either a result, or that a request found no results. */
+  static final class CachedResponse {
+    final Object result;
+    final boolean zeroResults;
+    final String zeroResultsMessage;
+    final long expiresAtNanos;
+
+    CachedResponse(Object result, ZeroResultsException zeroResults, long expiresAtNanos) {
+      this.result = result;
+      this.zeroResults = zeroResults != null;
+      this.zeroResultsMessage = zeroResults == null ? null : zeroResults.getMessage();
+      this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @return A new exception for a request that found no results, so that callers answered from
+     *     the cache don't share one stack trace and list of suppressed exceptions.
+     */
+    ZeroResultsException newZeroResultsException() {
+      return new ZeroResultsException(zeroResultsMessage);
+    }
+  }
+
+  private final int maxEntries;
+  private final long defaultTtlNanos;
+  private final Map<String, Long> ttlNanosByPathPrefix = new HashMap<>();
+  private final LinkedHashMap<String, CachedResponse> entries;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @param maxEntries The most responses to keep.
+   * @param defaultTtl How long responses are kept, unless set differently for their API with
+   *     {@link #ttl(String, long, TimeUnit)}.
+   * @param unit The unit of {@code defaultTtl}.
+   */
+  public ResponseCache(int maxEntries, long defaultTtl, TimeUnit unit) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive");
+    }
+    if (defaultTtl < 0) {
+      throw new IllegalArgumentException("defaultTtl must not be negative");
+    }
+    this.maxEntries = maxEntries;
+    this.defaultTtlNanos = unit.toNanos(defaultTtl);
+    this.entries =
+        new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            if (size() > ResponseCache.this.maxEntries) {
+              evictionCount++;
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Sets how long the responses of one API are kept. The API is identified by the prefix of its
+   * request path, such as {@code "/maps/api/place/details/"}. Where prefixes overlap, the longest
+   * match applies.
+   *
+   * @param pathPrefix The path prefix of the API.
+   * @param ttl How long its responses are kept. Zero means they aren't cached at all.
+   * @param unit The unit of {@code ttl}.
+   * @return Returns this cache for call chaining.
+   */
+  public synchronized ResponseCache ttl(String pathPrefix, long ttl, TimeUnit unit) {
+    if (ttl < 0) {
+      throw new IllegalArgumentException("ttl must not be negative");
+    }
+    ttlNanosByPathPrefix.put(pathPrefix, unit.toNanos(ttl));
+    return this;
+  }
+
+  /** @return The number of requests answered from the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** @return The number of requests that had to be sent to the server. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** @return The number of responses dropped to make room for newer ones. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** @return The number of responses in the cache, including any that have expired. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Drops every cached response. */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * Drops the responses that have expired. Expired responses are otherwise only dropped when they
+   * are looked up or make room for newer ones.
+   */
+  public synchronized void cleanUp() {
+    long now = System.nanoTime();
+    for (Iterator<CachedResponse> it = entries.values().iterator(); it.hasNext(); ) {
+      if (now - it.next().expiresAtNanos >= 0) {
+        it.remove();
+      }
+    }
+  }
+
+  /** @return The unexpired response to a request, or null if there is none. */
+  synchronized CachedResponse get(String key) {
+    CachedResponse entry = entries.get(key);
+    if (entry != null && System.nanoTime() - entry.expiresAtNanos >= 0) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return entry;
+  }
+
+  /**
+   * Caches the response to a request, for as long as its API's responses are kept.
+   *
+   * @param key The canonical form of the request.
+   * @param path The path of the request, which identifies its API.
+   * @param result The result of the request, if it had results.
+   * @param zeroResults The exception for a request that found no results, otherwise null.
+   */
+  synchronized void put(String key, String path, Object result, ZeroResultsException zeroResults) {
+    long ttlNanos = ttlNanos(path);
+    if (ttlNanos <= 0) {
+      return;
+    }
+    entries.put(key, new CachedResponse(result, zeroResults, System.nanoTime() + ttlNanos));
+  }
+
+  private long ttlNanos(String path) {
+    String longestPrefix = null;
+    for (String prefix : ttlNanosByPathPrefix.keySet()) {
+      if (path.startsWith(prefix)
+          && (longestPrefix == null || prefix.length() > longestPrefix.length())) {
+        longestPrefix = prefix;
+      }
+    }
+    return longestPrefix == null ? defaultTtlNanos : ttlNanosByPathPrefix.get(longestPrefix);
+  }
+}
@@ -20,12 +20,22 @@ import static com.google.maps.internal.StringJoin.join;
 import com.google.gson.FieldNamingPolicy;
 import com.google.maps.errors.ApiError;
 import com.google.maps.errors.ApiException;
+import com.google.maps.errors.InvalidRequestException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.MicroBatcher;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.SnappedPoint;
 import com.google.maps.model.SnappedSpeedLimitResponse;
 import com.google.maps.model.SpeedLimit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Google Maps Roads API identifies the roads a vehicle was traveling along and provides
@@ -128,6 +138,14 @@ public class RoadsApi {
    * @return Returns the speed limits as a {@link PendingResult}.
    */
   public static PendingResult<SpeedLimit[]> speedLimits(GeoApiContext context, String... placeIds) {
+    if (context.getSpeedLimitsBatcher() != null) {
+      return context.getSpeedLimitsBatcher().add(placeIds);
+    }
+    return speedLimitsRequest(context, placeIds);
+  }
+
+  private static PendingResult<SpeedLimit[]> speedLimitsRequest(
+      GeoApiContext context, String... placeIds) {
     String[] placeParams = new String[2 * placeIds.length];
     int i = 0;
     for (String placeId : placeIds) {
@@ -160,9 +178,129 @@ public class RoadsApi {
    */
   public static PendingResult<SnappedPoint[]> nearestRoads(
       GeoApiContext context, LatLng... points) {
+    if (context.getNearestRoadsBatcher() != null) {
+      return context.getNearestRoadsBatcher().add(points);
+    }
+    return nearestRoadsRequest(context, points);
+  }
+
+  private static PendingResult<SnappedPoint[]> nearestRoadsRequest(
+      GeoApiContext context, LatLng... points) {
     return context.get(NEAREST_ROADS_API_CONFIG, RoadsResponse.class, "points", join('|', points));
   }
 
+  /**
+   * Merges concurrent {@link #nearestRoads} requests into requests of up to 100 points, and gives
+   * each caller the snapped points of its own points, with their {@code originalIndex} into them.
+   */
+  static class NearestRoadsBatcher extends MicroBatcher<LatLng[], SnappedPoint[], SnappedPoint[]> {
+    private static final int MAX_POINTS = 100;
+
+    private final GeoApiContext context;
+
+    NearestRoadsBatcher(
+        GeoApiContext context, ScheduledExecutorService scheduler, long window, TimeUnit unit) {
+      super(scheduler, window, unit, MAX_POINTS, MAX_POINTS);
+      this.context = context;
+    }
+
+    @Override
+    protected PendingResult<SnappedPoint[]> send(List<LatLng[]> requests) {
+      List<LatLng> points = new ArrayList<>();
+      for (LatLng[] request : requests) {
+        points.addAll(Arrays.asList(request));
+      }
+      return nearestRoadsRequest(context, points.toArray(new LatLng[0]));
+    }
+
+    /** An invalid point fails the whole request, so the others are sent again without it. */
+    @Override
+    protected boolean isSplittable(Throwable failure) {
+      return failure instanceof InvalidRequestException;
+    }
+
+    @Override
+    protected SnappedPoint[] resultFor(
+        SnappedPoint[] snappedPoints, List<LatLng[]> requests, int index) {
+      int offset = 0;
+      for (int i = 0; i < index; i++) {
+        offset += requests.get(i).length;
+      }
+      List<SnappedPoint> own = new ArrayList<>();
+      if (snappedPoints != null) {
+        for (SnappedPoint snappedPoint : snappedPoints) {
+          int originalIndex = snappedPoint.originalIndex - offset;
+          if (originalIndex >= 0 && originalIndex < requests.get(index).length) {
+            SnappedPoint copy = new SnappedPoint();
+            copy.location = snappedPoint.location;
+            copy.placeId = snappedPoint.placeId;
+            copy.originalIndex = originalIndex;
+            own.add(copy);
+          }
+        }
+      }
+      return own.toArray(new SnappedPoint[0]);
+    }
+
+    @Override
+    protected int weight(LatLng[] points) {
+      return points.length;
+    }
+  }
+
+  /**
+   * Merges concurrent {@link #speedLimits(GeoApiContext, String...)} requests into requests of up
+   * to 100 place IDs, asking once for each place ID however many callers want it, and gives each
+   * caller the speed limits of its own place IDs.
+   */
+  static class SpeedLimitsBatcher extends MicroBatcher<String[], SpeedLimit[], SpeedLimit[]> {
+    private static final int MAX_PLACE_IDS = 100;
+
+    private final GeoApiContext context;
+
+    SpeedLimitsBatcher(
+        GeoApiContext context, ScheduledExecutorService scheduler, long window, TimeUnit unit) {
+      super(scheduler, window, unit, MAX_PLACE_IDS, MAX_PLACE_IDS);
+      this.context = context;
+    }
+
+    @Override
+    protected PendingResult<SpeedLimit[]> send(List<String[]> requests) {
+      Set<String> placeIds = new LinkedHashSet<>();
+      for (String[] request : requests) {
+        placeIds.addAll(Arrays.asList(request));
+      }
+      return speedLimitsRequest(context, placeIds.toArray(new String[0]));
+    }
+
+    /** An invalid place ID fails the whole request, so the others are sent again without it. */
+    @Override
+    protected boolean isSplittable(Throwable failure) {
+      return failure instanceof InvalidRequestException;
+    }
+
+    @Override
+    protected SpeedLimit[] resultFor(
+        SpeedLimit[] speedLimits, List<String[]> requests, int index) {
+      Set<String> placeIds = new HashSet<>(Arrays.asList(requests.get(index)));
+      List<SpeedLimit> own = new ArrayList<>();
+      if (speedLimits != null) {
+        for (SpeedLimit speedLimit : speedLimits) {
+          if (placeIds.contains(speedLimit.placeId)) {
+            own.add(speedLimit);
+          }
+        }
+      }
+      return own.toArray(new SpeedLimit[0]);
+    }
+
+    /** Counts each place ID, as it can't be known yet which will be shared with other callers. */
+    @Override
+    protected int weight(String[] placeIds) {
+      return placeIds.length;
+    }
+  }
+
   public static class RoadsResponse implements ApiResponse<SnappedPoint[]> {
     private SnappedPoint[] snappedPoints;
     private ApiError error;
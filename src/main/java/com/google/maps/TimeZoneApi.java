@@ -19,7 +19,9 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.StoreBackedResult;
 import com.google.maps.model.LatLng;
+import java.time.ZoneId;
 import java.util.TimeZone;
 
 /**
@@ -42,7 +44,36 @@ public class TimeZoneApi {
    * @param location The location for which to retrieve a time zone.
    * @return Returns the time zone as a {@link PendingResult}.
    */
-  public static PendingResult<TimeZone> getTimeZone(GeoApiContext context, LatLng location) {
+  public static PendingResult<TimeZone> getTimeZone(
+      final GeoApiContext context, final LatLng location) {
+    final TimeZoneCache cache = context.getTimeZoneCache();
+    if (cache != null) {
+      final String key = cache.cell(location.lat, location.lng);
+      return new StoreBackedResult<>(
+          new StoreBackedResult.Sender<TimeZone>() {
+            @Override
+            public PendingResult<TimeZone> send() {
+              return request(context, location);
+            }
+          },
+          new StoreBackedResult.Store<TimeZone>() {
+            @Override
+            public TimeZone load() {
+              ZoneId zone = cache.get(key);
+              return zone == null ? null : TimeZone.getTimeZone(zone);
+            }
+
+            @Override
+            public TimeZone save(TimeZone result) {
+              cache.put(key, result.toZoneId());
+              return result;
+            }
+          });
+    }
+    return request(context, location);
+  }
+
+  private static PendingResult<TimeZone> request(GeoApiContext context, LatLng location) {
     return context.get(
         API_CONFIG,
         Response.class,
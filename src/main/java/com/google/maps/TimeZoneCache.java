@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import com.google.maps.model.LatLng;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of the time zone of each cell of a grid, so that one request answers time zone lookups
+ * for every location in the cell. The Time Zone API is only asked for a zone's ID, since Java's own
+ * rules give its offsets at any time; with the ID cached, those offsets need no request at all.
+ *
+ * <p>Locations are snapped to the grid by rounding their latitude and longitude to a number of
+ * decimal places, its precision: cells are about 11 km high at precision 1 and 1.1 km at precision
+ * 2. A location within a cell of a time zone border may be given the zone across it.
+ *
+ * @see GeoApiContext.Builder#timeZoneCache(TimeZoneCache)
+ */
+public class TimeZoneCache {
+  private static final String PATH = "/maps/api/timezone/json";
+
+  private final double scale;
+  private final ResponseCache cells;
+
+  /**
+   * @param precision The number of decimal places of latitude and longitude to keep, from 0 to 6.
+   * @param maxCells The most cells to keep time zones for.
+   * @param ttl How long time zones are kept.
+   * @param unit The unit of {@code ttl}.
+   */
+  public TimeZoneCache(int precision, int maxCells, long ttl, TimeUnit unit) {
+    if (precision < 0 || precision > 6) {
+      throw new IllegalArgumentException("precision must be between 0 and 6");
+    }
+    this.scale = Math.pow(10, precision);
+    this.cells = new ResponseCache(maxCells, ttl, unit);
+  }
+
+  /**
+   * Gets the rules of the time zone cached for a location's cell, from which its offsets at any
+   * instant can be found without a request.
+   *
+   * @param location The location to look up.
+   * @return The rules of the location's time zone, or null if the cache has none for its cell.
+   */
+  public ZoneRules getRules(LatLng location) {
+    ZoneId zone = get(cell(location.lat, location.lng));
+    return zone == null ? null : zone.getRules();
+  }
+
+  /** @return The number of lookups answered from the cache. */
+  public long getHitCount() {
+    return cells.getHitCount();
+  }
+
+  /** @return The number of lookups the cache had no time zone for. */
+  public long getMissCount() {
+    return cells.getMissCount();
+  }
+
+  /** @return The number of cells dropped to make room for newer ones. */
+  public long getEvictionCount() {
+    return cells.getEvictionCount();
+  }
+
+  /** @return The number of cells in the cache, including any that have expired. */
+  public int size() {
+    return cells.size();
+  }
+
+  /** Drops every cached time zone. */
+  public void invalidateAll() {
+    cells.invalidateAll();
+  }
+
+  /** @return The cell of the grid that a location falls in. */
+  String cell(double lat, double lng) {
+    return Math.round(lat * scale) + "," + Math.round(lng * scale);
+  }
+
+  /** @return The time zone cached under {@code key}, or null if there is none. */
+  ZoneId get(String key) {
+    ResponseCache.CachedResponse cached = cells.get(key);
+    return cached == null ? null : (ZoneId) cached.result;
+  }
+
+  void put(String key, ZoneId zone) {
+    cells.put(key, PATH, zone, null);
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.errors;
+
+import java.io.IOException;
+
+/**
+ * Indicates that a request was failed without being sent, because its endpoint's circuit breaker
+ * is open after a run of server errors or connection failures. The breaker lets a trial request
+ * through once the endpoint has had time to recover.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+  private static final long serialVersionUID = -2967160480313549632L;
+
+  public CircuitBreakerOpenException(String endpoint) {
+    super("Circuit breaker is open for " + endpoint);
+  }
+}
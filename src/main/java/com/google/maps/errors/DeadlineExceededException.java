@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.errors;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Indicates that a request ran out of time before it could complete, whether waiting for the rate
+ * limit, backing off between retries, or waiting for the server. Requests whose deadline passes
+ * while they are still queued are shed without ever reaching the server.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+  private static final long serialVersionUID = 7113286416720843351L;
+
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+}
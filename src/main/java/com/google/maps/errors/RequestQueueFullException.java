@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.errors;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Indicates that a request was turned away, or dropped, because the client's queue of requests
+ * waiting for the rate limit was full. Unlike {@link OverQueryLimitException}, the request never
+ * reached the server.
+ */
+public class RequestQueueFullException extends RejectedExecutionException {
+
+  private static final long serialVersionUID = 4830118923372145297L;
+
+  public RequestQueueFullException(int maxQueueDepth) {
+    super("Request queue is full (maximum depth " + maxQueueDepth + ")");
+  }
+}
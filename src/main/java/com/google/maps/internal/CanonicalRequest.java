@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import java.util.Arrays;
+
+/**
+ * Builds a canonical form of a request, under which requests that are bound to get the same
+ * response compare equal. The query parameters are sorted, and the {@code key} and {@code
+ * signature} parameters are dropped, since they only authorize the request. The class the response
+ * is decoded into is part of the canonical form, since the same request can be decoded into
+ * different results.
+ */
+public final class CanonicalRequest {
+
+  private CanonicalRequest() {}
+
+  /**
+   * @param hostName The host the request is sent to.
+   * @param url The path and query string of the request.
+   * @param payload The body of the request, or null if it has none.
+   * @param responseClass The class the response is decoded into, or null if it is not known.
+   * @return The canonical form of the request.
+   */
+  public static String of(String hostName, String url, String payload, Class<?> responseClass) {
+    StringBuilder canonical = new StringBuilder();
+    if (responseClass != null) {
+      canonical.append(responseClass.getName()).append(' ');
+    }
+    canonical.append(hostName);
+    int query = url.indexOf('?');
+    if (query < 0) {
+      canonical.append(url);
+    } else {
+      canonical.append(url, 0, query).append('?');
+      String[] params = url.substring(query + 1).split("&");
+      Arrays.sort(params);
+      boolean first = true;
+      for (String param : params) {
+        if (param.isEmpty() || param.startsWith("key=") || param.startsWith("signature=")) {
+          continue;
+        }
+        if (!first) {
+          canonical.append('&');
+        }
+        canonical.append(param);
+        first = false;
+      }
+    }
+    if (payload != null) {
+      canonical.append('\n').append(payload);
+    }
+    return canonical.toString();
+  }
+}
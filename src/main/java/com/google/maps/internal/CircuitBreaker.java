@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.internal;
+
+import com.google.maps.CircuitBreakerState;
+import com.google.maps.metrics.RequestMetrics;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker for one API endpoint. After {@code failureThreshold} consecutive server errors
+ * or connection failures it opens, and requests fail immediately rather than queue for the rate
+ * limit and back off through their retries. Once {@code openDuration} has passed it lets a single
+ * trial request through, whose outcome closes the breaker again or re-opens it.
+ *
+ * <p>State changes are reported to the metrics of the request that caused them.
+ */
+public final class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class.getName());
+
+  private final String endpoint;
+  private final int failureThreshold;
+  private final long openDurationNanos;
+
+  private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+  private int consecutiveFailures;
+  // When the breaker opened, or when the current trial request was let through.
+  private long sinceNanos;
+  private boolean trialInFlight;
+
+  /**
+   * @param endpoint The endpoint the breaker guards, for logs and metrics.
+   * @param failureThreshold How many consecutive failures open the breaker.
+   * @param openDuration How long the breaker stays open before letting a trial request through.
+   * @param unit The unit of {@code openDuration}.
+   */
+  public CircuitBreaker(String endpoint, int failureThreshold, long openDuration, TimeUnit unit) {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("failureThreshold must be positive");
+    }
+    this.endpoint = endpoint;
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = unit.toNanos(openDuration);
+  }
+
+  /** @return The endpoint the breaker guards. */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /** @return The current state of the breaker. */
+  public synchronized CircuitBreakerState getState() {
+    return state;
+  }
+
+  /**
+   * Asks to send a request.
+   *
+   * @param metrics The metrics of the request, told about any change of state.
+   * @return Whether the request may be sent.
+   */
+  public synchronized boolean tryAcquire(RequestMetrics metrics) {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.nanoTime() - sinceNanos < openDurationNanos) {
+          return false;
+        }
+        transition(CircuitBreakerState.HALF_OPEN, metrics);
+        break;
+      case HALF_OPEN:
+        // A trial that never reported back, for example because it was cancelled, doesn't keep
+        // the breaker half open forever.
+        if (trialInFlight && System.nanoTime() - sinceNanos < openDurationNanos) {
+          return false;
+        }
+        break;
+    }
+    trialInFlight = true;
+    sinceNanos = System.nanoTime();
+    return true;
+  }
+
+  /**
+   * Reports that a request got a response that was not a server error.
+   *
+   * @param metrics The metrics of the request, told about any change of state.
+   */
+  public synchronized void onSuccess(RequestMetrics metrics) {
+    consecutiveFailures = 0;
+    if (state != CircuitBreakerState.CLOSED) {
+      trialInFlight = false;
+      transition(CircuitBreakerState.CLOSED, metrics);
+    }
+  }
+
+  /**
+   * Reports that a request failed with a server error or could not reach the server.
+   *
+   * @param metrics The metrics of the request, told about any change of state.
+   */
+  public synchronized void onFailure(RequestMetrics metrics) {
+    consecutiveFailures++;
+    if (state == CircuitBreakerState.HALF_OPEN
+        || (state == CircuitBreakerState.CLOSED && consecutiveFailures >= failureThreshold)) {
+      trialInFlight = false;
+      sinceNanos = System.nanoTime();
+      transition(CircuitBreakerState.OPEN, metrics);
+    }
+  }
+
+  private void transition(CircuitBreakerState to, RequestMetrics metrics) {
+    CircuitBreakerState from = state;
+    state = to;
+    LOG.info(String.format("Circuit breaker for %s changed from %s to %s", endpoint, from, to));
+    metrics.circuitBreakerStateChanged(endpoint, from, to);
+  }
+}
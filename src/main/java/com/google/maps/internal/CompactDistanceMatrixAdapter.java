@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.maps.DistanceMatrixApi;
+import com.google.maps.model.CompactDistanceMatrix;
+import com.google.maps.model.DistanceMatrixElementStatus;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes a Distance Matrix API response straight into the columns of a {@link
+ * CompactDistanceMatrix}, without building {@link com.google.maps.model.DistanceMatrixElement}
+ * objects. Only the {@code value} of each duration and distance is kept; the {@code text} fields
+ * and fares are skipped without being decoded.
+ */
+public class CompactDistanceMatrixAdapter extends TypeAdapter<DistanceMatrixApi.CompactResponse> {
+
+  private static final DistanceMatrixElementStatus[] ELEMENT_STATUSES =
+      DistanceMatrixElementStatus.values();
+
+  @Override
+  public DistanceMatrixApi.CompactResponse read(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    DistanceMatrixApi.CompactResponse response = new DistanceMatrixApi.CompactResponse();
+    String[] originAddresses = new String[0];
+    String[] destinationAddresses = new String[0];
+    Columns columns = new Columns();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("status")) {
+        response.status = reader.nextString();
+      } else if (name.equals("error_message")) {
+        response.errorMessage = reader.nextString();
+      } else if (name.equals("origin_addresses")) {
+        originAddresses = readStrings(reader);
+      } else if (name.equals("destination_addresses")) {
+        destinationAddresses = readStrings(reader);
+      } else if (name.equals("rows")) {
+        readRows(reader, columns);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    response.matrix =
+        new CompactDistanceMatrix(
+            originAddresses,
+            destinationAddresses,
+            columns.rows,
+            columns.rowLength,
+            Arrays.copyOf(columns.durations, columns.size),
+            Arrays.copyOf(columns.durationsInTraffic, columns.size),
+            Arrays.copyOf(columns.distances, columns.size),
+            Arrays.copyOf(columns.statuses, columns.size));
+    return response;
+  }
+
+  private static String[] readStrings(JsonReader reader) throws IOException {
+    List<String> values = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        values.add(null);
+      } else {
+        values.add(reader.nextString());
+      }
+    }
+    reader.endArray();
+    return values.toArray(new String[0]);
+  }
+
+  private static void readRows(JsonReader reader, Columns columns) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int rowStart = columns.size;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("elements")) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readElement(reader, columns);
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      int rowLength = columns.size - rowStart;
+      if (columns.rows > 0 && rowLength != columns.rowLength) {
+        throw new IOException("Distance Matrix rows are not all the same length");
+      }
+      columns.rowLength = rowLength;
+      columns.rows++;
+    }
+    reader.endArray();
+  }
+
+  private static void readElement(JsonReader reader, Columns columns) throws IOException {
+    long duration = -1;
+    long durationInTraffic = -1;
+    long distance = -1;
+    DistanceMatrixElementStatus status = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("status")) {
+        status = readStatus(reader);
+      } else if (name.equals("duration")) {
+        duration = readValue(reader);
+      } else if (name.equals("duration_in_traffic")) {
+        durationInTraffic = readValue(reader);
+      } else if (name.equals("distance")) {
+        distance = readValue(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    columns.add(duration, durationInTraffic, distance, status);
+  }
+
+  private static DistanceMatrixElementStatus readStatus(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    String value = reader.nextString();
+    for (DistanceMatrixElementStatus status : ELEMENT_STATUSES) {
+      if (status.name().equals(value)) {
+        return status;
+      }
+    }
+    return null;
+  }
+
+  /** Reads the {@code value} of a duration or distance object, skipping its {@code text}. */
+  private static long readValue(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return -1;
+    }
+    long value = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("value") && reader.peek() == JsonToken.NUMBER) {
+        value = reader.nextLong();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return value;
+  }
+
+  /** Growable columns of element values, in row-major order. */
+  private static class Columns {
+    int rows;
+    int rowLength;
+    int size;
+    long[] durations = new long[16];
+    long[] durationsInTraffic = new long[16];
+    long[] distances = new long[16];
+    DistanceMatrixElementStatus[] statuses = new DistanceMatrixElementStatus[16];
+
+    void add(
+        long duration,
+        long durationInTraffic,
+        long distance,
+        DistanceMatrixElementStatus status) {
+      if (size == durations.length) {
+        int capacity = size * 2;
+        durations = Arrays.copyOf(durations, capacity);
+        durationsInTraffic = Arrays.copyOf(durationsInTraffic, capacity);
+        distances = Arrays.copyOf(distances, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+      }
+      durations[size] = duration;
+      durationsInTraffic[size] = durationInTraffic;
+      distances[size] = distance;
+      statuses[size] = status;
+      size++;
+    }
+  }
+
+  /** Not supported. */
+  @Override
+  public void write(JsonWriter out, DistanceMatrixApi.CompactResponse value) throws IOException {
+    throw new UnsupportedOperationException("Unimplemented method");
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/** A point in time by which a request must complete, measured on {@link System#nanoTime()}. */
+public final class Deadline {
+
+  private final long deadlineNanos;
+
+  private Deadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @param timeout How long from now the deadline is.
+   * @param unit The unit of {@code timeout}.
+   * @return A deadline {@code timeout} from now.
+   */
+  public static Deadline after(long timeout, TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  /** @return The earlier of two deadlines, either of which may be null for none. */
+  public static Deadline earliest(Deadline a, Deadline b) {
+    if (a == null) {
+      return b;
+    }
+    if (b == null) {
+      return a;
+    }
+    return a.deadlineNanos - b.deadlineNanos <= 0 ? a : b;
+  }
+
+  /**
+   * @param unit The unit to return the time in.
+   * @return The time left until the deadline, or zero if it has passed.
+   */
+  public long remaining(TimeUnit unit) {
+    return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+  }
+
+  /** @return Whether the deadline has passed. */
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+}
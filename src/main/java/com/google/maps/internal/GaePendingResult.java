@@ -20,32 +20,14 @@ import com.google.appengine.api.urlfetch.HTTPRequest;
 import com.google.appengine.api.urlfetch.HTTPResponse;
 import com.google.appengine.api.urlfetch.URLFetchService;
 import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
-import com.google.maps.GeolocationApi;
 import com.google.maps.ImageResult;
 import com.google.maps.PendingResult;
 import com.google.maps.errors.ApiException;
 import com.google.maps.errors.UnknownErrorException;
 import com.google.maps.metrics.RequestMetrics;
-import com.google.maps.model.AddressComponentType;
-import com.google.maps.model.AddressType;
-import com.google.maps.model.Distance;
-import com.google.maps.model.Duration;
-import com.google.maps.model.EncodedPolyline;
-import com.google.maps.model.Fare;
-import com.google.maps.model.LatLng;
-import com.google.maps.model.LocationType;
-import com.google.maps.model.OpeningHours.Period.OpenClose.DayOfWeek;
-import com.google.maps.model.PlaceDetails.Review.AspectRating.RatingType;
-import com.google.maps.model.PriceLevel;
-import com.google.maps.model.TravelMode;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.time.Instant;
-import java.time.LocalTime;
-import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -184,32 +166,12 @@ public class GaePendingResult<T, R extends ApiResponse<T>> implements PendingRes
       return (T) result;
     }
 
-    Gson gson =
-        new GsonBuilder()
-            .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeAdapter())
-            .registerTypeAdapter(Distance.class, new DistanceAdapter())
-            .registerTypeAdapter(Duration.class, new DurationAdapter())
-            .registerTypeAdapter(Fare.class, new FareAdapter())
-            .registerTypeAdapter(LatLng.class, new LatLngAdapter())
-            .registerTypeAdapter(
-                AddressComponentType.class, new SafeEnumAdapter<>(AddressComponentType.UNKNOWN))
-            .registerTypeAdapter(AddressType.class, new SafeEnumAdapter<>(AddressType.UNKNOWN))
-            .registerTypeAdapter(TravelMode.class, new SafeEnumAdapter<>(TravelMode.UNKNOWN))
-            .registerTypeAdapter(LocationType.class, new SafeEnumAdapter<>(LocationType.UNKNOWN))
-            .registerTypeAdapter(RatingType.class, new SafeEnumAdapter<>(RatingType.UNKNOWN))
-            .registerTypeAdapter(DayOfWeek.class, new DayOfWeekAdapter())
-            .registerTypeAdapter(PriceLevel.class, new PriceLevelAdapter())
-            .registerTypeAdapter(Instant.class, new InstantAdapter())
-            .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
-            .registerTypeAdapter(GeolocationApi.Response.class, new GeolocationResponseAdapter())
-            .registerTypeAdapter(EncodedPolyline.class, new EncodedPolylineInstanceCreator(""))
-            .setFieldNamingPolicy(fieldNamingPolicy)
-            .create();
-
     // Attempt to de-serialize before checking the HTTP status code, as there may be JSON in the
     // body that we can use to provide a more descriptive exception.
     try {
-      resp = gson.fromJson(new String(bytes, "utf8"), responseClass);
+      resp =
+          ResponseCodecRegistry.getInstance()
+              .fromJson(new String(bytes, "utf8"), responseClass, fieldNamingPolicy);
     } catch (JsonSyntaxException e) {
       // Check HTTP status for a more suitable exception
       if (response.getResponseCode() > 399) {
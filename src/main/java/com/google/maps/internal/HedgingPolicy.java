@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a slow GET request is worth sending a second time. The hedge delay for each API is
+ * a percentile of its recent latencies, so only the slowest requests are hedged, and a budget caps
+ * hedges at a fraction of all requests so that a general slowdown does not double the load.
+ */
+public final class HedgingPolicy {
+
+  // How many recent latencies to keep per API, and how many are needed before hedging starts.
+  private static final int WINDOW_SIZE = 128;
+  private static final int MIN_SAMPLES = 20;
+  // The percentile is only recomputed after this many new latencies, rather than per request.
+  private static final int REFRESH_INTERVAL = 16;
+  // Unused budget is only banked up to this many hedges, so a quiet spell can't fund a burst.
+  private static final double MAX_BUDGET = 10;
+
+  private final double percentile;
+  private final long minDelayMillis;
+  private final double maxHedgeRatio;
+  private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private double budget;
+
+  /**
+   * @param percentile The latency percentile after which to hedge, between 0 and 1, for example
+   *     0.95 to hedge requests slower than 95% of recent ones.
+   * @param minDelay The least time to wait before hedging, however fast recent requests were.
+   * @param unit The unit of {@code minDelay}.
+   * @param maxHedgeRatio The most hedges to send per request, between 0 and 1.
+   */
+  public HedgingPolicy(double percentile, long minDelay, TimeUnit unit, double maxHedgeRatio) {
+    if (percentile <= 0 || percentile >= 1) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1");
+    }
+    if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+      throw new IllegalArgumentException("maxHedgeRatio must be between 0 and 1");
+    }
+    this.percentile = percentile;
+    this.minDelayMillis = unit.toMillis(minDelay);
+    this.maxHedgeRatio = maxHedgeRatio;
+  }
+
+  /**
+   * Called for every hedgeable request, earning it a share of the hedge budget.
+   *
+   * @param path The path of the request.
+   * @return How long to wait for a response before hedging, in milliseconds, or -1 if too little
+   *     is known yet about the latency of {@code path}.
+   */
+  public long hedgeDelayMillis(String path) {
+    synchronized (this) {
+      budget = Math.min(MAX_BUDGET, budget + maxHedgeRatio);
+    }
+    LatencyWindow window = latencies.get(path);
+    if (window == null) {
+      return -1;
+    }
+    long delay = window.percentile(percentile);
+    return delay < 0 ? -1 : Math.max(minDelayMillis, delay);
+  }
+
+  /** @return Whether the budget allows another hedge, in which case it is spent. */
+  public synchronized boolean tryAcquireHedge() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  /**
+   * Records how long a request to {@code path} took to get a response.
+   *
+   * @param path The path of the request.
+   * @param latencyMillis The time from sending the request to its first response, or how long it
+   *     had waited when a hedge answered first.
+   */
+  public void recordLatency(String path, long latencyMillis) {
+    LatencyWindow window = latencies.get(path);
+    if (window == null) {
+      LatencyWindow created = new LatencyWindow();
+      window = latencies.putIfAbsent(path, created);
+      if (window == null) {
+        window = created;
+      }
+    }
+    window.add(latencyMillis);
+  }
+
+  /** The most recent latencies of one API, and the percentile last taken of them. */
+  private static class LatencyWindow {
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int count;
+    private int next;
+    private long cachedPercentile = -1;
+    // New samples since cachedPercentile was computed.
+    private int staleSamples;
+
+    synchronized void add(long latencyMillis) {
+      samples[next] = latencyMillis;
+      next = (next + 1) % WINDOW_SIZE;
+      count = Math.min(WINDOW_SIZE, count + 1);
+      staleSamples++;
+    }
+
+    /**
+     * @return The latency at percentile {@code p}, as of at most {@code REFRESH_INTERVAL} samples
+     *     ago, or -1 if there are too few samples.
+     */
+    synchronized long percentile(double p) {
+      if (count < MIN_SAMPLES) {
+        return -1;
+      }
+      if (cachedPercentile < 0 || staleSamples >= REFRESH_INTERVAL) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        cachedPercentile = sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        staleSamples = 0;
+      }
+      return cachedPercentile;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.maps.PendingResult;
+import com.google.maps.errors.ApiException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges requests made at about the same time into one batch request. A batch is sent once the
+ * first request in it has waited for the batch window, or sooner if it reaches the most items or
+ * the most weight, such as URL length, that one request can carry. Each caller is then given its
+ * own share of the batch's response.
+ *
+ * <p>Like other {@link PendingResult}s, a request joins a batch only once its caller awaits it or
+ * sets a callback. If the batch request fails, every caller in it is given the failure, unless
+ * {@link #isSplittable} says the failure may be down to only some of their items.
+ *
+ * @param <I> The type of item each caller asks about.
+ * @param <R> The type of the batch request's result.
+ * @param <O> The type of each caller's result.
+ */
+public abstract class MicroBatcher<I, R, O> {
+  private static final Logger LOG = LoggerFactory.getLogger(MicroBatcher.class.getName());
+
+  private final ScheduledExecutorService scheduler;
+  private final long windowNanos;
+  private final int maxItems;
+  private final int maxWeight;
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong itemCount = new AtomicLong();
+
+  private List<BatchedResult> batch = new ArrayList<>();
+  private int batchWeight;
+  private ScheduledFuture<?> flush;
+
+  /**
+   * @param scheduler The scheduler that sends batches when their window ends.
+   * @param window How long the first request of a batch waits for others to join it.
+   * @param unit The unit of {@code window}.
+   * @param maxItems The most items one batch request can carry.
+   * @param maxWeight The most weight, as measured by {@link #weight}, one batch can carry.
+   */
+  protected MicroBatcher(
+      ScheduledExecutorService scheduler, long window, TimeUnit unit, int maxItems, int maxWeight) {
+    if (maxItems < 1 || maxWeight < 1) {
+      throw new IllegalArgumentException("maxItems and maxWeight must be positive");
+    }
+    this.scheduler = scheduler;
+    this.windowNanos = unit.toNanos(window);
+    this.maxItems = maxItems;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * @return A single daemon thread on which batchers can schedule the end of their windows. Batches
+   *     sent from it are refused rather than wait when their queue is full, see {@link
+   *     RateLimitExecutorService#newTimerThread}.
+   */
+  public static ScheduledExecutorService newScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return RateLimitExecutorService.newTimerThread(runnable, "MicroBatchScheduler");
+              }
+            });
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  /**
+   * @param item The item to ask about.
+   * @return The result for {@code item} alone, to be fetched as part of a batch.
+   */
+  public PendingResult<O> add(I item) {
+    return new BatchedResult(item);
+  }
+
+  /** @return The number of batch requests sent. */
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /** @return The number of items sent in batch requests. */
+  public long getItemCount() {
+    return itemCount.get();
+  }
+
+  /**
+   * Sends the current batch now rather than at the end of its window. Once the scheduler is shut
+   * down, this is the only way the requests already waiting in a window are sent, or failed.
+   */
+  public void flush() {
+    List<BatchedResult> due;
+    synchronized (this) {
+      due = take();
+    }
+    dispatch(due);
+  }
+
+  /** @return The request for a whole batch of items. */
+  protected abstract PendingResult<R> send(List<I> items);
+
+  /**
+   * @param response The result of the batch request.
+   * @param items The items of the batch, in the order they were sent.
+   * @param index The index in {@code items} of the caller's item.
+   * @return The caller's share of {@code response}.
+   */
+  protected abstract O resultFor(R response, List<I> items, int index);
+
+  /**
+   * @param failure Why a batch request failed.
+   * @return Whether {@code failure} may be down to only some items of the batch, such as an invalid
+   *     argument, in which case the batch is split in two and each half sent again, until the
+   *     callers at fault are failed on their own. Defaults to false.
+   */
+  protected boolean isSplittable(Throwable failure) {
+    return false;
+  }
+
+  /** @return How much of a batch's capacity {@code item} takes. Defaults to nothing. */
+  protected int weight(I item) {
+    return 0;
+  }
+
+  private void enqueue(BatchedResult request) {
+    List<BatchedResult> previous = null;
+    List<BatchedResult> full = null;
+    synchronized (this) {
+      int weight = weight(request.item);
+      if (!batch.isEmpty() && batchWeight + weight > maxWeight) {
+        previous = take();
+      }
+      batch.add(request);
+      batchWeight += weight;
+      if (batch.size() >= maxItems || batchWeight >= maxWeight) {
+        full = take();
+      } else if (batch.size() == 1) {
+        try {
+          flush =
+              scheduler.schedule(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      flush();
+                    }
+                  },
+                  windowNanos,
+                  TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+          full = take();
+        }
+      }
+    }
+    dispatch(previous);
+    dispatch(full);
+  }
+
+  /** @return The current batch, which is replaced by an empty one. */
+  private List<BatchedResult> take() {
+    if (flush != null) {
+      flush.cancel(false);
+      flush = null;
+    }
+    List<BatchedResult> taken = batch;
+    batch = new ArrayList<>();
+    batchWeight = 0;
+    return taken;
+  }
+
+  private synchronized void remove(BatchedResult request) {
+    if (batch.remove(request)) {
+      batchWeight -= weight(request.item);
+    }
+  }
+
+  private void dispatch(List<BatchedResult> requests) {
+    if (requests == null) {
+      return;
+    }
+    final List<BatchedResult> live = new ArrayList<>();
+    final List<I> items = new ArrayList<>();
+    for (BatchedResult request : requests) {
+      if (!request.done.get()) {
+        live.add(request);
+        items.add(request.item);
+      }
+    }
+    if (live.isEmpty()) {
+      return;
+    }
+    batchCount.incrementAndGet();
+    itemCount.addAndGet(items.size());
+    PendingResult<R> batchRequest;
+    try {
+      batchRequest = send(items);
+    } catch (RuntimeException e) {
+      for (BatchedResult request : live) {
+        request.fail(e);
+      }
+      return;
+    }
+    batchRequest.setCallback(
+        new PendingResult.Callback<R>() {
+          @Override
+          public void onResult(R response) {
+            for (int i = 0; i < live.size(); i++) {
+              O result;
+              try {
+                result = resultFor(response, items, i);
+              } catch (RuntimeException e) {
+                live.get(i).fail(e);
+                continue;
+              }
+              live.get(i).succeed(result);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            if (live.size() > 1 && isSplittable(e)) {
+              // Bisecting finds the callers at fault in a few requests, however big the batch.
+              int half = live.size() / 2;
+              dispatch(new ArrayList<>(live.subList(0, half)));
+              dispatch(new ArrayList<>(live.subList(half, live.size())));
+              return;
+            }
+            for (BatchedResult request : live) {
+              request.fail(e);
+            }
+          }
+        });
+  }
+
+  private class BatchedResult implements PendingResult<O> {
+    private final I item;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile Callback<O> callback;
+
+    BatchedResult(I item) {
+      this.item = item;
+    }
+
+    @Override
+    public void setCallback(Callback<O> callback) {
+      this.callback = callback;
+      enqueue(this);
+    }
+
+    @Override
+    public O await() throws ApiException, InterruptedException, IOException {
+      Outcome<O> outcome = new Outcome<>();
+      setCallback(outcome);
+      return outcome.await(this);
+    }
+
+    @Override
+    public O awaitIgnoreError() {
+      try {
+        return await();
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void cancel() {
+      remove(this);
+      fail(new IOException("Canceled"));
+    }
+
+    void succeed(O result) {
+      if (done.compareAndSet(false, true) && callback != null) {
+        try {
+          callback.onResult(result);
+        } catch (RuntimeException e) {
+          LOG.warn("Batched request callback threw", e);
+        }
+      }
+    }
+
+    void fail(Throwable failure) {
+      if (done.compareAndSet(false, true) && callback != null) {
+        try {
+          callback.onFailure(failure);
+        } catch (RuntimeException e) {
+          LOG.warn("Batched request callback threw", e);
+        }
+      }
+    }
+  }
+
+}
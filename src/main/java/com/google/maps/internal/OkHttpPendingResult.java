@@ -16,35 +16,29 @@
 package com.google.maps.internal;
 
 import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
-import com.google.maps.GeolocationApi;
+import com.google.gson.stream.MalformedJsonException;
 import com.google.maps.ImageResult;
 import com.google.maps.PendingResult;
+import com.google.maps.RequestPriority;
 import com.google.maps.errors.ApiException;
+import com.google.maps.errors.CircuitBreakerOpenException;
+import com.google.maps.errors.DeadlineExceededException;
+import com.google.maps.errors.OverQueryLimitException;
 import com.google.maps.metrics.RequestMetrics;
-import com.google.maps.model.AddressComponentType;
-import com.google.maps.model.AddressType;
-import com.google.maps.model.Distance;
-import com.google.maps.model.Duration;
-import com.google.maps.model.Fare;
-import com.google.maps.model.LatLng;
-import com.google.maps.model.LocationType;
-import com.google.maps.model.OpeningHours.Period.OpenClose.DayOfWeek;
-import com.google.maps.model.PlaceDetails.Review.AspectRating.RatingType;
-import com.google.maps.model.PriceLevel;
-import com.google.maps.model.TravelMode;
+import java.io.EOFException;
 import java.io.IOException;
-import java.time.Instant;
-import java.time.LocalTime;
-import java.time.ZonedDateTime;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -59,16 +53,24 @@ import org.slf4j.LoggerFactory;
  * <p>{@code T} is the type of the result of this pending result, and {@code R} is the type of the
  * request.
  */
-public class OkHttpPendingResult<T, R extends ApiResponse<T>>
-    implements PendingResult<T>, Callback {
+public class OkHttpPendingResult<T, R extends ApiResponse<T>> implements PendingResult<T> {
   private final Request request;
   private final OkHttpClient client;
+  private final RateLimitExecutorService executor;
   private final Class<R> responseClass;
   private final FieldNamingPolicy fieldNamingPolicy;
   private final Integer maxRetries;
   private final RequestMetrics metrics;
-
-  private Call call;
+  private final RequestPriority priority;
+  private final Deadline deadline;
+  private final boolean streamResponses;
+  private final ScheduledExecutorService retryScheduler;
+  private final HedgingPolicy hedgingPolicy;
+  private final CircuitBreaker circuitBreaker;
+
+  private volatile Call call;
+  private volatile Call hedgeCall;
+  private volatile boolean cancelled;
   private Callback<T> callback;
   private long errorTimeOut;
   private int retryCounter = 0;
@@ -81,45 +83,348 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
   /**
    * @param request HTTP request to execute.
    * @param client The client used to execute the request.
+   * @param executor The executor that rate limits and runs the request.
    * @param responseClass Model class to unmarshal JSON body content.
    * @param fieldNamingPolicy FieldNamingPolicy for unmarshaling JSON.
    * @param errorTimeOut Number of milliseconds to re-send erroring requests.
    * @param maxRetries Number of times allowed to re-send erroring requests.
    * @param exceptionsAllowedToRetry The exceptions to retry.
+   * @param metrics The metrics to record this request against.
+   * @param priority The priority lane the request waits for the rate limit in.
+   * @param deadline When the request, including queueing and retries, must be done by, or null.
+   * @param streamResponses Whether to decode JSON bodies directly from the connection rather than
+   *     buffering them first.
+   * @param retryScheduler Schedules the retries of asynchronous requests, and hedges.
+   * @param hedgingPolicy When to send a second copy of a slow GET request, or null to never.
+   * @param circuitBreaker The circuit breaker of the endpoint the request is for, or null.
    */
   public OkHttpPendingResult(
       Request request,
       OkHttpClient client,
+      RateLimitExecutorService executor,
       Class<R> responseClass,
       FieldNamingPolicy fieldNamingPolicy,
       long errorTimeOut,
       Integer maxRetries,
       ExceptionsAllowedToRetry exceptionsAllowedToRetry,
-      RequestMetrics metrics) {
+      RequestMetrics metrics,
+      RequestPriority priority,
+      Deadline deadline,
+      boolean streamResponses,
+      ScheduledExecutorService retryScheduler,
+      HedgingPolicy hedgingPolicy,
+      CircuitBreaker circuitBreaker) {
     this.request = request;
     this.client = client;
+    this.executor = executor;
     this.responseClass = responseClass;
     this.fieldNamingPolicy = fieldNamingPolicy;
     this.errorTimeOut = errorTimeOut;
     this.maxRetries = maxRetries;
     this.exceptionsAllowedToRetry = exceptionsAllowedToRetry;
     this.metrics = metrics;
+    this.priority = priority;
+    this.deadline = deadline;
+    this.streamResponses = streamResponses;
+    this.retryScheduler = retryScheduler;
+    this.hedgingPolicy = hedgingPolicy;
+    this.circuitBreaker = circuitBreaker;
 
-    metrics.startNetwork();
     this.call = client.newCall(request);
   }
 
   @Override
   public void setCallback(Callback<T> callback) {
     this.callback = callback;
-    call.enqueue(this);
+    dispatch(
+        new AttemptCallback() {
+          @Override
+          public void onResponse(Response response) {
+            handleResponse(response);
+          }
+
+          @Override
+          public void onFailure(Exception e) {
+            handleFailure(e);
+          }
+        });
+  }
+
+  /** Receives the outcome of one attempt at the call. */
+  private interface AttemptCallback {
+    void onResponse(Response response);
+
+    /** Called with the IOException of the call, or the executor's refusal to run it. */
+    void onFailure(Exception e);
+
+    /** @return Whether the outcome is no longer wanted, so the attempt need not be made. */
+    default boolean isAbandoned() {
+      return false;
+    }
+
+    /** Called once the attempt has left the rate limit queue, just before it is sent. */
+    default void onSending() {}
+  }
+
+  /**
+   * Queues the call on the rate limited executor, in its priority lane under the rate limit of the
+   * API it calls. Once the rate limit allows, the call is executed on one of the executor's threads
+   * and its outcome passed to {@code attemptCallback}. If the hedging policy allows, a second copy
+   * of a GET that is slow to respond once sent is queued as well, and whichever call responds first
+   * is passed on.
+   */
+  private void dispatch(final AttemptCallback attemptCallback) {
+    if (isExpired()) {
+      attemptCallback.onFailure(deadlineExceeded("before the request was queued"));
+      return;
+    }
+    // While the endpoint is failing, don't queue for a rate limit permit only to fail as well.
+    if (circuitBreaker != null && !circuitBreaker.tryAcquire(metrics)) {
+      attemptCallback.onFailure(new CircuitBreakerOpenException(circuitBreaker.getEndpoint()));
+      return;
+    }
+    if (hedgingPolicy == null || !"GET".equals(request.method())) {
+      execute(this.call, false, attemptCallback);
+      return;
+    }
+
+    // The hedge timer is started once the call is sent, see HedgedAttempt.
+    HedgedAttempt hedged = new HedgedAttempt(this.call, attemptCallback);
+    execute(this.call, false, hedged.callbackFor(this.call));
+  }
+
+  /** Sends a second copy of the call, if it still hasn't been answered and the budget allows. */
+  private void hedge(HedgedAttempt hedged) {
+    if (cancelled || hedged.isSettled() || !hedgingPolicy.tryAcquireHedge()) {
+      return;
+    }
+    Call hedge = hedged.startHedge();
+    if (hedge != null) {
+      metrics.hedge();
+      execute(hedge, true, hedged.callbackFor(hedge));
+    }
+  }
+
+  /**
+   * Queues one attempt at the call on the rate limited executor. Hedges are left out of the
+   * queue and network metrics, which describe the original call.
+   */
+  private void execute(
+      final Call call, final boolean hedge, final AttemptCallback attemptCallback) {
+    if (!hedge) {
+      metrics.startQueue(priority);
+    }
+    try {
+      executor.execute(
+          new RateLimitExecutorService.RejectableTask() {
+            @Override
+            public void run() {
+              if (!hedge) {
+                metrics.endQueue();
+              }
+              if (deadline != null) {
+                long remainingNanos = deadline.remaining(TimeUnit.NANOSECONDS);
+                if (remainingNanos <= 0) {
+                  attemptCallback.onFailure(deadlineExceeded("before the request was sent"));
+                  return;
+                }
+                // The call timeout spans connecting, the server's processing and reading the body.
+                call.timeout().deadline(remainingNanos, TimeUnit.NANOSECONDS);
+              }
+              if (!hedge) {
+                metrics.startNetwork();
+              }
+              attemptCallback.onSending();
+              Response response;
+              try {
+                response = call.execute();
+              } catch (IOException e) {
+                if (!hedge) {
+                  metrics.endNetwork();
+                }
+                if (call.isCanceled()) {
+                  attemptCallback.onFailure(e);
+                } else if (OkHttpPendingResult.this.isExpired()) {
+                  DeadlineExceededException timeout =
+                      deadlineExceeded("waiting for the server's response");
+                  timeout.initCause(e);
+                  attemptCallback.onFailure(timeout);
+                } else {
+                  if (circuitBreaker != null) {
+                    circuitBreaker.onFailure(metrics);
+                  }
+                  attemptCallback.onFailure(e);
+                }
+                return;
+              }
+              if (!hedge) {
+                metrics.endNetwork();
+              }
+              if (circuitBreaker != null) {
+                if (response.code() >= 500) {
+                  circuitBreaker.onFailure(metrics);
+                } else {
+                  circuitBreaker.onSuccess(metrics);
+                }
+              }
+              attemptCallback.onResponse(response);
+            }
+
+            @Override
+            public void reject(RejectedExecutionException e) {
+              if (!hedge) {
+                metrics.endQueue();
+              }
+              if (OkHttpPendingResult.this.isExpired()) {
+                attemptCallback.onFailure(deadlineExceeded("while waiting for the rate limit"));
+              } else {
+                attemptCallback.onFailure(e);
+              }
+            }
+
+            @Override
+            public boolean isExpired() {
+              return OkHttpPendingResult.this.isExpired() || attemptCallback.isAbandoned();
+            }
+          },
+          request.url().encodedPath(),
+          priority);
+    } catch (RejectedExecutionException e) {
+      if (!hedge) {
+        metrics.endQueue();
+      }
+      attemptCallback.onFailure(e);
+    }
+  }
+
+  /**
+   * An original call and its hedge, racing to respond. The first response is passed on and the
+   * other call cancelled. A failure is only passed on once neither call can respond any more.
+   *
+   * <p>Both the hedge delay and the latencies recorded for the hedging policy are measured from
+   * when a call is sent, not from when it was queued. Otherwise a backed up rate limit queue would
+   * make every queued request look slow, and hedge them all just when there is the least capacity
+   * to spare. Until enough is known about the API's latency there's no delay to hedge after, but
+   * the attempt still goes through here so that its latency is recorded.
+   */
+  private class HedgedAttempt {
+    private final Call primary;
+    private final AttemptCallback attemptCallback;
+    private volatile Future<?> timer;
+    private volatile long primarySentNanos;
+    private Call hedge;
+    private int outstanding = 1;
+    private boolean settled;
+
+    HedgedAttempt(Call primary, AttemptCallback attemptCallback) {
+      this.primary = primary;
+      this.attemptCallback = attemptCallback;
+    }
+
+    synchronized boolean isSettled() {
+      return settled;
+    }
+
+    /** @return The hedge call to send, or null if the race is already over. */
+    synchronized Call startHedge() {
+      if (settled) {
+        return null;
+      }
+      outstanding++;
+      hedge = client.newCall(request);
+      hedgeCall = hedge;
+      return hedge;
+    }
+
+    /** Starts the hedge timer, now that the original call is being sent. */
+    private void primarySent() {
+      primarySentNanos = System.nanoTime();
+      long hedgeDelayMillis = hedgingPolicy.hedgeDelayMillis(request.url().encodedPath());
+      if (hedgeDelayMillis < 0) {
+        return;
+      }
+      try {
+        timer =
+            retryScheduler.schedule(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    hedge(HedgedAttempt.this);
+                  }
+                },
+                hedgeDelayMillis,
+                TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // The request handler is shutting down, so there's no point in hedging.
+      }
+    }
+
+    AttemptCallback callbackFor(final Call call) {
+      return new AttemptCallback() {
+        @Override
+        public void onSending() {
+          if (call == primary) {
+            primarySent();
+          }
+        }
+
+        @Override
+        public void onResponse(Response response) {
+          Call loser;
+          synchronized (HedgedAttempt.this) {
+            if (settled) {
+              response.close();
+              return;
+            }
+            settled = true;
+            loser = call == primary ? hedge : primary;
+          }
+          stopTimer();
+          if (loser != null) {
+            loser.cancel();
+          }
+          // Only the time on the network, from sending the primary call. When the hedge wins, the
+          // primary's wait so far is a lower bound on its latency, whereas the hedge's own latency
+          // would only ever pull the hedge delay down.
+          hedgingPolicy.recordLatency(
+              request.url().encodedPath(),
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - primarySentNanos));
+          attemptCallback.onResponse(response);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+          synchronized (HedgedAttempt.this) {
+            // Wait for the other call, which may still respond.
+            if (settled || --outstanding > 0) {
+              return;
+            }
+            settled = true;
+          }
+          stopTimer();
+          attemptCallback.onFailure(e);
+        }
+
+        @Override
+        public boolean isAbandoned() {
+          return isSettled();
+        }
+      };
+    }
+
+    private void stopTimer() {
+      Future<?> timer = this.timer;
+      if (timer != null) {
+        timer.cancel(false);
+      }
+    }
   }
 
   /** Preserve a request/response pair through an asynchronous callback. */
   private class QueuedResponse {
     private final OkHttpPendingResult<T, R> request;
     private final Response response;
-    private final IOException e;
+    private final Exception e;
 
     public QueuedResponse(OkHttpPendingResult<T, R> request, Response response) {
       this.request = request;
@@ -127,7 +432,7 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
       this.e = null;
     }
 
-    public QueuedResponse(OkHttpPendingResult<T, R> request, IOException e) {
+    public QueuedResponse(OkHttpPendingResult<T, R> request, Exception e) {
       this.request = request;
       this.response = null;
       this.e = e;
@@ -138,19 +443,12 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
   public T await() throws ApiException, IOException, InterruptedException {
     // Handle sleeping for retried requests
     if (retryCounter > 0) {
-      // 0.5 * (1.5 ^ i) represents an increased sleep time of 1.5x per iteration,
-      // starting at 0.5s when i = 0. The retryCounter will be 1 for the 1st retry,
-      // so subtract 1 here.
-      double delaySecs = 0.5 * Math.pow(1.5, retryCounter - 1);
-
-      // Generate a jitter value between -delaySecs / 2 and +delaySecs / 2
-      long delayMillis = (long) (delaySecs * (Math.random() + 0.5) * 1000);
-
-      LOG.debug(
-          String.format(
-              "Sleeping between errors for %dms (retry #%d, already slept %dms)",
-              delayMillis, retryCounter, cumulativeSleepTime));
-      cumulativeSleepTime += delayMillis;
+      long delayMillis = nextBackoffMillis();
+      if (!hasTimeFor(delayMillis)) {
+        DeadlineExceededException e = deadlineExceeded("before retry #" + retryCounter);
+        metrics.endRequest(e, 0, retryCounter);
+        throw e;
+      }
       try {
         Thread.sleep(delayMillis);
       } catch (InterruptedException e) {
@@ -163,18 +461,16 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
 
     // This callback will be called on another thread, handled by the RateLimitExecutorService.
     // Calling call.execute() directly would bypass the rate limiting.
-    call.enqueue(
-        new okhttp3.Callback() {
+    dispatch(
+        new AttemptCallback() {
           @Override
-          public void onFailure(Call call, IOException e) {
-            metrics.endNetwork();
-            waiter.add(new QueuedResponse(parent, e));
+          public void onResponse(Response response) {
+            waiter.add(new QueuedResponse(parent, response));
           }
 
           @Override
-          public void onResponse(Call call, Response response) throws IOException {
-            metrics.endNetwork();
-            waiter.add(new QueuedResponse(parent, response));
+          public void onFailure(Exception e) {
+            waiter.add(new QueuedResponse(parent, e));
           }
         });
 
@@ -183,7 +479,10 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
       return parseResponse(r.request, r.response);
     } else {
       metrics.endRequest(r.e, 0, retryCounter);
-      throw r.e;
+      if (r.e instanceof IOException) {
+        throw (IOException) r.e;
+      }
+      throw (RuntimeException) r.e;
     }
   }
 
@@ -198,35 +497,73 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
 
   @Override
   public void cancel() {
+    cancelled = true;
     call.cancel();
+    Call hedge = hedgeCall;
+    if (hedge != null) {
+      hedge.cancel();
+    }
   }
 
-  @Override
-  public void onFailure(Call call, IOException ioe) {
-    metrics.endNetwork();
+  private void handleFailure(Exception e) {
     if (callback != null) {
-      metrics.endRequest(ioe, 0, retryCounter);
-      callback.onFailure(ioe);
+      metrics.endRequest(e, 0, retryCounter);
+      callback.onFailure(e);
     }
   }
 
-  @Override
-  public void onResponse(Call call, Response response) throws IOException {
-    metrics.endNetwork();
+  private void handleResponse(Response response) {
     if (callback != null) {
+      // Retries of asynchronous requests are scheduled rather than slept for, so that no thread
+      // is held for the duration of the backoff.
+      if (shouldRetry(response)) {
+        // since we are retrying the request we must close the response
+        response.close();
+        scheduleRetry();
+        return;
+      }
+
       try {
-        callback.onResult(parseResponse(this, response));
+        T result;
+        try {
+          result = parseResponseInternal(response);
+        } catch (ApiException e) {
+          if (shouldRetry(e)) {
+            scheduleRetry();
+            return;
+          }
+          throw e;
+        }
+        metrics.endRequest(null, response.code(), retryCounter);
+        callback.onResult(result);
       } catch (Exception e) {
+        metrics.endRequest(e, response.code(), retryCounter);
         callback.onFailure(e);
       }
     }
   }
 
-  @SuppressWarnings("unchecked")
   private T parseResponse(OkHttpPendingResult<T, R> request, Response response)
       throws ApiException, InterruptedException, IOException {
+    if (shouldRetry(response)) {
+      // since we are retrying the request we must close the response
+      response.close();
+
+      // Retry is a blocking method, but that's OK. If we're here, we're in an await() call, which
+      // is blocking anyway.
+      return request.retry();
+    }
+
     try {
-      T result = parseResponseInternal(request, response);
+      T result;
+      try {
+        result = parseResponseInternal(response);
+      } catch (ApiException e) {
+        if (shouldRetry(e)) {
+          return request.retry();
+        }
+        throw e;
+      }
       metrics.endRequest(null, response.code(), retryCounter);
       return result;
     } catch (Exception e) {
@@ -235,98 +572,163 @@ public class OkHttpPendingResult<T, R extends ApiResponse<T>>
     }
   }
 
+  /**
+   * Decodes {@code response}, returning its result or throwing the error it describes. Whether to
+   * retry is left to the caller.
+   */
   @SuppressWarnings("unchecked")
-  private T parseResponseInternal(OkHttpPendingResult<T, R> request, Response response)
-      throws ApiException, InterruptedException, IOException {
-    if (shouldRetry(response)) {
-      // since we are retrying the request we must close the response
-      response.close();
-
-      // Retry is a blocking method, but that's OK. If we're here, we're either in an await()
-      // call, which is blocking anyway, or we're handling a callback in a separate thread.
-      return request.retry();
-    }
-
-    byte[] bytes;
-    try (ResponseBody body = response.body()) {
-      bytes = body.bytes();
-    }
+  private T parseResponseInternal(Response response) throws ApiException, IOException {
     R resp;
     String contentType = response.header("Content-Type");
-
-    if (contentType != null
-        && contentType.startsWith("image")
-        && responseClass == ImageResult.Response.class
-        && response.code() == 200) {
-      ImageResult result = new ImageResult(contentType, bytes);
-      return (T) result;
+    if (response.code() == 429) {
+      executor.reportOverQueryLimit(request.url().encodedPath());
     }
 
-    Gson gson =
-        new GsonBuilder()
-            .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeAdapter())
-            .registerTypeAdapter(Distance.class, new DistanceAdapter())
-            .registerTypeAdapter(Duration.class, new DurationAdapter())
-            .registerTypeAdapter(Fare.class, new FareAdapter())
-            .registerTypeAdapter(LatLng.class, new LatLngAdapter())
-            .registerTypeAdapter(
-                AddressComponentType.class,
-                new SafeEnumAdapter<AddressComponentType>(AddressComponentType.UNKNOWN))
-            .registerTypeAdapter(
-                AddressType.class, new SafeEnumAdapter<AddressType>(AddressType.UNKNOWN))
-            .registerTypeAdapter(
-                TravelMode.class, new SafeEnumAdapter<TravelMode>(TravelMode.UNKNOWN))
-            .registerTypeAdapter(
-                LocationType.class, new SafeEnumAdapter<LocationType>(LocationType.UNKNOWN))
-            .registerTypeAdapter(
-                RatingType.class, new SafeEnumAdapter<RatingType>(RatingType.UNKNOWN))
-            .registerTypeAdapter(DayOfWeek.class, new DayOfWeekAdapter())
-            .registerTypeAdapter(PriceLevel.class, new PriceLevelAdapter())
-            .registerTypeAdapter(Instant.class, new InstantAdapter())
-            .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
-            .registerTypeAdapter(GeolocationApi.Response.class, new GeolocationResponseAdapter())
-            .setFieldNamingPolicy(fieldNamingPolicy)
-            .create();
-
-    // Attempt to de-serialize before checking the HTTP status code, as there may be JSON in the
-    // body that we can use to provide a more descriptive exception.
-    try {
-      resp = gson.fromJson(new String(bytes, "utf8"), responseClass);
-    } catch (JsonSyntaxException e) {
-      // Check HTTP status for a more suitable exception
-      if (!response.isSuccessful()) {
-        // Some of the APIs return 200 even when the API request fails, as long as the transport
-        // mechanism succeeds. In these cases, INVALID_RESPONSE, etc are handled by the Gson
-        // parsing.
-        throw new IOException(
-            String.format("Server Error: %d %s", response.code(), response.message()));
+    try (ResponseBody body = response.body()) {
+      if (contentType != null
+          && contentType.startsWith("image")
+          && responseClass == ImageResult.Response.class
+          && response.code() == 200) {
+        ImageResult result = new ImageResult(contentType, body.bytes());
+        return (T) result;
       }
 
-      // Otherwise just cough up the syntax exception.
-      throw e;
+      // Attempt to de-serialize before checking the HTTP status code, as there may be JSON in the
+      // body that we can use to provide a more descriptive exception.
+      try {
+        resp = decode(body);
+      } catch (JsonSyntaxException e) {
+        // When streaming, a transport failure part way through the body surfaces from Gson as a
+        // syntax error. Report it as the I/O error it is, as the buffered path would have.
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException
+            && !(cause instanceof MalformedJsonException)
+            && !(cause instanceof EOFException)) {
+          throw (IOException) cause;
+        }
+
+        // Check HTTP status for a more suitable exception
+        if (!response.isSuccessful()) {
+          // Some of the APIs return 200 even when the API request fails, as long as the transport
+          // mechanism succeeds. In these cases, INVALID_RESPONSE, etc are handled by the Gson
+          // parsing.
+          throw new IOException(
+              String.format("Server Error: %d %s", response.code(), response.message()));
+        }
+
+        // Otherwise just cough up the syntax exception.
+        throw e;
+      }
     }
 
     if (resp.successful()) {
+      executor.reportSuccess(request.url().encodedPath());
       // Return successful responses
       return resp.getResult();
     } else {
       ApiException e = resp.getError();
-      if (shouldRetry(e)) {
-        return request.retry();
-      } else {
-        throw e;
+      if (e instanceof OverQueryLimitException) {
+        executor.reportOverQueryLimit(request.url().encodedPath());
       }
+      throw e;
+    }
+  }
+
+  /**
+   * Decodes the response body. In streaming mode Gson reads straight from the connection, so the
+   * payload is never held in memory as a byte array and a string at the same time.
+   */
+  private R decode(ResponseBody body) throws IOException {
+    ResponseCodecRegistry codecs = ResponseCodecRegistry.getInstance();
+    if (streamResponses) {
+      return codecs.fromJson(
+          new InputStreamReader(body.source().inputStream(), StandardCharsets.UTF_8),
+          responseClass,
+          fieldNamingPolicy);
     }
+    return codecs.fromJson(new String(body.bytes(), "utf8"), responseClass, fieldNamingPolicy);
   }
 
   private T retry() throws ApiException, InterruptedException, IOException {
     retryCounter++;
     LOG.info("Retrying request. Retry #" + retryCounter);
-    metrics.startNetwork();
     this.call = client.newCall(request);
     return this.await();
   }
 
+  /**
+   * Schedules the next attempt of an asynchronous request on the retry scheduler, after the same
+   * backoff {@link #await()} would have slept for.
+   */
+  private void scheduleRetry() {
+    retryCounter++;
+    LOG.info("Retrying request. Retry #" + retryCounter);
+    long delayMillis = nextBackoffMillis();
+    if (!hasTimeFor(delayMillis)) {
+      DeadlineExceededException e = deadlineExceeded("before retry #" + retryCounter);
+      metrics.endRequest(e, 0, retryCounter);
+      callback.onFailure(e);
+      return;
+    }
+    final OkHttpPendingResult<T, R> parent = this;
+    try {
+      retryScheduler.schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (cancelled) {
+                IOException canceled = new IOException("Canceled");
+                metrics.endRequest(canceled, 0, retryCounter);
+                callback.onFailure(canceled);
+                return;
+              }
+              parent.call = client.newCall(request);
+              parent.setCallback(callback);
+            }
+          },
+          delayMillis,
+          TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The request handler has been shut down.
+      metrics.endRequest(e, 0, retryCounter);
+      callback.onFailure(e);
+    }
+  }
+
+  /**
+   * Returns how long to wait before the current retry, and adds it to the cumulative time spent
+   * backing off.
+   */
+  private long nextBackoffMillis() {
+    // 0.5 * (1.5 ^ i) represents an increased sleep time of 1.5x per iteration,
+    // starting at 0.5s when i = 0. The retryCounter will be 1 for the 1st retry,
+    // so subtract 1 here.
+    double delaySecs = 0.5 * Math.pow(1.5, retryCounter - 1);
+
+    // Generate a jitter value between -delaySecs / 2 and +delaySecs / 2
+    long delayMillis = (long) (delaySecs * (Math.random() + 0.5) * 1000);
+
+    LOG.debug(
+        String.format(
+            "Sleeping between errors for %dms (retry #%d, already slept %dms)",
+            delayMillis, retryCounter, cumulativeSleepTime));
+    cumulativeSleepTime += delayMillis;
+    return delayMillis;
+  }
+
+  private boolean isExpired() {
+    return deadline != null && deadline.isExpired();
+  }
+
+  /** @return Whether the deadline leaves time to back off for {@code delayMillis} and try again. */
+  private boolean hasTimeFor(long delayMillis) {
+    return deadline == null || delayMillis < deadline.remaining(TimeUnit.MILLISECONDS);
+  }
+
+  private DeadlineExceededException deadlineExceeded(String when) {
+    return new DeadlineExceededException("Request deadline exceeded " + when);
+  }
+
   private boolean shouldRetry(Response response) {
     return RETRY_ERROR_CODES.contains(response.code())
         && cumulativeSleepTime < errorTimeOut
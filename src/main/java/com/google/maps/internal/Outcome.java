@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.maps.PendingResult;
+import com.google.maps.errors.ApiException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Receives the outcome of a request for a thread blocked in {@link PendingResult#await()}, for
+ * {@link PendingResult} implementations whose calls only complete through a callback.
+ *
+ * @param <T> The type of the result object.
+ */
+public final class Outcome<T> implements PendingResult.Callback<T> {
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile T result;
+  private volatile Throwable failure;
+
+  @Override
+  public void onResult(T result) {
+    this.result = result;
+    done.countDown();
+  }
+
+  @Override
+  public void onFailure(Throwable e) {
+    this.failure = e;
+    done.countDown();
+  }
+
+  /**
+   * Blocks until the outcome is delivered.
+   *
+   * @param pending The request to cancel if the waiting thread is interrupted.
+   * @return The result of the request.
+   * @throws ApiException If the request failed with an API error.
+   * @throws IOException If the request failed with an I/O error.
+   * @throws InterruptedException If the waiting thread is interrupted.
+   */
+  public T await(PendingResult<?> pending) throws ApiException, InterruptedException, IOException {
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      pending.cancel();
+      throw e;
+    }
+    Throwable e = failure;
+    if (e == null) {
+      return result;
+    } else if (e instanceof ApiException) {
+      throw (ApiException) e;
+    } else if (e instanceof IOException) {
+      throw (IOException) e;
+    } else if (e instanceof InterruptedException) {
+      // It was the thread delivering the outcome that was interrupted, not this one.
+      throw new InterruptedIOException("Request was interrupted");
+    } else if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    }
+    throw new IOException(e);
+  }
+}
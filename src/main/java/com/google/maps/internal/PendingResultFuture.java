@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.maps.PendingResult;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link CompletableFuture} that is completed by a {@link PendingResult}'s callback.
+ *
+ * <p>Cancelling the future cancels the underlying request, so that a pipeline built from these
+ * futures doesn't keep issuing calls whose results nobody is waiting for.
+ *
+ * @param <T> The type of the result object.
+ */
+public class PendingResultFuture<T> extends CompletableFuture<T>
+    implements PendingResult.Callback<T> {
+  private final PendingResult<T> pendingResult;
+  private final Executor executor;
+
+  /**
+   * Starts {@code pendingResult} and returns a future for its result.
+   *
+   * @param pendingResult The request to perform.
+   * @param executor The executor to complete the future on, or null to complete it directly from
+   *     the thread that delivers the response.
+   * @param <T> The type of the result object.
+   * @return A future that completes with the result of the request.
+   */
+  public static <T> PendingResultFuture<T> start(
+      PendingResult<T> pendingResult, Executor executor) {
+    PendingResultFuture<T> future = new PendingResultFuture<>(pendingResult, executor);
+    pendingResult.setCallback(future);
+    return future;
+  }
+
+  private PendingResultFuture(PendingResult<T> pendingResult, Executor executor) {
+    this.pendingResult = pendingResult;
+    this.executor = executor;
+  }
+
+  @Override
+  public void onResult(final T result) {
+    if (executor == null) {
+      complete(result);
+      return;
+    }
+    execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            complete(result);
+          }
+        });
+  }
+
+  @Override
+  public void onFailure(final Throwable e) {
+    if (executor == null) {
+      completeExceptionally(e);
+      return;
+    }
+    execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            completeExceptionally(e);
+          }
+        });
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    boolean cancelled = super.cancel(mayInterruptIfRunning);
+    if (cancelled) {
+      pendingResult.cancel();
+    }
+    return cancelled;
+  }
+
+  private void execute(Runnable completion) {
+    try {
+      executor.execute(completion);
+    } catch (RuntimeException e) {
+      // The executor rejected the completion; fail the future rather than leave it hanging.
+      completeExceptionally(e);
+    }
+  }
+}
@@ -15,20 +15,30 @@
 
 package com.google.maps.internal;
 
+import com.google.maps.RequestPriority;
+import com.google.maps.errors.RequestQueueFullException;
 import com.google.maps.internal.ratelimiter.RateLimiter;
+import com.google.maps.ratelimit.SharedRateLimiter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,51 +48,676 @@ public class RateLimitExecutorService implements ExecutorService, Runnable {
   private static final Logger LOG =
       LoggerFactory.getLogger(RateLimitExecutorService.class.getName());
   private static final int DEFAULT_QUERIES_PER_SECOND = 50;
+  private static final String DISPATCHER_NAME = "Rate Limited Dispatcher";
 
-  // It's important we set Ok's second arg to threadFactory(.., true) to ensure the threads are
-  // killed when the app exits. For synchronous requests this is ideal but it means any async
-  // requests still pending after termination will be killed.
-  private final ExecutorService delegate =
-      new ThreadPoolExecutor(
-          Runtime.getRuntime().availableProcessors(),
-          Integer.MAX_VALUE,
-          60,
-          TimeUnit.SECONDS,
-          new SynchronousQueue<Runnable>(),
-          threadFactory("Rate Limited Dispatcher", true));
-
-  private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-  private final RateLimiter rateLimiter =
-      RateLimiter.create(DEFAULT_QUERIES_PER_SECOND, 1, TimeUnit.SECONDS);
+  // Adaptive rate limiting: halve the rate when the server says we're over quota, but no more than
+  // once per interval, since the requests already in flight will report the same thing. Then add
+  // one query per second for every second's worth of successful requests.
+  private static final double ADAPTIVE_DECREASE_FACTOR = 0.5;
+  private static final double ADAPTIVE_MIN_QUERIES_PER_SECOND = 1;
+  private static final long ADAPTIVE_DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  // Out of every ten requests dequeued while both lanes are waiting, nine are interactive.
+  private static final int DEFAULT_INTERACTIVE_WEIGHT = 9;
+  private static final int DEFAULT_BATCH_WEIGHT = 1;
+
+  /** What {@link #execute} does with a task when its queue is already at its maximum depth. */
+  public enum OverflowPolicy {
+    /**
+     * Block the submitting thread until there is room in the queue. Tasks submitted from a {@link
+     * #newTimerThread timer thread}, such as retries and hedges, are refused instead, as under
+     * {@link #FAIL_FAST}.
+     */
+    BLOCK,
+    /** Throw a {@link RequestQueueFullException} at the submitting thread. */
+    FAIL_FAST,
+    /**
+     * Discard the task that has been waiting longest in the least urgent lane to make room for the
+     * new one. Only lanes as urgent as the new task or less are considered; if every queued task is
+     * more urgent, the new task is refused instead.
+     */
+    DROP_OLDEST
+  }
+
+  /**
+   * A task that wants to know when it is discarded from the queue without being run, either to
+   * make room under {@link OverflowPolicy#DROP_OLDEST}, because its deadline passed while it was
+   * queued, or because the executor was shut down.
+   */
+  public interface RejectableTask extends Runnable {
+    void reject(RejectedExecutionException e);
+
+    /**
+     * @return Whether the task's deadline has passed. Expired tasks are discarded rather than
+     *     spend a rate limit permit on work nobody is waiting for.
+     */
+    default boolean isExpired() {
+      return false;
+    }
+  }
+
+  /** A task, the lane it waits in, and when it joined the queue. */
+  private static class Queued {
+    private final Runnable task;
+    private final RequestPriority priority;
+    private final long enqueuedNanos = System.nanoTime();
+
+    Queued(Runnable task, RequestPriority priority) {
+      this.task = task;
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * A queue of tasks that share one rate limit, drained by its own delay thread. Each priority has
+   * a lane of its own; lanes are served by smooth weighted round robin, see {@link
+   * #setPriorityWeight}.
+   */
+  private class RateLimitedQueue implements Runnable {
+    private final String pathPrefix;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<RequestPriority, Deque<Queued>> lanes = new EnumMap<>(RequestPriority.class);
+    private final int[] credits = new int[RequestPriority.values().length];
+    private int size;
+    private final RateLimiter rateLimiter;
+    // The configured rate, which adaptive rate limiting never exceeds.
+    private volatile double ceilingQps;
+    private int successes;
+    private long lastDecreaseNanos = System.nanoTime() - ADAPTIVE_DECREASE_INTERVAL_NANOS;
+
+    RateLimitedQueue(String pathPrefix, int maxQps) {
+      this.pathPrefix = pathPrefix;
+      for (RequestPriority priority : RequestPriority.values()) {
+        lanes.put(priority, new ArrayDeque<Queued>());
+      }
+      this.rateLimiter = RateLimiter.create(maxQps, 1, TimeUnit.SECONDS);
+      this.ceilingQps = maxQps;
+    }
+
+    synchronized void setRate(double maxQps) {
+      ceilingQps = maxQps;
+      successes = 0;
+      rateLimiter.setRate(maxQps);
+    }
+
+    synchronized void decreaseRate() {
+      long now = System.nanoTime();
+      if (now - lastDecreaseNanos < ADAPTIVE_DECREASE_INTERVAL_NANOS) {
+        return;
+      }
+      lastDecreaseNanos = now;
+      successes = 0;
+      double rate =
+          Math.max(
+              Math.min(ADAPTIVE_MIN_QUERIES_PER_SECOND, ceilingQps),
+              rateLimiter.getRate() * ADAPTIVE_DECREASE_FACTOR);
+      rateLimiter.setRate(rate);
+      LOG.info(String.format("Over query limit, reducing rate to %.1f qps", rate));
+    }
+
+    synchronized void increaseRate() {
+      double rate = rateLimiter.getRate();
+      if (rate >= ceilingQps) {
+        return;
+      }
+      if (++successes >= rate) {
+        successes = 0;
+        rateLimiter.setRate(Math.min(ceilingQps, rate + 1));
+      }
+    }
+
+    /** Main loop. */
+    @Override
+    public void run() {
+      try {
+        while (!delegate.isShutdown()) {
+          this.rateLimiter.acquire();
+          Queued q = take();
+          concurrencyLimit.acquire();
+          RateLimiter ceiling = globalRateLimiter;
+          if (ceiling != null && !delegate.isShutdown()) {
+            ceiling.acquire();
+          }
+          SharedRateLimiter shared = sharedRateLimiter;
+          if (shared != null && !delegate.isShutdown()) {
+            shared.acquire();
+          }
+          if (isExpired(q.task)) {
+            // It expired waiting for a slot or the global or shared limit; don't send it anyway.
+            concurrencyLimit.release();
+            reject(q.task, new RejectedExecutionException("Deadline exceeded while queued"));
+          } else {
+            dispatch(q.task);
+          }
+        }
+      } catch (InterruptedException ie) {
+        LOG.info("Interrupted", ie);
+      }
+    }
+
+    /** Runs {@code task} on the delegate, holding the slot taken for it until it returns. */
+    private void dispatch(final Runnable task) {
+      if (delegate.isShutdown()) {
+        concurrencyLimit.release();
+        reject(task, new RejectedExecutionException("Executor has been shut down"));
+        return;
+      }
+      try {
+        delegate.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  task.run();
+                } finally {
+                  concurrencyLimit.release();
+                }
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        // Shut down since the check above.
+        concurrencyLimit.release();
+        reject(task, e);
+      }
+    }
+
+    private Queued take() throws InterruptedException {
+      lock.lockInterruptibly();
+      try {
+        while (true) {
+          while (size == 0) {
+            notEmpty.await();
+          }
+          Queued queued = poll();
+          if (!isExpired(queued.task)) {
+            return queued;
+          }
+          // Reject outside the lock, as the task's callback may well queue another request.
+          lock.unlock();
+          try {
+            reject(queued.task, new RejectedExecutionException("Deadline exceeded while queued"));
+          } finally {
+            lock.lock();
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Removes the next task to run, choosing between non-empty lanes with a positive weight by
+     * their weights. Lanes with a weight of zero are only served once those are all empty, the most
+     * urgent first.
+     */
+    private Queued poll() {
+      int[] weights = priorityWeights;
+      RequestPriority next = null;
+      RequestPriority idle = null;
+      int total = 0;
+      for (RequestPriority priority : RequestPriority.values()) {
+        int i = priority.ordinal();
+        if (lanes.get(priority).isEmpty()) {
+          credits[i] = 0;
+          continue;
+        }
+        if (weights[i] == 0) {
+          if (idle == null) {
+            idle = priority;
+          }
+          continue;
+        }
+        credits[i] += weights[i];
+        total += weights[i];
+        // Ties go to the more urgent lane.
+        if (next == null || credits[i] > credits[next.ordinal()]) {
+          next = priority;
+        }
+      }
+      if (next == null) {
+        next = idle;
+      } else {
+        credits[next.ordinal()] -= total;
+      }
+      size--;
+      notFull.signal();
+      return lanes.get(next).poll();
+    }
+
+    /**
+     * @param queued The task to queue.
+     * @param mayBlock Whether to wait for room under {@link OverflowPolicy#BLOCK}, rather than
+     *     refuse the task as under {@link OverflowPolicy#FAIL_FAST}.
+     */
+    void add(Queued queued, boolean mayBlock) {
+      Queued dropped = null;
+      lock.lock();
+      try {
+        if (size >= maxQueueDepth) {
+          switch (overflowPolicy) {
+            case BLOCK:
+              if (!mayBlock) {
+                throw new RequestQueueFullException(maxQueueDepth);
+              }
+              while (size >= maxQueueDepth) {
+                if (delegate.isShutdown()) {
+                  throw new RejectedExecutionException("Executor has been shut down");
+                }
+                try {
+                  notFull.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new RejectedExecutionException(
+                      "Interrupted while waiting for queue space", e);
+                }
+              }
+              break;
+            case FAIL_FAST:
+              throw new RequestQueueFullException(maxQueueDepth);
+            case DROP_OLDEST:
+              dropped = pollLeastUrgent(queued.priority);
+              if (dropped == null) {
+                throw new RequestQueueFullException(maxQueueDepth);
+              }
+              break;
+          }
+        }
+        lanes.get(queued.priority).add(queued);
+        size++;
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+      if (dropped != null) {
+        reject(dropped.task, new RequestQueueFullException(maxQueueDepth));
+      }
+    }
+
+    /**
+     * Removes the oldest task of the least urgent lane that has any, but never one more urgent than
+     * {@code priority}.
+     *
+     * @return The removed task, or null if every queued task is more urgent than {@code priority}.
+     */
+    private Queued pollLeastUrgent(RequestPriority priority) {
+      RequestPriority[] priorities = RequestPriority.values();
+      for (int i = priorities.length - 1; i >= priority.ordinal(); i--) {
+        Queued queued = lanes.get(priorities[i]).poll();
+        if (queued != null) {
+          size--;
+          return queued;
+        }
+      }
+      return null;
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    long headWaitNanos() {
+      long oldest = Long.MAX_VALUE;
+      boolean any = false;
+      lock.lock();
+      try {
+        for (Deque<Queued> lane : lanes.values()) {
+          Queued head = lane.peek();
+          if (head != null && (!any || head.enqueuedNanos - oldest < 0)) {
+            oldest = head.enqueuedNanos;
+            any = true;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      return any ? System.nanoTime() - oldest : 0;
+    }
+
+    /** Rejects the tasks still waiting, and wakes the delay thread so it notices the shutdown. */
+    void drain() {
+      List<Queued> abandoned = new ArrayList<>();
+      lock.lock();
+      try {
+        for (Deque<Queued> lane : lanes.values()) {
+          abandoned.addAll(lane);
+          lane.clear();
+        }
+        // we need this to break out of take(), so it may exceed the maximum depth
+        lanes
+            .get(RequestPriority.INTERACTIVE)
+            .add(
+                new Queued(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        // do nothing
+                      }
+                    },
+                    RequestPriority.INTERACTIVE));
+        size = 1;
+        notEmpty.signal();
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      for (Queued queued : abandoned) {
+        reject(queued.task, new RejectedExecutionException("Executor has been shut down"));
+      }
+    }
+  }
+
+  /**
+   * Bounds how many dispatched tasks may run at once, across every rate limit. A task holds its
+   * slot until it returns, which for a request includes waiting for the server's response.
+   */
+  private class ConcurrencyLimit {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private int maxRunning = DEFAULT_QUERIES_PER_SECOND;
+    private int running;
+
+    void setMaxRunning(int maxRunning) {
+      lock.lock();
+      try {
+        this.maxRunning = maxRunning;
+        available.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Waits for a free slot. Once the executor is shut down, returns without waiting. */
+    void acquire() throws InterruptedException {
+      lock.lockInterruptibly();
+      try {
+        while (running >= maxRunning && !delegate.isShutdown()) {
+          available.await();
+        }
+        running++;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void release() {
+      lock.lock();
+      try {
+        running--;
+        available.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    int running() {
+      lock.lock();
+      try {
+        return running;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Wakes the delay threads waiting for a slot, so they notice the shutdown. */
+    void wakeAll() {
+      lock.lock();
+      try {
+        available.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private final ExecutorService delegate;
+  private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+  private final int maxQueueDepth;
+  private final OverflowPolicy overflowPolicy;
+
+  private final RateLimitedQueue defaultQueue;
+  // Ordered longest prefix first, so that the most specific limit wins.
+  private final List<RateLimitedQueue> apiQueues = new CopyOnWriteArrayList<>();
+  private volatile RateLimiter globalRateLimiter;
+  private volatile boolean adaptive;
+  private volatile SharedRateLimiter sharedRateLimiter;
+  // Indexed by RequestPriority ordinal. Replaced rather than modified, so readers need no lock.
+  private volatile int[] priorityWeights = defaultPriorityWeights();
 
   final Thread delayThread;
 
   public RateLimitExecutorService() {
-    setQueriesPerSecond(DEFAULT_QUERIES_PER_SECOND);
-    delayThread = new Thread(this);
-    delayThread.setDaemon(true);
-    delayThread.setName("RateLimitExecutorDelayThread");
-    delayThread.start();
+    this(false);
+  }
+
+  /**
+   * @param virtualThreads Whether to run dispatched requests on virtual threads instead of pooled
+   *     platform threads. Requires Java 21 or later, see {@link VirtualThreads#isSupported()}.
+   */
+  public RateLimitExecutorService(boolean virtualThreads) {
+    this(virtualThreads, Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * @param virtualThreads Whether to run dispatched requests on virtual threads instead of pooled
+   *     platform threads. Requires Java 21 or later, see {@link VirtualThreads#isSupported()}.
+   * @param maxQueueDepth The most tasks that may wait for each rate limit at once.
+   * @param overflowPolicy What to do with tasks submitted while their queue is full.
+   */
+  public RateLimitExecutorService(
+      boolean virtualThreads, int maxQueueDepth, OverflowPolicy overflowPolicy) {
+    if (maxQueueDepth < 1) {
+      throw new IllegalArgumentException("maxQueueDepth must be positive");
+    }
+    this.maxQueueDepth = maxQueueDepth;
+    this.overflowPolicy = overflowPolicy;
+    delegate =
+        virtualThreads ? VirtualThreads.newThreadPerTaskExecutor(DISPATCHER_NAME) : newPool();
+    defaultQueue = new RateLimitedQueue(null, DEFAULT_QUERIES_PER_SECOND);
+    delayThread = startDelayThread(this, "RateLimitExecutorDelayThread");
+  }
+
+  /**
+   * Creates a daemon thread for a timer that queues requests on the library's behalf, such as the
+   * retries and hedges of asynchronous requests, or batches at the end of their window. One such
+   * thread serves every API, so it must not wait for room in one API's full queue: under {@link
+   * OverflowPolicy#BLOCK}, the tasks it submits are refused with a {@link
+   * RequestQueueFullException} instead.
+   *
+   * @param runnable What the thread runs.
+   * @param name The name of the thread.
+   */
+  public static Thread newTimerThread(Runnable runnable, String name) {
+    Thread thread = new TimerThread(runnable, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /** A thread whose submissions never wait for room in a queue, see {@link #newTimerThread}. */
+  private static class TimerThread extends Thread {
+    TimerThread(Runnable runnable, String name) {
+      super(runnable, name);
+    }
+  }
+
+  private static Thread startDelayThread(Runnable loop, String name) {
+    Thread thread = new Thread(loop);
+    thread.setDaemon(true);
+    thread.setName(name);
+    thread.start();
+    return thread;
   }
 
+  /**
+   * Sets the rate limit of requests that have no limit of their own, see {@link
+   * #setQueriesPerSecond(String, int)}.
+   */
   public void setQueriesPerSecond(int maxQps) {
-    this.rateLimiter.setRate(maxQps);
+    defaultQueue.setRate(maxQps);
   }
 
-  /** Main loop. */
-  @Override
-  public void run() {
-    try {
-      while (!delegate.isShutdown()) {
-        this.rateLimiter.acquire();
-        Runnable r = queue.take();
-        if (!delegate.isShutdown()) {
-          delegate.execute(r);
-        }
+  /**
+   * Gives requests whose path starts with {@code pathPrefix} a rate limit and queue of their own,
+   * separate from other APIs. Where prefixes overlap, the longest matching prefix applies.
+   *
+   * @param pathPrefix The path prefix of the API, for example {@code "/maps/api/place/"}.
+   * @param maxQps The maximum queries per second for the API.
+   */
+  public synchronized void setQueriesPerSecond(String pathPrefix, int maxQps) {
+    for (RateLimitedQueue apiQueue : apiQueues) {
+      if (apiQueue.pathPrefix.equals(pathPrefix)) {
+        apiQueue.setRate(maxQps);
+        return;
       }
-    } catch (InterruptedException ie) {
-      LOG.info("Interrupted", ie);
     }
+    RateLimitedQueue apiQueue = new RateLimitedQueue(pathPrefix, maxQps);
+    int i = 0;
+    while (i < apiQueues.size() && apiQueues.get(i).pathPrefix.length() >= pathPrefix.length()) {
+      i++;
+    }
+    apiQueues.add(i, apiQueue);
+    startDelayThread(apiQueue, "RateLimitExecutorDelayThread " + pathPrefix);
+  }
+
+  /**
+   * Caps the combined rate of all requests, whichever rate limit they are queued under.
+   *
+   * @param maxQps The maximum total queries per second.
+   */
+  public synchronized void setGlobalQueriesPerSecond(int maxQps) {
+    if (globalRateLimiter == null) {
+      globalRateLimiter = RateLimiter.create(maxQps, 1, TimeUnit.SECONDS);
+    } else {
+      globalRateLimiter.setRate(maxQps);
+    }
+  }
+
+  /**
+   * Makes every request also wait for a permit from {@code sharedRateLimiter}, after it has been
+   * let through by this executor's own rate limits.
+   *
+   * @param sharedRateLimiter The rate limit shared with other clients, or null for none.
+   */
+  public void setSharedRateLimiter(SharedRateLimiter sharedRateLimiter) {
+    this.sharedRateLimiter = sharedRateLimiter;
+  }
+
+  /**
+   * Limits how many requests may be in flight at once, across every rate limit. Once the limit is
+   * reached, requests that the rate limit lets through wait for an earlier one to finish, so a slow
+   * backend is not met with an ever growing number of connections. Defaults to 50.
+   *
+   * @param maxConcurrentRequests The most requests to run at once.
+   */
+  public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+    if (maxConcurrentRequests < 1) {
+      throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+    }
+    concurrencyLimit.setMaxRunning(maxConcurrentRequests);
+  }
+
+  /** @return The number of dispatched tasks that are running. */
+  public int getRunningCount() {
+    return concurrencyLimit.running();
+  }
+
+  /**
+   * Sets how large a share of the rate limit a priority lane gets while other lanes also have
+   * requests waiting. For example, with weights of 9 for {@link RequestPriority#INTERACTIVE} and 1
+   * for {@link RequestPriority#BATCH}, nine interactive requests are let through for every batch
+   * request. A lane with a weight of zero is only served when every more urgent lane is empty,
+   * which gives the more urgent lanes strict priority over it. The most urgent lane, {@link
+   * RequestPriority#INTERACTIVE}, must have a positive weight.
+   *
+   * @param priority The priority lane.
+   * @param weight The lane's relative share, zero or more.
+   * @throws IllegalArgumentException If {@code weight} is negative, or zero for the most urgent
+   *     lane.
+   */
+  public synchronized void setPriorityWeight(RequestPriority priority, int weight) {
+    if (weight < 0) {
+      throw new IllegalArgumentException("weight must not be negative");
+    }
+    if (weight == 0 && priority.ordinal() == 0) {
+      throw new IllegalArgumentException("The weight of " + priority + " must be positive");
+    }
+    int[] weights = priorityWeights.clone();
+    weights[priority.ordinal()] = weight;
+    priorityWeights = weights;
+  }
+
+  private static int[] defaultPriorityWeights() {
+    int[] weights = new int[RequestPriority.values().length];
+    weights[RequestPriority.INTERACTIVE.ordinal()] = DEFAULT_INTERACTIVE_WEIGHT;
+    weights[RequestPriority.BATCH.ordinal()] = DEFAULT_BATCH_WEIGHT;
+    return weights;
+  }
+
+  /**
+   * Enables adaptive rate limiting. Each rate limit then backs off multiplicatively whenever the
+   * server reports that its quota is exhausted, and recovers additively as requests succeed, never
+   * exceeding the configured queries per second. Feedback comes from {@link
+   * #reportOverQueryLimit(String)} and {@link #reportSuccess(String)}.
+   *
+   * @param adaptive Whether to adapt rates to the server's feedback.
+   */
+  public void setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+
+  /**
+   * Reports that a request to {@code path} was rejected for exceeding the query rate limit.
+   *
+   * @param path The path of the request.
+   */
+  public void reportOverQueryLimit(String path) {
+    if (adaptive) {
+      queueFor(path).decreaseRate();
+    }
+  }
+
+  /**
+   * Reports that a request to {@code path} succeeded.
+   *
+   * @param path The path of the request.
+   */
+  public void reportSuccess(String path) {
+    if (adaptive) {
+      queueFor(path).increaseRate();
+    }
+  }
+
+  /**
+   * @param path The path of a request.
+   * @return The rate currently applied to requests to {@code path}, in queries per second.
+   */
+  public double getQueriesPerSecond(String path) {
+    return queueFor(path).rateLimiter.getRate();
+  }
+
+  /** Main loop of the default queue. */
+  @Override
+  public void run() {
+    defaultQueue.run();
+  }
+
+  // It's important we set Ok's second arg to threadFactory(.., true) to ensure the threads are
+  // killed when the app exits. For synchronous requests this is ideal but it means any async
+  // requests still pending after termination will be killed.
+  private static ExecutorService newPool() {
+    return new ThreadPoolExecutor(
+        Runtime.getRuntime().availableProcessors(),
+        Integer.MAX_VALUE,
+        60,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        threadFactory(DISPATCHER_NAME, true));
   }
 
   private static ThreadFactory threadFactory(final String name, final boolean daemon) {
@@ -96,22 +731,106 @@ public class RateLimitExecutorService implements ExecutorService, Runnable {
     };
   }
 
+  /**
+   * Queues {@code runnable} under the default rate limit. If the queue is full, the {@link
+   * OverflowPolicy} decides what happens.
+   *
+   * @throws RequestQueueFullException If the queue is full and the {@link OverflowPolicy} refuses
+   *     the task rather than make room for it or wait.
+   * @throws RejectedExecutionException If the executor has been shut down, or the thread was
+   *     interrupted while blocked waiting for room in the queue.
+   */
   @Override
   public void execute(Runnable runnable) {
-    queue.add(runnable);
+    execute(runnable, null);
+  }
+
+  /**
+   * Queues {@code runnable} under the rate limit of the API at {@code path}, or the default rate
+   * limit if that API has none of its own.
+   *
+   * @param runnable The task to run.
+   * @param path The path of the request the task makes.
+   * @throws RequestQueueFullException If the queue is full and the {@link OverflowPolicy} refuses
+   *     the task rather than make room for it or wait.
+   * @throws RejectedExecutionException If the executor has been shut down, or the thread was
+   *     interrupted while blocked waiting for room in the queue.
+   */
+  public void execute(Runnable runnable, String path) {
+    execute(runnable, path, RequestPriority.INTERACTIVE);
+  }
+
+  /**
+   * Queues {@code runnable} in the {@code priority} lane, under the rate limit of the API at {@code
+   * path}, or the default rate limit if that API has none of its own.
+   *
+   * @param runnable The task to run.
+   * @param path The path of the request the task makes.
+   * @param priority The lane to wait in.
+   * @throws RequestQueueFullException If the queue is full and the {@link OverflowPolicy} refuses
+   *     the task rather than make room for it or wait.
+   * @throws RejectedExecutionException If the executor has been shut down, or the thread was
+   *     interrupted while blocked waiting for room in the queue.
+   */
+  public void execute(Runnable runnable, String path, RequestPriority priority) {
+    if (delegate.isShutdown()) {
+      throw new RejectedExecutionException("Executor has been shut down");
+    }
+    queueFor(path)
+        .add(new Queued(runnable, priority), !(Thread.currentThread() instanceof TimerThread));
+  }
+
+  private RateLimitedQueue queueFor(String path) {
+    if (path != null) {
+      for (RateLimitedQueue apiQueue : apiQueues) {
+        if (path.startsWith(apiQueue.pathPrefix)) {
+          return apiQueue;
+        }
+      }
+    }
+    return defaultQueue;
+  }
+
+  /** @return The number of tasks waiting for a rate limit. */
+  public int getQueueDepth() {
+    int depth = defaultQueue.size();
+    for (RateLimitedQueue apiQueue : apiQueues) {
+      depth += apiQueue.size();
+    }
+    return depth;
+  }
+
+  /** @return How long the longest waiting task has been queued, in milliseconds. */
+  public long getQueueWaitMillis() {
+    long waitNanos = defaultQueue.headWaitNanos();
+    for (RateLimitedQueue apiQueue : apiQueues) {
+      waitNanos = Math.max(waitNanos, apiQueue.headWaitNanos());
+    }
+    return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+  }
+
+  private static boolean isExpired(Runnable task) {
+    return task instanceof RejectableTask && ((RejectableTask) task).isExpired();
+  }
+
+  private static void reject(Runnable task, RejectedExecutionException e) {
+    if (task instanceof RejectableTask) {
+      ((RejectableTask) task).reject(e);
+    }
+  }
+
+  private void drainQueues() {
+    concurrencyLimit.wakeAll();
+    defaultQueue.drain();
+    for (RateLimitedQueue apiQueue : apiQueues) {
+      apiQueue.drain();
+    }
   }
 
   @Override
   public void shutdown() {
     delegate.shutdown();
-    // we need this to break out of queue.take()
-    execute(
-        new Runnable() {
-          @Override
-          public void run() {
-            // do nothing
-          }
-        });
+    drainQueues();
   }
 
   // Everything below here is straight delegation.
@@ -119,14 +838,7 @@ public class RateLimitExecutorService implements ExecutorService, Runnable {
   @Override
   public List<Runnable> shutdownNow() {
     List<Runnable> tasks = delegate.shutdownNow();
-    // we need this to break out of queue.take()
-    execute(
-        new Runnable() {
-          @Override
-          public void run() {
-            // do nothing
-          }
-        });
+    drainQueues();
     return tasks;
   }
 
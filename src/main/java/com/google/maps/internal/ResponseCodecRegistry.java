@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.maps.DistanceMatrixApi;
+import com.google.maps.GeolocationApi;
+import com.google.maps.model.AddressComponentType;
+import com.google.maps.model.AddressType;
+import com.google.maps.model.Distance;
+import com.google.maps.model.Duration;
+import com.google.maps.model.EncodedPolyline;
+import com.google.maps.model.Fare;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.LocationType;
+import com.google.maps.model.OpeningHours.Period.OpenClose.DayOfWeek;
+import com.google.maps.model.PlaceDetails.Review.AspectRating.RatingType;
+import com.google.maps.model.PriceLevel;
+import com.google.maps.model.TravelMode;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A shared registry of the {@link Gson} instances used to decode API responses.
+ *
+ * <p>Building a {@code Gson} with all of the type adapters this library needs is comparatively
+ * expensive, so rather than doing it for every response the registry builds one instance per
+ * {@link FieldNamingPolicy} on first use. Each of those instances in turn caches the reflective
+ * adapter for every response class it decodes, so a given (policy, response class) pair is only
+ * ever introspected once. {@code Gson} and the adapters registered with it are immutable, which
+ * makes the registry safe to share between threads, request handlers and {@code GeoApiContext}s.
+ */
+public final class ResponseCodecRegistry {
+
+  private static final ResponseCodecRegistry INSTANCE = new ResponseCodecRegistry();
+
+  private final ConcurrentMap<FieldNamingPolicy, Gson> gsons = new ConcurrentHashMap<>();
+
+  private ResponseCodecRegistry() {}
+
+  /** @return The process-wide registry. */
+  public static ResponseCodecRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the {@link Gson} configured for {@code fieldNamingPolicy}, building it if this is the
+   * first time the policy has been used.
+   *
+   * @param fieldNamingPolicy The naming policy of the API being decoded.
+   * @return A shared, thread-safe {@code Gson} instance.
+   */
+  public Gson gson(FieldNamingPolicy fieldNamingPolicy) {
+    Gson gson = gsons.get(fieldNamingPolicy);
+    if (gson == null) {
+      // Racing threads may both build an instance; they are equivalent, so keep the first one.
+      Gson created = create(fieldNamingPolicy);
+      gson = gsons.putIfAbsent(fieldNamingPolicy, created);
+      if (gson == null) {
+        gson = created;
+      }
+    }
+    return gson;
+  }
+
+  /**
+   * Decodes a response body.
+   *
+   * @param json The JSON body of the response.
+   * @param responseClass Model class to unmarshal JSON body content.
+   * @param fieldNamingPolicy FieldNamingPolicy for unmarshaling JSON.
+   * @param <R> The type of the response.
+   * @return The decoded response, or {@code null} if {@code json} is empty.
+   * @throws JsonSyntaxException If {@code json} is not a valid representation of {@code R}.
+   */
+  public <R> R fromJson(String json, Class<R> responseClass, FieldNamingPolicy fieldNamingPolicy) {
+    return gson(fieldNamingPolicy).fromJson(json, responseClass);
+  }
+
+  /**
+   * Decodes a response body incrementally from {@code reader}.
+   *
+   * @param reader The JSON body of the response.
+   * @param responseClass Model class to unmarshal JSON body content.
+   * @param fieldNamingPolicy FieldNamingPolicy for unmarshaling JSON.
+   * @param <R> The type of the response.
+   * @return The decoded response, or {@code null} if the body is empty.
+   * @throws JsonSyntaxException If the body is not a valid representation of {@code R}.
+   */
+  public <R> R fromJson(
+      Reader reader, Class<R> responseClass, FieldNamingPolicy fieldNamingPolicy) {
+    return gson(fieldNamingPolicy).fromJson(reader, responseClass);
+  }
+
+  private static Gson create(FieldNamingPolicy fieldNamingPolicy) {
+    return new GsonBuilder()
+        .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeAdapter())
+        .registerTypeAdapter(Distance.class, new DistanceAdapter())
+        .registerTypeAdapter(Duration.class, new DurationAdapter())
+        .registerTypeAdapter(Fare.class, new FareAdapter())
+        .registerTypeAdapter(LatLng.class, new LatLngAdapter())
+        .registerTypeAdapter(
+            AddressComponentType.class, new SafeEnumAdapter<>(AddressComponentType.UNKNOWN))
+        .registerTypeAdapter(AddressType.class, new SafeEnumAdapter<>(AddressType.UNKNOWN))
+        .registerTypeAdapter(TravelMode.class, new SafeEnumAdapter<>(TravelMode.UNKNOWN))
+        .registerTypeAdapter(LocationType.class, new SafeEnumAdapter<>(LocationType.UNKNOWN))
+        .registerTypeAdapter(RatingType.class, new SafeEnumAdapter<>(RatingType.UNKNOWN))
+        .registerTypeAdapter(DayOfWeek.class, new DayOfWeekAdapter())
+        .registerTypeAdapter(PriceLevel.class, new PriceLevelAdapter())
+        .registerTypeAdapter(Instant.class, new InstantAdapter())
+        .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
+        .registerTypeAdapter(GeolocationApi.Response.class, new GeolocationResponseAdapter())
+        .registerTypeAdapter(
+            DistanceMatrixApi.CompactResponse.class, new CompactDistanceMatrixAdapter())
+        .registerTypeAdapter(EncodedPolyline.class, new EncodedPolylineInstanceCreator(""))
+        .setFieldNamingPolicy(fieldNamingPolicy)
+        .create();
+  }
+}
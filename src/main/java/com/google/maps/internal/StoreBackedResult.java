@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import com.google.maps.PendingResult;
+import com.google.maps.errors.ApiException;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A request that is answered from a local {@link Store} if it can be, and whose result is saved
+ * there when it has to be sent. The store only saves work: if it can't be read or written, the
+ * request is sent and answered as if there were no store.
+ *
+ * <p>The request is only made once the store has been found to have no result for it, so that a
+ * request answered from the store never starts the metrics of one that is not sent.
+ *
+ * @param <T> The type of the result object.
+ */
+public class StoreBackedResult<T> implements PendingResult<T> {
+  private static final Logger LOG = LoggerFactory.getLogger(StoreBackedResult.class.getName());
+
+  /**
+   * Where the result of one request is kept.
+   *
+   * @param <T> The type of the result object.
+   */
+  public interface Store<T> {
+    /** @return The stored result, or null if there is none. */
+    T load() throws IOException;
+
+    /**
+     * Keeps {@code result} for later requests.
+     *
+     * @return The result to give the caller, which may combine {@code result} with what the store
+     *     already had.
+     */
+    T save(T result) throws IOException;
+  }
+
+  /**
+   * Makes the request to send when the store has no result.
+   *
+   * @param <T> The type of the result object.
+   */
+  public interface Sender<T> {
+    PendingResult<T> send();
+  }
+
+  private final Sender<T> sender;
+  private final Store<T> store;
+  private volatile PendingResult<T> request;
+  private volatile boolean cancelled;
+
+  /**
+   * @param sender Makes the request to send if the store has no result for it.
+   * @param store The store of the request's result.
+   */
+  public StoreBackedResult(Sender<T> sender, Store<T> store) {
+    this.sender = sender;
+    this.store = store;
+  }
+
+  @Override
+  public void setCallback(final Callback<T> callback) {
+    T stored = load();
+    if (stored != null) {
+      callback.onResult(stored);
+      return;
+    }
+    request().setCallback(
+        new Callback<T>() {
+          @Override
+          public void onResult(T result) {
+            callback.onResult(save(result));
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            callback.onFailure(e);
+          }
+        });
+  }
+
+  @Override
+  public T await() throws ApiException, InterruptedException, IOException {
+    T stored = load();
+    if (stored != null) {
+      return stored;
+    }
+    return save(request().await());
+  }
+
+  @Override
+  public T awaitIgnoreError() {
+    try {
+      return await();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    PendingResult<T> request = this.request;
+    if (request != null) {
+      request.cancel();
+    }
+  }
+
+  private PendingResult<T> request() {
+    PendingResult<T> request = sender.send();
+    this.request = request;
+    if (cancelled) {
+      request.cancel();
+    }
+    return request;
+  }
+
+  private T load() {
+    try {
+      return store.load();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to read stored result, sending the request instead", e);
+      return null;
+    }
+  }
+
+  private T save(T result) {
+    if (result == null) {
+      return null;
+    }
+    try {
+      return store.save(result);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to store result", e);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and later.
+ *
+ * <p>The library is compiled for Java 8, so the virtual thread API is looked up reflectively. On
+ * older runtimes {@link #isSupported()} returns false and the platform thread pools are used.
+ */
+public final class VirtualThreads {
+
+  private static final int FIRST_FEATURE_RELEASE = 21;
+
+  private static final Method OF_VIRTUAL = lookUp(Thread.class, "ofVirtual");
+  // Java 19 and 20 have Thread.ofVirtual as a preview API, which fails unless previews are enabled.
+  private static final boolean SUPPORTED =
+      OF_VIRTUAL != null && featureVersion() >= FIRST_FEATURE_RELEASE;
+
+  private VirtualThreads() {}
+
+  /** @return Whether the running JVM supports virtual threads. */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for every task.
+   *
+   * @param name The prefix of the names of the executor's threads.
+   * @return The executor.
+   * @throws UnsupportedOperationException If the JVM doesn't support virtual threads.
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String name) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder =
+          builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+              .invoke(null, factory);
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | IllegalAccessException
+        | InvocationTargetException e) {
+      throw new UnsupportedOperationException("Unable to create virtual threads", e);
+    }
+  }
+
+  /** @return The feature release of the running JVM, or 0 if it predates Java 10. */
+  private static int featureVersion() {
+    try {
+      Object version = Runtime.class.getMethod("version").invoke(null);
+      return (Integer) version.getClass().getMethod("feature").invoke(version);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      return 0;
+    }
+  }
+
+  private static Method lookUp(Class<?> clazz, String name) {
+    try {
+      return clazz.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
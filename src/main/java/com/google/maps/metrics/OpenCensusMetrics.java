@@ -3,6 +3,7 @@ package com.google.maps.metrics;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.Sum;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.Stats;
@@ -25,6 +26,8 @@ public final class OpenCensusMetrics {
     public static final TagKey REQUEST_NAME = TagKey.create("request_name");
     public static final TagKey HTTP_CODE = TagKey.create("http_code");
     public static final TagKey API_STATUS = TagKey.create("api_status");
+    public static final TagKey PRIORITY = TagKey.create("priority");
+    public static final TagKey CIRCUIT_STATE = TagKey.create("circuit_state");
   }
 
   public static final class Measures {
@@ -42,11 +45,29 @@ public final class OpenCensusMetrics {
             "Network time inside the library",
             "ms");
 
+    public static final MeasureLong QUEUE_LATENCY =
+        MeasureLong.create(
+            "maps.googleapis.com/measure/client/queue_latency",
+            "Time spent waiting for the client's rate limit",
+            "ms");
+
     public static final MeasureLong RETRY_COUNT =
         MeasureLong.create(
             "maps.googleapis.com/measure/client/retry_count",
             "How many times any request was retried",
             "1");
+
+    public static final MeasureLong HEDGE_COUNT =
+        MeasureLong.create(
+            "maps.googleapis.com/measure/client/hedge_count",
+            "How many hedged copies of a slow request were sent",
+            "1");
+
+    public static final MeasureLong CIRCUIT_BREAKER_TRANSITIONS =
+        MeasureLong.create(
+            "maps.googleapis.com/measure/client/circuit_breaker_transitions",
+            "How many times a circuit breaker changed state",
+            "1");
   }
 
   private static final class Aggregations {
@@ -54,6 +75,8 @@ public final class OpenCensusMetrics {
 
     private static final Aggregation COUNT = Count.create();
 
+    private static final Aggregation SUM = Sum.create();
+
     private static final Aggregation DISTRIBUTION_INTEGERS_10 =
         Distribution.create(
             BucketBoundaries.create(
@@ -75,6 +98,10 @@ public final class OpenCensusMetrics {
     private static final List<TagKey> fields =
         tags(Tags.REQUEST_NAME, Tags.HTTP_CODE, Tags.API_STATUS);
 
+    // Queue latency is also broken down by priority lane.
+    private static final List<TagKey> queueFields =
+        tags(Tags.REQUEST_NAME, Tags.HTTP_CODE, Tags.API_STATUS, Tags.PRIORITY);
+
     public static final View REQUEST_COUNT =
         View.create(
             View.Name.create("maps.googleapis.com/client/request_count"),
@@ -99,6 +126,14 @@ public final class OpenCensusMetrics {
             Aggregations.DISTRIBUTION_LATENCY,
             fields);
 
+    public static final View QUEUE_LATENCY =
+        View.create(
+            View.Name.create("maps.googleapis.com/client/queue_latency"),
+            "Rate limit queue latency in msecs (internal)",
+            Measures.QUEUE_LATENCY,
+            Aggregations.DISTRIBUTION_LATENCY,
+            queueFields);
+
     public static final View RETRY_COUNT =
         View.create(
             View.Name.create("maps.googleapis.com/client/retry_count"),
@@ -106,6 +141,22 @@ public final class OpenCensusMetrics {
             Measures.RETRY_COUNT,
             Aggregations.DISTRIBUTION_INTEGERS_10,
             fields);
+
+    public static final View HEDGE_COUNT =
+        View.create(
+            View.Name.create("maps.googleapis.com/client/hedge_count"),
+            "Hedged requests sent",
+            Measures.HEDGE_COUNT,
+            Aggregations.SUM,
+            fields);
+
+    public static final View CIRCUIT_BREAKER_TRANSITIONS =
+        View.create(
+            View.Name.create("maps.googleapis.com/client/circuit_breaker_transitions"),
+            "Circuit breaker state changes, by the new state",
+            Measures.CIRCUIT_BREAKER_TRANSITIONS,
+            Aggregations.COUNT,
+            tags(Tags.REQUEST_NAME, Tags.CIRCUIT_STATE));
   }
 
   public static void registerAllViews() {
@@ -115,7 +166,13 @@ public final class OpenCensusMetrics {
   public static void registerAllViews(ViewManager viewManager) {
     View[] views_to_register =
         new View[] {
-          Views.REQUEST_COUNT, Views.REQUEST_LATENCY, Views.NETWORK_LATENCY, Views.RETRY_COUNT
+          Views.REQUEST_COUNT,
+          Views.REQUEST_LATENCY,
+          Views.NETWORK_LATENCY,
+          Views.QUEUE_LATENCY,
+          Views.RETRY_COUNT,
+          Views.HEDGE_COUNT,
+          Views.CIRCUIT_BREAKER_TRANSITIONS
         };
     for (View view : views_to_register) {
       viewManager.registerView(view);
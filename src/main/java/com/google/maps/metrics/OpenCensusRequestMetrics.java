@@ -1,5 +1,7 @@
 package com.google.maps.metrics;
 
+import com.google.maps.CircuitBreakerState;
+import com.google.maps.RequestPriority;
 import io.opencensus.stats.StatsRecorder;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagValue;
@@ -14,6 +16,10 @@ final class OpenCensusRequestMetrics implements RequestMetrics {
   private long requestStart;
   private long networkStart;
   private long networkTime;
+  private long queueStart;
+  private long queueTime;
+  private RequestPriority priority = RequestPriority.INTERACTIVE;
+  private long hedgeCount;
   private boolean finished;
 
   OpenCensusRequestMetrics(String requestName, Tagger tagger, StatsRecorder statsRecorder) {
@@ -23,9 +29,41 @@ final class OpenCensusRequestMetrics implements RequestMetrics {
     this.requestStart = milliTime();
     this.networkStart = milliTime();
     this.networkTime = 0;
+    this.queueTime = 0;
     this.finished = false;
   }
 
+  @Override
+  public void startQueue(RequestPriority priority) {
+    this.queueStart = milliTime();
+    this.priority = priority;
+  }
+
+  @Override
+  public void endQueue() {
+    this.queueTime += milliTime() - this.queueStart;
+  }
+
+  @Override
+  public void hedge() {
+    this.hedgeCount++;
+  }
+
+  @Override
+  public void circuitBreakerStateChanged(
+      String endpoint, CircuitBreakerState from, CircuitBreakerState to) {
+    TagContext tagContext =
+        tagger
+            .currentBuilder()
+            .putLocal(OpenCensusMetrics.Tags.REQUEST_NAME, TagValue.create(requestName))
+            .putLocal(OpenCensusMetrics.Tags.CIRCUIT_STATE, TagValue.create(to.name()))
+            .build();
+    statsRecorder
+        .newMeasureMap()
+        .put(OpenCensusMetrics.Measures.CIRCUIT_BREAKER_TRANSITIONS, 1)
+        .record(tagContext);
+  }
+
   @Override
   public void startNetwork() {
     this.networkStart = milliTime();
@@ -52,12 +90,15 @@ final class OpenCensusRequestMetrics implements RequestMetrics {
             .putLocal(
                 OpenCensusMetrics.Tags.HTTP_CODE, TagValue.create(Integer.toString(httpStatusCode)))
             .putLocal(OpenCensusMetrics.Tags.API_STATUS, TagValue.create(exceptionName(exception)))
+            .putLocal(OpenCensusMetrics.Tags.PRIORITY, TagValue.create(priority.name()))
             .build();
     statsRecorder
         .newMeasureMap()
         .put(OpenCensusMetrics.Measures.LATENCY, requestTime)
         .put(OpenCensusMetrics.Measures.NETWORK_LATENCY, this.networkTime)
+        .put(OpenCensusMetrics.Measures.QUEUE_LATENCY, this.queueTime)
         .put(OpenCensusMetrics.Measures.RETRY_COUNT, retryCount)
+        .put(OpenCensusMetrics.Measures.HEDGE_COUNT, this.hedgeCount)
         .record(tagContext);
   }
 
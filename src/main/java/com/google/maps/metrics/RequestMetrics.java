@@ -1,5 +1,8 @@
 package com.google.maps.metrics;
 
+import com.google.maps.CircuitBreakerState;
+import com.google.maps.RequestPriority;
+
 /**
  * A type to report common metrics shared among all request types.
  *
@@ -8,17 +11,43 @@ package com.google.maps.metrics;
  *
  * <ol>
  *   <li>constructor - request starts
+ *   <li>startQueue / endQueue - original request waits for the rate limit
  *   <li>startNetwork / endNetwork - original request
+ *   <li>startQueue / endQueue - retried request waits for the rate limit
  *   <li>startNetwork / endNetwork - retried request
  *   <li>endRequest - request finished (retry)
  *   <li>endRequest - request finished (original)
  * </ol>
  *
  * <p>The following metrics can be computed: Total queries, successful queries, total latency,
- * network latency
+ * network latency, queue latency, hedges sent
  */
 public interface RequestMetrics {
 
+  /**
+   * Called when the request starts waiting in the client's rate limited queue.
+   *
+   * @param priority The priority lane the request waits in.
+   */
+  default void startQueue(RequestPriority priority) {}
+
+  /** Called when the request leaves the client's rate limited queue. */
+  default void endQueue() {}
+
+  /** Called when a hedged copy of the request is sent, because the original is slow to respond. */
+  default void hedge() {}
+
+  /**
+   * Called when the outcome of this request, or its arrival, changes the state of the circuit
+   * breaker guarding its endpoint.
+   *
+   * @param endpoint The endpoint the breaker guards.
+   * @param from The previous state of the breaker.
+   * @param to The new state of the breaker.
+   */
+  default void circuitBreakerStateChanged(
+      String endpoint, CircuitBreakerState from, CircuitBreakerState to) {}
+
   void startNetwork();
 
   void endNetwork();
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A Distance Matrix API result held as arrays of primitives rather than as {@link
+ * DistanceMatrixRow} and {@link DistanceMatrixElement} objects, for code that only needs the
+ * numbers. Values are indexed by {@code origin * destinationCount + destination}; durations are in
+ * seconds, distances in meters, and values the response did not include are -1.
+ *
+ * @see com.google.maps.DistanceMatrixApiRequest#awaitCompact()
+ */
+public class CompactDistanceMatrix implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The values that {@link #min}, {@link #argmin} and {@link #nearest} compare elements by. */
+  public enum Metric {
+    DURATION,
+    DURATION_IN_TRAFFIC,
+    DISTANCE
+  }
+
+  /** Origin addresses as returned by the API, as in {@link DistanceMatrix#originAddresses}. */
+  public final String[] originAddresses;
+
+  /**
+   * Destination addresses as returned by the API, as in {@link
+   * DistanceMatrix#destinationAddresses}.
+   */
+  public final String[] destinationAddresses;
+
+  /** The number of origins, or rows, of the matrix. */
+  public final int originCount;
+
+  /** The number of destinations, or columns, of the matrix. */
+  public final int destinationCount;
+
+  /** The duration of each element in seconds. */
+  public final long[] durations;
+
+  /** The duration of each element in traffic in seconds, where the API gave one. */
+  public final long[] durationsInTraffic;
+
+  /** The distance of each element in meters. */
+  public final long[] distances;
+
+  /** The status of each element, which may be null if the API gave none. */
+  public final DistanceMatrixElementStatus[] statuses;
+
+  public CompactDistanceMatrix(
+      String[] originAddresses,
+      String[] destinationAddresses,
+      int originCount,
+      int destinationCount,
+      long[] durations,
+      long[] durationsInTraffic,
+      long[] distances,
+      DistanceMatrixElementStatus[] statuses) {
+    int elements = originCount * destinationCount;
+    if (durations.length != elements
+        || durationsInTraffic.length != elements
+        || distances.length != elements
+        || statuses.length != elements) {
+      throw new IllegalArgumentException("Every column must have one value per element");
+    }
+    this.originAddresses = originAddresses;
+    this.destinationAddresses = destinationAddresses;
+    this.originCount = originCount;
+    this.destinationCount = destinationCount;
+    this.durations = durations;
+    this.durationsInTraffic = durationsInTraffic;
+    this.distances = distances;
+    this.statuses = statuses;
+  }
+
+  /** @return The duration from {@code origin} to {@code destination} in seconds, or -1. */
+  public long duration(int origin, int destination) {
+    return durations[index(origin, destination)];
+  }
+
+  /** @return The duration in traffic from {@code origin} to {@code destination}, or -1. */
+  public long durationInTraffic(int origin, int destination) {
+    return durationsInTraffic[index(origin, destination)];
+  }
+
+  /** @return The distance from {@code origin} to {@code destination} in meters, or -1. */
+  public long distance(int origin, int destination) {
+    return distances[index(origin, destination)];
+  }
+
+  /** @return The status of the element from {@code origin} to {@code destination}. */
+  public DistanceMatrixElementStatus status(int origin, int destination) {
+    return statuses[index(origin, destination)];
+  }
+
+  /**
+   * Finds the closest destination to an origin. Only elements with an {@link
+   * DistanceMatrixElementStatus#OK} status and a value for {@code metric} are considered.
+   *
+   * @param origin The origin to search from.
+   * @param metric What to compare destinations by.
+   * @return The index of the closest destination, or -1 if none can be reached.
+   */
+  public int argmin(int origin, Metric metric) {
+    long[] values = column(metric);
+    int start = row(origin);
+    int best = -1;
+    for (int destination = 0; destination < destinationCount; destination++) {
+      if (reachable(values, start + destination)
+          && (best < 0 || values[start + destination] < values[start + best])) {
+        best = destination;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param origin The origin to search from.
+   * @param metric What to compare destinations by.
+   * @return The value of {@code metric} for the closest destination, or -1 if none can be reached.
+   */
+  public long min(int origin, Metric metric) {
+    int destination = argmin(origin, metric);
+    return destination < 0 ? -1 : column(metric)[index(origin, destination)];
+  }
+
+  /**
+   * Finds the {@code k} closest destinations to an origin, closest first. Only elements with an
+   * {@link DistanceMatrixElementStatus#OK} status and a value for {@code metric} are considered.
+   *
+   * @param origin The origin to search from.
+   * @param k The most destinations to return.
+   * @param metric What to compare destinations by.
+   * @return The indexes of up to {@code k} destinations, fewer if fewer can be reached.
+   */
+  public int[] nearest(int origin, int k, Metric metric) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative");
+    }
+    long[] values = column(metric);
+    int start = row(origin);
+    // Insertion into a sorted array of at most k destinations, which is fast for the small k that
+    // nearest neighbour searches use.
+    int[] nearest = new int[Math.min(k, destinationCount)];
+    int found = 0;
+    for (int destination = 0; destination < destinationCount; destination++) {
+      if (!reachable(values, start + destination)) {
+        continue;
+      }
+      long value = values[start + destination];
+      int position = found;
+      while (position > 0 && values[start + nearest[position - 1]] > value) {
+        position--;
+      }
+      if (position >= nearest.length) {
+        continue;
+      }
+      int moved = Math.min(found, nearest.length - 1) - position;
+      System.arraycopy(nearest, position, nearest, position + 1, moved);
+      nearest[position] = destination;
+      found = Math.min(found + 1, nearest.length);
+    }
+    return found == nearest.length ? nearest : Arrays.copyOf(nearest, found);
+  }
+
+  private boolean reachable(long[] values, int index) {
+    return statuses[index] == DistanceMatrixElementStatus.OK && values[index] >= 0;
+  }
+
+  private long[] column(Metric metric) {
+    switch (metric) {
+      case DURATION:
+        return durations;
+      case DURATION_IN_TRAFFIC:
+        return durationsInTraffic;
+      case DISTANCE:
+        return distances;
+      default:
+        throw new IllegalArgumentException("Unknown metric " + metric);
+    }
+  }
+
+  /** Checks the origin on its own, as a matrix without destinations still has its origins. */
+  private int row(int origin) {
+    if (origin < 0 || origin >= originCount) {
+      throw new IndexOutOfBoundsException(
+          String.format("Origin %d is outside the %d origins", origin, originCount));
+    }
+    return origin * destinationCount;
+  }
+
+  private int index(int origin, int destination) {
+    if (origin < 0 || origin >= originCount || destination < 0 || destination >= destinationCount) {
+      throw new IndexOutOfBoundsException(
+          String.format(
+              "(%d, %d) is outside the %d x %d matrix",
+              origin, destination, originCount, destinationCount));
+    }
+    return origin * destinationCount + destination;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "CompactDistanceMatrix: %d origins x %d destinations", originCount, destinationCount);
+  }
+}
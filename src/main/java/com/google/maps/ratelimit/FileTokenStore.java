@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link TokenStore} kept in files, one per bucket, which processes on the same host share by
+ * locking them. It needs no external service, so it serves as a reference implementation and for
+ * testing a cluster of processes on one machine.
+ *
+ * <p>Buckets are timed by the wall clock, since the processes have no other clock in common.
+ */
+public class FileTokenStore implements TokenStore {
+  private static final int BUCKET_SIZE_BYTES = 16;
+
+  // File locks are held on behalf of the whole JVM, so threads of one process take turns here.
+  private static final ConcurrentMap<String, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+  private final File directory;
+
+  /** @param directory The directory to keep the bucket files in. It is created if necessary. */
+  public FileTokenStore(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public long lease(String bucket, long permits, double permitsPerSecond) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Unable to create token store directory " + directory);
+    }
+    File file = new File(directory, URLEncoder.encode(bucket, "UTF-8") + ".tokens");
+    Object processLock = processLock(file.getCanonicalPath());
+    synchronized (processLock) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+          FileChannel channel = raf.getChannel();
+          FileLock lock = channel.lock()) {
+        long now = System.currentTimeMillis();
+        TokenBucket tokenBucket;
+        if (raf.length() >= BUCKET_SIZE_BYTES) {
+          tokenBucket = new TokenBucket(raf.readDouble(), raf.readLong());
+        } else {
+          tokenBucket = TokenBucket.full(permitsPerSecond, now);
+        }
+        long granted = tokenBucket.take(permits, permitsPerSecond, now);
+        raf.seek(0);
+        raf.writeDouble(tokenBucket.tokens);
+        raf.writeLong(tokenBucket.refilledMillis);
+        return granted;
+      }
+    }
+  }
+
+  private static Object processLock(String path) {
+    Object lock = PROCESS_LOCKS.get(path);
+    if (lock == null) {
+      Object created = new Object();
+      lock = PROCESS_LOCKS.putIfAbsent(path, created);
+      if (lock == null) {
+        lock = created;
+      }
+    }
+    return lock;
+  }
+}
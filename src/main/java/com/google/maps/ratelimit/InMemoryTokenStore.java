@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link TokenStore} held in memory. It can only be shared by the clients of one process, which
+ * makes it suitable for tests and for sharing one quota between several {@code GeoApiContext}s.
+ */
+public class InMemoryTokenStore implements TokenStore {
+  private final Map<String, TokenBucket> buckets = new HashMap<>();
+
+  @Override
+  public synchronized long lease(String bucket, long permits, double permitsPerSecond) {
+    long now = System.currentTimeMillis();
+    TokenBucket tokenBucket = buckets.get(bucket);
+    if (tokenBucket == null) {
+      tokenBucket = TokenBucket.full(permitsPerSecond, now);
+      buckets.put(bucket, tokenBucket);
+    }
+    return tokenBucket.take(permits, permitsPerSecond, now);
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+/**
+ * A rate limit shared with other clients, typically the other processes that use the same API key.
+ *
+ * <p>It applies on top of the client's own rate limits: every request waits for a permit from the
+ * client's limits first, then from the shared one.
+ *
+ * @see TokenStoreRateLimiter
+ */
+public interface SharedRateLimiter {
+
+  /**
+   * Blocks until a query may be sent.
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  void acquire() throws InterruptedException;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+/** The state of one token bucket, shared by the {@link TokenStore} implementations. */
+final class TokenBucket {
+  double tokens;
+  long refilledMillis;
+
+  TokenBucket(double tokens, long refilledMillis) {
+    this.tokens = tokens;
+    this.refilledMillis = refilledMillis;
+  }
+
+  /** @return A bucket that is full at {@code nowMillis}. */
+  static TokenBucket full(double permitsPerSecond, long nowMillis) {
+    return new TokenBucket(capacity(permitsPerSecond), nowMillis);
+  }
+
+  /** Refills the bucket up to {@code nowMillis}, then takes up to {@code permits} from it. */
+  long take(long permits, double permitsPerSecond, long nowMillis) {
+    long elapsedMillis = Math.max(0, nowMillis - refilledMillis);
+    tokens = Math.min(capacity(permitsPerSecond), tokens + elapsedMillis * permitsPerSecond / 1000);
+    refilledMillis = nowMillis;
+    long granted = Math.min(permits, (long) tokens);
+    tokens -= granted;
+    return granted;
+  }
+
+  private static double capacity(double permitsPerSecond) {
+    return Math.max(1, permitsPerSecond);
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+import java.io.IOException;
+
+/**
+ * Shared storage for token buckets, from which every client of a cluster leases its permits.
+ *
+ * <p>Each bucket refills at {@code permitsPerSecond} and holds at most one second's worth of
+ * permits. All clients sharing a bucket should pass the same rate.
+ */
+public interface TokenStore {
+
+  /**
+   * Takes up to {@code permits} permits from {@code bucket}, without waiting.
+   *
+   * @param bucket The name of the bucket, typically identifying the API key.
+   * @param permits The number of permits wanted.
+   * @param permitsPerSecond The rate at which the bucket refills.
+   * @return The number of permits granted, between zero and {@code permits}.
+   * @throws IOException If the store could not be reached.
+   */
+  long lease(String bucket, long permits, double permitsPerSecond) throws IOException;
+}
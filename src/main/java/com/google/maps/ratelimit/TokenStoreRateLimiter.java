@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SharedRateLimiter} that leases permits from a {@link TokenStore} in blocks, so that the
+ * store is consulted once per block rather than once per request.
+ *
+ * <p>Unused permits lapse a second after they were leased, so a client that goes quiet can't save
+ * them up and later burst past the shared rate. To waste as little of the cluster's quota as
+ * possible that way, blocks are sized to the client's demand: a block that is used up before it
+ * lapses makes the next one twice as large, up to the configured block size, and a block that
+ * lapses with permits left over makes the next one as large as the part that was used. If the
+ * store can't be reached, requests wait and the lease is retried rather than risk exceeding the
+ * quota.
+ */
+public class TokenStoreRateLimiter implements SharedRateLimiter {
+  private static final Logger LOG = LoggerFactory.getLogger(TokenStoreRateLimiter.class.getName());
+  private static final long LEASE_LIFETIME_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final TokenStore store;
+  private final String bucket;
+  private final double permitsPerSecond;
+  private final int blockSize;
+
+  // Guards the lease, but is never held while waiting for the store to refill.
+  private final ReentrantLock lock = new ReentrantLock();
+  private long leased;
+  private long granted;
+  private long leaseExpiryNanos;
+  private long leaseSize = 1;
+
+  /**
+   * @param store The store shared by the cluster.
+   * @param bucket The bucket to lease from, typically identifying the API key.
+   * @param permitsPerSecond The queries per second allowed across the whole cluster.
+   * @param blockSize The most permits to lease at a time. Larger blocks mean fewer round trips to
+   *     the store, smaller ones share the rate more evenly between clients.
+   */
+  public TokenStoreRateLimiter(
+      TokenStore store, String bucket, double permitsPerSecond, int blockSize) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive");
+    }
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be positive");
+    }
+    this.store = store;
+    this.bucket = bucket;
+    this.permitsPerSecond = permitsPerSecond;
+    this.blockSize = blockSize;
+  }
+
+  @Override
+  public void acquire() throws InterruptedException {
+    while (true) {
+      lock.lockInterruptibly();
+      try {
+        if (tryAcquire()) {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      // The cluster has used its permits for now; wait for about one to be refilled.
+      TimeUnit.NANOSECONDS.sleep((long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    }
+  }
+
+  /** Takes a permit from the current lease, or leases a new block. Called holding the lock. */
+  private boolean tryAcquire() {
+    long now = System.nanoTime();
+    if (leased > 0 && now - leaseExpiryNanos < 0) {
+      leased--;
+      return true;
+    }
+    if (granted > 0) {
+      // Size the next block to how much of the last one was wanted.
+      long used = granted - leased;
+      leaseSize = leased == 0 ? Math.min(blockSize, leaseSize * 2) : Math.max(1, used);
+      granted = 0;
+      leased = 0;
+    }
+    long lease;
+    try {
+      lease = store.lease(bucket, leaseSize, permitsPerSecond);
+    } catch (IOException e) {
+      LOG.warn("Unable to lease permits from the token store", e);
+      return false;
+    }
+    if (lease <= 0) {
+      return false;
+    }
+    granted = lease;
+    leased = lease - 1;
+    leaseExpiryNanos = now + LEASE_LIFETIME_NANOS;
+    return true;
+  }
+}
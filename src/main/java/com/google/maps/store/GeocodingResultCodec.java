@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.store;
+
+import com.google.maps.model.AddressComponent;
+import com.google.maps.model.AddressComponentType;
+import com.google.maps.model.AddressType;
+import com.google.maps.model.Bounds;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.Geometry;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.LocationType;
+import com.google.maps.model.PlusCode;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A compact binary encoding of {@link GeocodingResult} arrays. Enum values are stored by name, so
+ * values added to the enums later don't change the meaning of stored data; names that are no longer
+ * known decode as {@code UNKNOWN}.
+ */
+final class GeocodingResultCodec {
+
+  private GeocodingResultCodec() {}
+
+  static void write(DataOutput out, GeocodingResult[] results) throws IOException {
+    out.writeInt(results.length);
+    for (GeocodingResult result : results) {
+      writeAddressComponents(out, result.addressComponents);
+      writeString(out, result.formattedAddress);
+      writeStrings(out, result.postcodeLocalities);
+      writeGeometry(out, result.geometry);
+      writeAddressTypes(out, result.types);
+      out.writeBoolean(result.partialMatch);
+      writeString(out, result.placeId);
+      out.writeBoolean(result.plusCode != null);
+      if (result.plusCode != null) {
+        writeString(out, result.plusCode.globalCode);
+        writeString(out, result.plusCode.compoundCode);
+      }
+    }
+  }
+
+  static GeocodingResult[] read(DataInput in) throws IOException {
+    GeocodingResult[] results = new GeocodingResult[in.readInt()];
+    for (int i = 0; i < results.length; i++) {
+      GeocodingResult result = new GeocodingResult();
+      result.addressComponents = readAddressComponents(in);
+      result.formattedAddress = readString(in);
+      result.postcodeLocalities = readStrings(in);
+      result.geometry = readGeometry(in);
+      result.types = readAddressTypes(in);
+      result.partialMatch = in.readBoolean();
+      result.placeId = readString(in);
+      if (in.readBoolean()) {
+        result.plusCode = new PlusCode();
+        result.plusCode.globalCode = readString(in);
+        result.plusCode.compoundCode = readString(in);
+      }
+      results[i] = result;
+    }
+    return results;
+  }
+
+  private static void writeAddressComponents(DataOutput out, AddressComponent[] components)
+      throws IOException {
+    out.writeInt(components == null ? -1 : components.length);
+    if (components == null) {
+      return;
+    }
+    for (AddressComponent component : components) {
+      writeString(out, component.longName);
+      writeString(out, component.shortName);
+      out.writeInt(component.types == null ? -1 : component.types.length);
+      if (component.types != null) {
+        for (AddressComponentType type : component.types) {
+          writeString(out, type == null ? null : type.name());
+        }
+      }
+    }
+  }
+
+  private static AddressComponent[] readAddressComponents(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    AddressComponent[] components = new AddressComponent[length];
+    for (int i = 0; i < length; i++) {
+      AddressComponent component = new AddressComponent();
+      component.longName = readString(in);
+      component.shortName = readString(in);
+      int types = in.readInt();
+      if (types >= 0) {
+        component.types = new AddressComponentType[types];
+        for (int j = 0; j < types; j++) {
+          component.types[j] =
+              readEnum(in, AddressComponentType.class, AddressComponentType.UNKNOWN);
+        }
+      }
+      components[i] = component;
+    }
+    return components;
+  }
+
+  private static void writeAddressTypes(DataOutput out, AddressType[] types) throws IOException {
+    out.writeInt(types == null ? -1 : types.length);
+    if (types != null) {
+      for (AddressType type : types) {
+        writeString(out, type == null ? null : type.name());
+      }
+    }
+  }
+
+  private static AddressType[] readAddressTypes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    AddressType[] types = new AddressType[length];
+    for (int i = 0; i < length; i++) {
+      types[i] = readEnum(in, AddressType.class, AddressType.UNKNOWN);
+    }
+    return types;
+  }
+
+  private static void writeGeometry(DataOutput out, Geometry geometry) throws IOException {
+    out.writeBoolean(geometry != null);
+    if (geometry == null) {
+      return;
+    }
+    writeBounds(out, geometry.bounds);
+    writeLatLng(out, geometry.location);
+    writeString(out, geometry.locationType == null ? null : geometry.locationType.name());
+    writeBounds(out, geometry.viewport);
+  }
+
+  private static Geometry readGeometry(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    Geometry geometry = new Geometry();
+    geometry.bounds = readBounds(in);
+    geometry.location = readLatLng(in);
+    geometry.locationType = readEnum(in, LocationType.class, LocationType.UNKNOWN);
+    geometry.viewport = readBounds(in);
+    return geometry;
+  }
+
+  private static void writeBounds(DataOutput out, Bounds bounds) throws IOException {
+    out.writeBoolean(bounds != null);
+    if (bounds != null) {
+      writeLatLng(out, bounds.northeast);
+      writeLatLng(out, bounds.southwest);
+    }
+  }
+
+  private static Bounds readBounds(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    Bounds bounds = new Bounds();
+    bounds.northeast = readLatLng(in);
+    bounds.southwest = readLatLng(in);
+    return bounds;
+  }
+
+  private static void writeLatLng(DataOutput out, LatLng latLng) throws IOException {
+    out.writeBoolean(latLng != null);
+    if (latLng != null) {
+      out.writeDouble(latLng.lat);
+      out.writeDouble(latLng.lng);
+    }
+  }
+
+  private static LatLng readLatLng(DataInput in) throws IOException {
+    return in.readBoolean() ? new LatLng(in.readDouble(), in.readDouble()) : null;
+  }
+
+  private static void writeStrings(DataOutput out, String[] strings) throws IOException {
+    out.writeInt(strings == null ? -1 : strings.length);
+    if (strings != null) {
+      for (String string : strings) {
+        writeString(out, string);
+      }
+    }
+  }
+
+  private static String[] readStrings(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    String[] strings = new String[length];
+    for (int i = 0; i < length; i++) {
+      strings[i] = readString(in);
+    }
+    return strings;
+  }
+
+  private static void writeString(DataOutput out, String string) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type, E unknown)
+      throws IOException {
+    String name = readString(in);
+    if (name == null) {
+      return null;
+    }
+    try {
+      return Enum.valueOf(type, name);
+    } catch (IllegalArgumentException e) {
+      return unknown;
+    }
+  }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.store;
+
+import com.google.maps.model.GeocodingResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A store of geocoding results on disk, which outlives the process so that a restarted client
+ * doesn't have to geocode everything again. Install it with {@link
+ * com.google.maps.GeoApiContext.Builder#geocodingResultStore(GeocodingResultStore)}, and geocoding
+ * requests are answered from it before being sent to the API.
+ *
+ * <p>Results are appended to a log file in a compact binary encoding, and found through a hash
+ * index in a second, memory-mapped file. Opening the store only maps the index; results are read
+ * from the log one at a time as they are looked up. A result stored again for the same request
+ * replaces the earlier one, whose space in the log is not reclaimed.
+ *
+ * <p>The store can only be opened by one process at a time. Results older than the store's maximum
+ * age are ignored; the Google Maps Platform terms allow geocoding results to be cached for at most
+ * 30 days, which is the default.
+ */
+public class GeocodingResultStore implements Closeable {
+  private static final int LOG_MAGIC = 0x47524c47; // "GRLG"
+  private static final int INDEX_MAGIC = 0x47524958; // "GRIX"
+  private static final int VERSION = 1;
+  private static final int LOG_HEADER_BYTES = 8;
+  private static final int INDEX_HEADER_BYTES = 32;
+  private static final int SLOT_BYTES = 16;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  private final File indexFile;
+  private final long maxAgeMillis;
+  private final FileChannel log;
+  private final FileLock lock;
+  private MappedByteBuffer index;
+  private int capacity;
+  private int size;
+  private long logLength;
+
+  /**
+   * Opens the store in {@code directory}, creating it if there is none yet.
+   *
+   * @param directory The directory to keep the store's files in. It is created if necessary.
+   * @throws IOException If the store can't be opened, or is open in another process.
+   */
+  public GeocodingResultStore(File directory) throws IOException {
+    this(directory, DEFAULT_MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens the store in {@code directory}, creating it if there is none yet.
+   *
+   * @param directory The directory to keep the store's files in. It is created if necessary.
+   * @param maxAge How long stored results are used for.
+   * @param unit The unit of {@code maxAge}.
+   * @throws IOException If the store can't be opened, or is open in another process.
+   */
+  public GeocodingResultStore(File directory, long maxAge, TimeUnit unit) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Unable to create geocoding store directory " + directory);
+    }
+    this.indexFile = new File(directory, "geocoding.idx");
+    this.maxAgeMillis = unit.toMillis(maxAge);
+    this.log =
+        FileChannel.open(
+            new File(directory, "geocoding.log").toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    try {
+      this.lock = log.tryLock();
+      if (lock == null) {
+        throw new IOException("Geocoding store " + directory + " is open in another process");
+      }
+      openLog();
+      if (!openIndex()) {
+        rebuildIndex();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Looks up the results stored for a request.
+   *
+   * @param key The canonical form of the request.
+   * @return The stored results, or null if there are none or they are too old.
+   * @throws IOException If the store can't be read.
+   */
+  public synchronized GeocodingResult[] get(String key) throws IOException {
+    checkOpen();
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    long hash = hash(keyBytes);
+    for (int slot = slotOf(hash); ; slot = (slot + 1) & (capacity - 1)) {
+      long slotHash = index.getLong(slotPosition(slot));
+      if (slotHash == 0) {
+        return null;
+      }
+      if (slotHash != hash) {
+        continue;
+      }
+      DataInputStream record = readRecord(index.getLong(slotPosition(slot) + 8));
+      if (!keyMatches(record, keyBytes)) {
+        continue;
+      }
+      long storedAtMillis = record.readLong();
+      if (System.currentTimeMillis() - storedAtMillis > maxAgeMillis) {
+        return null;
+      }
+      return GeocodingResultCodec.read(record);
+    }
+  }
+
+  /**
+   * Stores the results of a request, replacing any stored before.
+   *
+   * @param key The canonical form of the request.
+   * @param results The results of the request.
+   * @throws IOException If the store can't be written.
+   */
+  public synchronized void put(String key, GeocodingResult[] results) throws IOException {
+    checkOpen();
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0); // The record length, filled in below.
+    out.writeInt(keyBytes.length);
+    out.write(keyBytes);
+    out.writeLong(System.currentTimeMillis());
+    GeocodingResultCodec.write(out, results);
+    ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+    record.putInt(0, record.remaining() - 4);
+
+    long offset = logLength;
+    writeFully(record, offset);
+    logLength += record.capacity();
+
+    insert(keyBytes, offset);
+    writeIndexHeader();
+  }
+
+  /** @return The number of requests with stored results, including any that are too old. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /** Flushes the store to disk and closes it. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!log.isOpen()) {
+      return;
+    }
+    try {
+      log.force(false);
+      index.force();
+      lock.release();
+    } finally {
+      log.close();
+    }
+  }
+
+  private void openLog() throws IOException {
+    if (log.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+      header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+      writeFully(header, 0);
+    }
+    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+    readFully(header, 0);
+    if (header.getInt(0) != LOG_MAGIC || header.getInt(4) != VERSION) {
+      throw new IOException("Not a geocoding store log: " + indexFile.getParent());
+    }
+  }
+
+  /** @return Whether the index was usable as it was found. */
+  private boolean openIndex() throws IOException {
+    if (!indexFile.isFile() || indexFile.length() < INDEX_HEADER_BYTES) {
+      return false;
+    }
+    index = map(indexFile, indexFile.length());
+    capacity = index.getInt(8);
+    size = index.getInt(12);
+    logLength = index.getLong(16);
+    return index.getInt(0) == INDEX_MAGIC
+        && index.getInt(4) == VERSION
+        && Integer.bitCount(capacity) == 1
+        && indexFile.length() == INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES
+        // The log may be missing records the index refers to if the machine crashed.
+        && logLength >= LOG_HEADER_BYTES
+        && logLength <= log.size();
+  }
+
+  /** Recreates the index by reading the whole log, for when it is missing or damaged. */
+  private void rebuildIndex() throws IOException {
+    Files.deleteIfExists(indexFile.toPath());
+    // Until it is complete, the new index claims no log records, so it is rebuilt again if the
+    // process dies before then.
+    index = createIndex(indexFile, INITIAL_CAPACITY);
+    capacity = INITIAL_CAPACITY;
+    size = 0;
+    logLength = 0;
+    long end = log.size();
+    long offset = LOG_HEADER_BYTES;
+    ByteBuffer length = ByteBuffer.allocate(4);
+    while (offset + 4 <= end) {
+      length.clear();
+      readFully(length, offset);
+      long next = offset + 4 + length.getInt(0);
+      if (length.getInt(0) < 16 || next > end) {
+        break; // A record cut short by a crash.
+      }
+      DataInputStream record = readRecord(offset);
+      byte[] keyBytes = new byte[record.readInt()];
+      record.readFully(keyBytes);
+      insert(keyBytes, offset);
+      offset = next;
+    }
+    logLength = offset;
+    log.truncate(logLength);
+    writeIndexHeader();
+    index.force();
+  }
+
+  /** Points the index entry for a key at the record at {@code offset}, adding it if necessary. */
+  private void insert(byte[] keyBytes, long offset) throws IOException {
+    if (size + 1 > capacity / 4 * 3) {
+      resizeIndex(capacity * 2);
+    }
+    long hash = hash(keyBytes);
+    int slot = slotOf(hash);
+    while (true) {
+      long slotHash = index.getLong(slotPosition(slot));
+      if (slotHash == 0) {
+        index.putLong(slotPosition(slot), hash);
+        size++;
+        break;
+      }
+      if (slotHash == hash
+          && keyMatches(readRecord(index.getLong(slotPosition(slot) + 8)), keyBytes)) {
+        break;
+      }
+      slot = (slot + 1) & (capacity - 1);
+    }
+    index.putLong(slotPosition(slot) + 8, offset);
+  }
+
+  /** Moves the index to a larger file, which replaces the old one once it is complete. */
+  private void resizeIndex(int newCapacity) throws IOException {
+    File resized = new File(indexFile.getPath() + ".tmp");
+    Files.deleteIfExists(resized.toPath());
+    index = copyIndex(index, capacity, resized, newCapacity);
+    capacity = newCapacity;
+    writeIndexHeader();
+    index.force();
+    Files.move(resized.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Rehashes the slots of {@code from} into a new index file with {@code newCapacity} slots. */
+  private static MappedByteBuffer copyIndex(
+      MappedByteBuffer from, int fromCapacity, File file, int newCapacity) throws IOException {
+    MappedByteBuffer to = createIndex(file, newCapacity);
+    for (int slot = 0; slot < fromCapacity; slot++) {
+      long hash = from.getLong(slotPosition(slot));
+      if (hash == 0) {
+        continue;
+      }
+      int target = (int) (hash & (newCapacity - 1));
+      while (to.getLong(slotPosition(target)) != 0) {
+        target = (target + 1) & (newCapacity - 1);
+      }
+      to.putLong(slotPosition(target), hash);
+      to.putLong(slotPosition(target) + 8, from.getLong(slotPosition(slot) + 8));
+    }
+    return to;
+  }
+
+  private static MappedByteBuffer createIndex(File file, int capacity) throws IOException {
+    MappedByteBuffer index = map(file, INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES);
+    index.putInt(0, INDEX_MAGIC);
+    index.putInt(4, VERSION);
+    index.putInt(8, capacity);
+    return index;
+  }
+
+  private static MappedByteBuffer map(File file, long length) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+  }
+
+  private void writeIndexHeader() {
+    index.putInt(8, capacity);
+    index.putInt(12, size);
+    index.putLong(16, logLength);
+  }
+
+  private DataInputStream readRecord(long offset) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    readFully(length, offset);
+    ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+    readFully(record, offset + 4);
+    return new DataInputStream(new ByteArrayInputStream(record.array()));
+  }
+
+  /** Reads the key at the start of {@code record}, leaving the stream positioned after it. */
+  private static boolean keyMatches(DataInputStream record, byte[] keyBytes) throws IOException {
+    if (record.readInt() != keyBytes.length) {
+      return false;
+    }
+    byte[] recordKey = new byte[keyBytes.length];
+    record.readFully(recordKey);
+    return Arrays.equals(recordKey, keyBytes);
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (log.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Geocoding store log ends unexpectedly");
+      }
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      log.write(buffer, position + buffer.position());
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (!log.isOpen()) {
+      throw new IOException("Geocoding store is closed");
+    }
+  }
+
+  private int slotOf(long hash) {
+    return (int) (hash & (capacity - 1));
+  }
+
+  private static int slotPosition(int slot) {
+    return INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+  }
+
+  /** @return The 64-bit FNV-1a hash of {@code bytes}, which is never 0, the mark of empty slots. */
+  private static long hash(byte[] bytes) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash == 0 ? 1 : hash;
+  }
+}
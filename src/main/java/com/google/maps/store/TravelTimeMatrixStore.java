@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.store;
+
+import com.google.maps.model.DistanceMatrix;
+import com.google.maps.model.DistanceMatrixElement;
+import com.google.maps.model.DistanceMatrixElementStatus;
+import com.google.maps.model.DistanceMatrixRow;
+import com.google.maps.model.Duration;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Travel times and distances between every origin and destination of a large matrix, kept in a
+ * memory-mapped file rather than as {@link DistanceMatrixElement} objects on the heap. Fill it with
+ * {@link com.google.maps.DistanceMatrixPlanner#into(TravelTimeMatrixStore)}; since the file
+ * outlives the process, a fill that was interrupted can be started again and only fetches what is
+ * missing.
+ *
+ * <p>The file holds one column per value, each an array of {@code int}s indexed by {@code origin *
+ * destinationCount + destination}: durations and durations in traffic in seconds, distances in
+ * meters, and a status byte per element that is 0 until the element has been fetched. Values that
+ * a response did not include, such as durations of elements that have no route, are -1. Lookups
+ * read single values from the mapped file, so the operating system pages in only the parts of the
+ * matrix that are used.
+ *
+ * <p>An element reads as stored as soon as {@link #put} returns, but its status only reaches the
+ * file with the next {@link #flush()}, once its values are on the disk. Elements stored since the
+ * last flush are fetched again by a fill that is started again after the process or the machine
+ * stopped, but no element is ever read back without its values.
+ *
+ * <p>A store can only be opened by one process at a time. It can be written by several threads at
+ * once, as long as they write different elements.
+ */
+public class TravelTimeMatrixStore implements Closeable {
+  private static final int MAGIC = 0x54544d58; // "TTMX"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 32;
+  private static final int MISSING = -1;
+  private static final byte NOT_FETCHED = 0;
+  private static final byte UNKNOWN_STATUS = 0x7f;
+  // put() flushes once this many statuses are waiting, which bounds the memory they take.
+  private static final int MAX_PENDING_STATUSES = 1 << 16;
+  // Status bytes are 1 + the index of the status here, so that they don't depend on enum order.
+  private static final DistanceMatrixElementStatus[] STATUSES = {
+    DistanceMatrixElementStatus.OK,
+    DistanceMatrixElementStatus.NOT_FOUND,
+    DistanceMatrixElementStatus.ZERO_RESULTS
+  };
+
+  private final int originCount;
+  private final int destinationCount;
+  private final FileChannel channel;
+  private final FileLock lock;
+  private final MappedByteBuffer durationsBuffer;
+  private final MappedByteBuffer distancesBuffer;
+  private final MappedByteBuffer trafficBuffer;
+  private final MappedByteBuffer statuses;
+  private final IntBuffer durations;
+  private final IntBuffer distances;
+  private final IntBuffer durationsInTraffic;
+  // Statuses of elements stored since the last flush, by index. Guarded by this.
+  private final Map<Integer, Byte> pendingStatuses = new HashMap<>();
+
+  /**
+   * Opens the store in {@code file}, creating it if there is none yet.
+   *
+   * @param file The file to keep the matrix in.
+   * @param originCount The number of origins of the matrix.
+   * @param destinationCount The number of destinations of the matrix.
+   * @throws IOException If the store can't be opened, is open in another process, or holds a matrix
+   *     of another size.
+   */
+  public TravelTimeMatrixStore(File file, int originCount, int destinationCount)
+      throws IOException {
+    if (originCount < 0 || destinationCount < 0) {
+      throw new IllegalArgumentException("Counts must not be negative");
+    }
+    long elements = (long) originCount * destinationCount;
+    if (elements * 4 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "A matrix of " + elements + " elements is too large for one store");
+    }
+    this.originCount = originCount;
+    this.destinationCount = destinationCount;
+    this.channel =
+        FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    try {
+      this.lock = channel.tryLock();
+      if (lock == null) {
+        throw new IOException("Travel time store " + file + " is open in another process");
+      }
+      openHeader(file);
+      int columnBytes = (int) elements * 4;
+      long position = HEADER_BYTES;
+      durationsBuffer = map(position, columnBytes);
+      distancesBuffer = map(position += columnBytes, columnBytes);
+      trafficBuffer = map(position += columnBytes, columnBytes);
+      statuses = map(position + columnBytes, (int) elements);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    this.durations = durationsBuffer.asIntBuffer();
+    this.distances = distancesBuffer.asIntBuffer();
+    this.durationsInTraffic = trafficBuffer.asIntBuffer();
+  }
+
+  /** @return The number of origins of the matrix. */
+  public int getOriginCount() {
+    return originCount;
+  }
+
+  /** @return The number of destinations of the matrix. */
+  public int getDestinationCount() {
+    return destinationCount;
+  }
+
+  /**
+   * Stores part of the matrix. Its elements are marked fetched in the file by the next {@link
+   * #flush()}, which this does itself once many elements are waiting.
+   *
+   * @param originOffset The index in the whole matrix of the first origin of {@code part}.
+   * @param destinationOffset The index in the whole matrix of the first destination of {@code
+   *     part}.
+   * @param part The result of a request for some of the matrix's origins and destinations.
+   * @throws IOException If the store is closed.
+   * @see #flush()
+   */
+  public void put(int originOffset, int destinationOffset, DistanceMatrix part)
+      throws IOException {
+    checkOpen();
+    for (int i = 0; i < part.rows.length; i++) {
+      DistanceMatrixRow row = part.rows[i];
+      if (row.elements.length > 0) {
+        checkIndex(originOffset + i, destinationOffset + row.elements.length - 1);
+      }
+      for (int j = 0; j < row.elements.length; j++) {
+        DistanceMatrixElement element = row.elements[j];
+        int index = index(originOffset + i, destinationOffset + j);
+        durations.put(index, seconds(element.duration));
+        distances.put(index, element.distance == null ? MISSING : clamp(element.distance.inMeters));
+        durationsInTraffic.put(index, seconds(element.durationInTraffic));
+      }
+    }
+    boolean due;
+    synchronized (this) {
+      for (int i = 0; i < part.rows.length; i++) {
+        DistanceMatrixElement[] elements = part.rows[i].elements;
+        for (int j = 0; j < elements.length; j++) {
+          pendingStatuses.put(
+              index(originOffset + i, destinationOffset + j), code(elements[j].status));
+        }
+      }
+      due = pendingStatuses.size() >= MAX_PENDING_STATUSES;
+    }
+    if (due) {
+      flush();
+    }
+  }
+
+  /**
+   * @return Whether every element of the block of origins and destinations has been stored, such as
+   *     by an earlier run.
+   */
+  public boolean isFilled(
+      int originOffset, int originCount, int destinationOffset, int destinationCount) {
+    if (originCount == 0 || destinationCount == 0) {
+      return true;
+    }
+    checkIndex(originOffset + originCount - 1, destinationOffset + destinationCount - 1);
+    for (int o = originOffset; o < originOffset + originCount; o++) {
+      int rowStart = index(o, destinationOffset);
+      for (int i = rowStart; i < rowStart + destinationCount; i++) {
+        if (status(i) == NOT_FETCHED) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** @return Whether the element for {@code origin} and {@code destination} has been stored. */
+  public boolean isFetched(int origin, int destination) {
+    return status(checkedIndex(origin, destination)) != NOT_FETCHED;
+  }
+
+  /**
+   * @return The status of the element, or null if it has not been stored or its status was not
+   *     recognized.
+   */
+  public DistanceMatrixElementStatus getStatus(int origin, int destination) {
+    int code = status(checkedIndex(origin, destination));
+    return code >= 1 && code <= STATUSES.length ? STATUSES[code - 1] : null;
+  }
+
+  /** @return The duration of the element in seconds, or -1 if it has none. */
+  public int getDurationSeconds(int origin, int destination) {
+    return durations.get(checkedIndex(origin, destination));
+  }
+
+  /** @return The distance of the element in meters, or -1 if it has none. */
+  public int getDistanceMeters(int origin, int destination) {
+    return distances.get(checkedIndex(origin, destination));
+  }
+
+  /** @return The duration of the element in traffic in seconds, or -1 if it has none. */
+  public int getDurationInTrafficSeconds(int origin, int destination) {
+    return durationsInTraffic.get(checkedIndex(origin, destination));
+  }
+
+  /**
+   * Writes everything stored so far to the disk, so that it survives the process or the machine
+   * stopping. Statuses are only written once the values are on the disk, so that no element is
+   * marked fetched without them.
+   */
+  public synchronized void flush() {
+    durationsBuffer.force();
+    distancesBuffer.force();
+    trafficBuffer.force();
+    for (Map.Entry<Integer, Byte> pending : pendingStatuses.entrySet()) {
+      statuses.put(pending.getKey(), pending.getValue());
+    }
+    pendingStatuses.clear();
+    statuses.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!channel.isOpen()) {
+      return;
+    }
+    try {
+      flush();
+      lock.release();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void openHeader(File file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    if (channel.size() == 0) {
+      header.putInt(MAGIC).putInt(VERSION).putInt(originCount).putInt(destinationCount);
+      header.rewind();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      return;
+    }
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {}
+    header.flip();
+    if (header.remaining() < HEADER_BYTES
+        || header.getInt(0) != MAGIC
+        || header.getInt(4) != VERSION) {
+      throw new IOException(file + " is not a travel time store");
+    }
+    if (header.getInt(8) != originCount || header.getInt(12) != destinationCount) {
+      throw new IOException(
+          String.format(
+              "%s holds a %d x %d matrix, not %d x %d",
+              file, header.getInt(8), header.getInt(12), originCount, destinationCount));
+    }
+  }
+
+  /** @return The status byte of the element at {@code index}, whether flushed yet or not. */
+  private byte status(int index) {
+    byte code = statuses.get(index);
+    if (code != NOT_FETCHED) {
+      return code;
+    }
+    synchronized (this) {
+      Byte pending = pendingStatuses.get(index);
+      return pending != null ? pending : statuses.get(index);
+    }
+  }
+
+  private MappedByteBuffer map(long position, int size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+  }
+
+  private void checkOpen() throws IOException {
+    if (!channel.isOpen()) {
+      throw new IOException("Travel time store is closed");
+    }
+  }
+
+  private int index(int origin, int destination) {
+    return origin * destinationCount + destination;
+  }
+
+  private void checkIndex(int origin, int destination) {
+    if (origin < 0 || origin >= originCount || destination < 0 || destination >= destinationCount) {
+      throw new IndexOutOfBoundsException(
+          String.format(
+              "(%d, %d) is outside the %d x %d matrix",
+              origin, destination, originCount, destinationCount));
+    }
+  }
+
+  private int checkedIndex(int origin, int destination) {
+    checkIndex(origin, destination);
+    return index(origin, destination);
+  }
+
+  private static int seconds(Duration duration) {
+    return duration == null ? MISSING : clamp(duration.inSeconds);
+  }
+
+  private static int clamp(long value) {
+    return (int) Math.min(Math.max(value, 0), Integer.MAX_VALUE);
+  }
+
+  private static byte code(DistanceMatrixElementStatus status) {
+    for (int i = 0; i < STATUSES.length; i++) {
+      if (STATUSES[i] == status) {
+        return (byte) (i + 1);
+      }
+    }
+    return UNKNOWN_STATUS;
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.ExceptionsAllowedToRetry;
+import com.google.maps.metrics.NoOpRequestMetricsReporter;
+import com.google.maps.metrics.RequestMetrics;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link CoalescingRequestHandler}. */
+@Category(SmallTests.class)
+public class CoalescingRequestHandlerTest {
+
+  /** A call whose outcome is delivered by the test. */
+  private static class ManualPendingResult implements PendingResult<Object> {
+    private Callback<Object> callback;
+    private boolean cancelled;
+    private Runnable duringAwait;
+
+    @Override
+    public void setCallback(Callback<Object> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public Object await() throws InterruptedException {
+      if (duringAwait != null) {
+        duringAwait.run();
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      return "sync";
+    }
+
+    @Override
+    public Object awaitIgnoreError() {
+      return "sync";
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  /** Records the results a caller receives. */
+  private static class RecordingCallback implements PendingResult.Callback<Object> {
+    private Object result;
+    private Throwable failure;
+
+    @Override
+    public void onResult(Object result) {
+      this.result = result;
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      this.failure = e;
+    }
+  }
+
+  /** Records how a request's metrics were ended. */
+  private static class RecordingMetrics implements RequestMetrics {
+    private int ended;
+    private Exception exception;
+
+    @Override
+    public void startNetwork() {}
+
+    @Override
+    public void endNetwork() {}
+
+    @Override
+    public void endRequest(Exception exception, int httpStatusCode, long retryCount) {
+      this.ended++;
+      this.exception = exception;
+    }
+  }
+
+  /** Hands out a new {@link ManualPendingResult} for every request. */
+  private static class ManualRequestHandler implements GeoApiContext.RequestHandler {
+    private final List<ManualPendingResult> results = new ArrayList<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+        String hostName,
+        String url,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics) {
+      ManualPendingResult result = new ManualPendingResult();
+      results.add(result);
+      return (PendingResult<T>) result;
+    }
+
+    @Override
+    public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+        String hostName,
+        String url,
+        String payload,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics) {
+      return handle(
+          hostName,
+          url,
+          userAgent,
+          experienceIdHeaderValue,
+          clazz,
+          fieldNamingPolicy,
+          errorTimeout,
+          maxRetries,
+          exceptionsAllowedToRetry,
+          metrics);
+    }
+
+    @Override
+    public void shutdown() {}
+  }
+
+  private final ManualRequestHandler delegate = new ManualRequestHandler();
+  private final CoalescingRequestHandler handler = new CoalescingRequestHandler(delegate);
+
+  private PendingResult<Object> get(String url) {
+    return get(url, new NoOpRequestMetricsReporter().newRequest(url));
+  }
+
+  private PendingResult<Object> get(String url, RequestMetrics metrics) {
+    return handler.handle(
+        "https://maps.googleapis.com",
+        url,
+        "user-agent",
+        null,
+        null,
+        FieldNamingPolicy.IDENTITY,
+        0,
+        0,
+        new ExceptionsAllowedToRetry(),
+        metrics);
+  }
+
+  @Test
+  public void testIdenticalRequestsShareOneCall() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    get("/maps/api/geocode/json?key=AIza1&address=Sydney&region=au").setCallback(first);
+    get("/maps/api/geocode/json?key=AIza2&region=au&address=Sydney").setCallback(second);
+    assertEquals(1, handler.getInFlightCount());
+
+    // Only the first request's call was made.
+    assertTrue(delegate.results.get(0).callback != null);
+    assertNull(delegate.results.get(1).callback);
+
+    Object result = new Object();
+    delegate.results.get(0).callback.onResult(result);
+    assertSame(result, first.result);
+    assertSame(result, second.result);
+    assertEquals(0, handler.getInFlightCount());
+  }
+
+  @Test
+  public void testRequestAfterCompletionMakesNewCall() {
+    RecordingCallback first = new RecordingCallback();
+    get("/maps/api/geocode/json?address=Sydney").setCallback(first);
+    delegate.results.get(0).callback.onResult("first");
+
+    RecordingCallback second = new RecordingCallback();
+    get("/maps/api/geocode/json?address=Sydney").setCallback(second);
+    assertTrue(delegate.results.get(1).callback != null);
+    delegate.results.get(1).callback.onResult("second");
+    assertEquals("first", first.result);
+    assertEquals("second", second.result);
+  }
+
+  @Test
+  public void testDifferentRequestsAreNotMerged() {
+    get("/maps/api/geocode/json?address=Sydney").setCallback(new RecordingCallback());
+    get("/maps/api/geocode/json?address=Melbourne").setCallback(new RecordingCallback());
+    assertEquals(2, handler.getInFlightCount());
+    assertTrue(delegate.results.get(1).callback != null);
+  }
+
+  @Test
+  public void testFailureIsShared() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    get("/maps/api/geocode/json?address=Sydney").setCallback(first);
+    get("/maps/api/geocode/json?address=Sydney").setCallback(second);
+
+    IOException failure = new IOException("failed");
+    delegate.results.get(0).callback.onFailure(failure);
+    assertSame(failure, first.failure);
+    assertSame(failure, second.failure);
+  }
+
+  @Test
+  public void testCallIsCancelledOnceNoCallerIsWaiting() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    PendingResult<Object> firstRequest = get("/maps/api/geocode/json?address=Sydney");
+    PendingResult<Object> secondRequest = get("/maps/api/geocode/json?address=Sydney");
+    firstRequest.setCallback(first);
+    secondRequest.setCallback(second);
+
+    firstRequest.cancel();
+    assertTrue(first.failure instanceof IOException);
+    assertFalse(delegate.results.get(0).cancelled);
+
+    secondRequest.cancel();
+    assertTrue(delegate.results.get(0).cancelled);
+    assertEquals(0, handler.getInFlightCount());
+
+    // A new request makes a new call rather than joining the cancelled one.
+    RecordingCallback third = new RecordingCallback();
+    get("/maps/api/geocode/json?address=Sydney").setCallback(third);
+    assertTrue(delegate.results.get(2).callback != null);
+  }
+
+  @Test
+  public void testAwaitMakesCallOnCallingThread() throws Exception {
+    assertEquals("sync", get("/maps/api/geocode/json?address=Sydney").await());
+    assertEquals(0, handler.getInFlightCount());
+  }
+
+  @Test
+  public void testMetricsOfJoiningRequestsEndWithTheSharedOutcome() {
+    RecordingMetrics firstMetrics = new RecordingMetrics();
+    RecordingMetrics secondMetrics = new RecordingMetrics();
+    RecordingMetrics thirdMetrics = new RecordingMetrics();
+    get("/maps/api/geocode/json?address=Sydney", firstMetrics).setCallback(new RecordingCallback());
+    get("/maps/api/geocode/json?address=Sydney", secondMetrics)
+        .setCallback(new RecordingCallback());
+    PendingResult<Object> third = get("/maps/api/geocode/json?address=Sydney", thirdMetrics);
+    third.setCallback(new RecordingCallback());
+    assertEquals(0, secondMetrics.ended);
+
+    third.cancel();
+    assertEquals(1, thirdMetrics.ended);
+    assertTrue(thirdMetrics.exception instanceof IOException);
+
+    delegate.results.get(0).callback.onResult("result");
+    assertEquals(1, secondMetrics.ended);
+    assertNull(secondMetrics.exception);
+    assertEquals(1, thirdMetrics.ended);
+    // The call that was made ends the metrics of the request that made it.
+    assertEquals(0, firstMetrics.ended);
+  }
+
+  @Test
+  public void testInterruptedAwaitHandsTheCallToWaitingRequests() throws Exception {
+    final RecordingCallback second = new RecordingCallback();
+    final PendingResult<Object> secondRequest = get("/maps/api/geocode/json?address=Sydney");
+    PendingResult<Object> first = get("/maps/api/geocode/json?address=Sydney");
+    delegate.results.get(1).duringAwait =
+        new Runnable() {
+          @Override
+          public void run() {
+            secondRequest.setCallback(second);
+            Thread.currentThread().interrupt();
+          }
+        };
+
+    try {
+      first.await();
+      fail("Expected the await to be interrupted");
+    } catch (InterruptedException expected) {
+      // The thread waiting for the call was interrupted.
+    }
+    assertTrue(delegate.results.get(1).cancelled);
+    assertNull(second.failure);
+    assertEquals(1, handler.getInFlightCount());
+
+    // The call is made again for the request still waiting.
+    delegate.results.get(0).callback.onResult("result");
+    assertEquals("result", second.result);
+    assertEquals(0, handler.getInFlightCount());
+  }
+}
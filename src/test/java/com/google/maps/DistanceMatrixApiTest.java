@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import com.google.maps.DirectionsApi.RouteRestriction;
+import com.google.maps.model.CompactDistanceMatrix;
 import com.google.maps.model.DistanceMatrix;
 import com.google.maps.model.DistanceMatrixElementStatus;
 import com.google.maps.model.LatLng;
@@ -108,6 +109,28 @@ public class DistanceMatrixApiTest {
     }
   }
 
+  @Test
+  public void testAwaitCompact() throws Exception {
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(getDistanceMatrixWithBasicStringParams)) {
+      CompactDistanceMatrix matrix =
+          DistanceMatrixApi.getDistanceMatrix(
+                  sc.context,
+                  new String[] {"Perth, Australia", "Sydney, Australia"},
+                  new String[] {"Uluru, Australia", "Kakadu, Australia"})
+              .awaitCompact();
+
+      assertEquals(8, matrix.originCount);
+      assertEquals(5, matrix.destinationCount);
+      assertEquals("Perth WA, Australia", matrix.originAddresses[0]);
+      assertEquals(DistanceMatrixElementStatus.OK, matrix.status(0, 0));
+      assertEquals(3669839, matrix.distance(0, 0));
+
+      sc.assertParamValue("Perth, Australia|Sydney, Australia", "origins");
+      sc.assertParamValue("Uluru, Australia|Kakadu, Australia", "destinations");
+    }
+  }
+
   @Test
   public void testNewRequestWithAllPossibleParams() throws Exception {
     try (LocalTestServerContext sc = new LocalTestServerContext("{\"status\" : \"OK\"}")) {
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.maps.errors.RequestDeniedException;
+import com.google.maps.metrics.RequestMetrics;
+import com.google.maps.metrics.RequestMetricsReporter;
+import com.google.maps.model.DistanceMatrix;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link DistanceMatrixPlanner}. */
+@Category(MediumTests.class)
+public class DistanceMatrixPlannerTest {
+  private final GeoApiContext context = new GeoApiContext.Builder().apiKey("AIzaFake").build();
+
+  /**
+   * Answers each tile as the Distance Matrix API would, with {@code 1000 * origin + destination}
+   * meters between the places numbered {@code origin} and {@code destination}.
+   */
+  private static class MatrixDispatcher extends Dispatcher {
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+      HttpUrl url = request.getRequestUrl();
+      String[] origins = url.queryParameter("origins").split("\\|");
+      String[] destinations = url.queryParameter("destinations").split("\\|");
+      StringBuilder json = new StringBuilder("{\"status\":\"OK\",\"origin_addresses\":[");
+      for (int o = 0; o < origins.length; o++) {
+        json.append(o > 0 ? "," : "").append("\"Origin of ").append(origins[o]).append('"');
+      }
+      json.append("],\"destination_addresses\":[");
+      for (int d = 0; d < destinations.length; d++) {
+        json.append(d > 0 ? "," : "").append("\"Destination of ").append(destinations[d]);
+        json.append('"');
+      }
+      json.append("],\"rows\":[");
+      for (int o = 0; o < origins.length; o++) {
+        json.append(o > 0 ? "," : "").append("{\"elements\":[");
+        for (int d = 0; d < destinations.length; d++) {
+          long meters = 1000L * number(origins[o]) + number(destinations[d]);
+          json.append(d > 0 ? "," : "")
+              .append("{\"status\":\"OK\",\"distance\":{\"value\":")
+              .append(meters)
+              .append(",\"text\":\"")
+              .append(meters)
+              .append(" m\"},\"duration\":{\"value\":60,\"text\":\"1 min\"}}");
+        }
+        json.append("]}");
+      }
+      json.append("]}");
+      return new MockResponse()
+          .setHeader("Content-Type", "application/json")
+          .setBody(json.toString());
+    }
+
+    private static int number(String place) {
+      return Integer.parseInt(place.substring("place ".length()));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    context.shutdown();
+  }
+
+  private static String[] places(int count) {
+    String[] places = new String[count];
+    for (int i = 0; i < count; i++) {
+      places[i] = "place " + i;
+    }
+    return places;
+  }
+
+  private DistanceMatrixPlanner planner(int origins, int destinations) {
+    return planner(context, origins, destinations);
+  }
+
+  private static DistanceMatrixPlanner planner(
+      GeoApiContext context, int origins, int destinations) {
+    return new DistanceMatrixPlanner(
+        DistanceMatrixApi.getDistanceMatrix(context, places(origins), places(destinations)));
+  }
+
+  /** Checks that every element of the matrix is in exactly one tile within the limits. */
+  private static void assertCovers(
+      List<DistanceMatrixPlanner.Tile> tiles, int origins, int destinations, int maxElements) {
+    int[][] covered = new int[origins][destinations];
+    for (int i = 0; i < tiles.size(); i++) {
+      DistanceMatrixPlanner.Tile tile = tiles.get(i);
+      assertEquals(i, tile.index);
+      assertTrue(tile.originCount <= DistanceMatrixPlanner.MAX_ORIGINS);
+      assertTrue(tile.destinationCount <= DistanceMatrixPlanner.MAX_DESTINATIONS);
+      assertTrue(tile.originCount * tile.destinationCount <= maxElements);
+      int originEnd = tile.originOffset + tile.originCount;
+      int destinationEnd = tile.destinationOffset + tile.destinationCount;
+      for (int o = tile.originOffset; o < originEnd; o++) {
+        for (int d = tile.destinationOffset; d < destinationEnd; d++) {
+          covered[o][d]++;
+        }
+      }
+    }
+    for (int[] row : covered) {
+      for (int count : row) {
+        assertEquals(1, count);
+      }
+    }
+  }
+
+  @Test
+  public void testSquareMatrixUsesTheFewestTiles() {
+    List<DistanceMatrixPlanner.Tile> tiles = planner(30, 30).tiles();
+    // 900 elements need at least nine tiles of 100.
+    assertEquals(9, tiles.size());
+    assertEquals(10, tiles.get(0).originCount);
+    assertEquals(10, tiles.get(0).destinationCount);
+    assertCovers(tiles, 30, 30, 100);
+  }
+
+  @Test
+  public void testLongThinMatricesSpreadEvenly() {
+    List<DistanceMatrixPlanner.Tile> tiles = planner(1, 60).tiles();
+    assertEquals(3, tiles.size());
+    for (DistanceMatrixPlanner.Tile tile : tiles) {
+      assertEquals(20, tile.destinationCount);
+    }
+    assertCovers(tiles, 1, 60, 100);
+
+    tiles = planner(101, 3).tiles();
+    assertCovers(tiles, 101, 3, 100);
+    assertEquals(5, tiles.size());
+  }
+
+  @Test
+  public void testSmallerLimits() {
+    List<DistanceMatrixPlanner.Tile> tiles = planner(37, 11).limits(25, 25, 20).tiles();
+    assertCovers(tiles, 37, 11, 20);
+  }
+
+  @Test
+  public void testEmptyMatrixHasNoTiles() throws Exception {
+    DistanceMatrixPlanner planner = planner(0, 5);
+    assertTrue(planner.tiles().isEmpty());
+    assertEquals(0, planner.await().rows.length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRequestNeedsOriginsAndDestinations() {
+    new DistanceMatrixPlanner(DistanceMatrixApi.newRequest(context).origins("Sydney"));
+  }
+
+  @Test
+  public void testTilesAreAssembledIntoOneMatrix() throws Exception {
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(new GeoApiContext.Builder(), new MatrixDispatcher())) {
+      DistanceMatrix matrix = planner(sc.context, 30, 40).await();
+
+      assertEquals(planner(sc.context, 30, 40).tiles().size(), sc.requestCount());
+      assertEquals(30, matrix.rows.length);
+      for (int o = 0; o < 30; o++) {
+        assertEquals("Origin of place " + o, matrix.originAddresses[o]);
+        assertEquals(40, matrix.rows[o].elements.length);
+        for (int d = 0; d < 40; d++) {
+          assertEquals(1000L * o + d, matrix.rows[o].elements[d].distance.inMeters);
+        }
+      }
+      for (int d = 0; d < 40; d++) {
+        assertEquals("Destination of place " + d, matrix.destinationAddresses[d]);
+      }
+    }
+  }
+
+  @Test
+  public void testListenerIsToldOfEachTile() throws Exception {
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(new GeoApiContext.Builder(), new MatrixDispatcher())) {
+      final Map<DistanceMatrixPlanner.Tile, DistanceMatrix> told = new ConcurrentHashMap<>();
+      DistanceMatrixPlanner planner =
+          planner(sc.context, 30, 30)
+              .onTile(
+                  new DistanceMatrixPlanner.TileListener() {
+                    @Override
+                    public void onTile(DistanceMatrixPlanner.Tile tile, DistanceMatrix result) {
+                      told.put(tile, result);
+                    }
+                  });
+      planner.await();
+
+      assertEquals(9, told.size());
+      for (Map.Entry<DistanceMatrixPlanner.Tile, DistanceMatrix> entry : told.entrySet()) {
+        DistanceMatrixPlanner.Tile tile = entry.getKey();
+        DistanceMatrix result = entry.getValue();
+        // Each tile is given its own matrix, indexed from its first origin and destination.
+        assertEquals(tile.originCount, result.rows.length);
+        assertEquals(tile.destinationCount, result.rows[0].elements.length);
+        assertEquals(
+            1000L * tile.originOffset + tile.destinationOffset,
+            result.rows[0].elements[0].distance.inMeters);
+      }
+    }
+  }
+
+  @Test
+  public void testFailedTileCancelsTilesInFlight() throws Exception {
+    final CountDownLatch allSent = new CountDownLatch(4);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Exception> ended = Collections.synchronizedList(new ArrayList<Exception>());
+    RequestMetricsReporter reporter =
+        new RequestMetricsReporter() {
+          @Override
+          public RequestMetrics newRequest(String requestName) {
+            return new RequestMetrics() {
+              @Override
+              public void startNetwork() {}
+
+              @Override
+              public void endNetwork() {}
+
+              @Override
+              public void endRequest(Exception exception, int httpStatusCode, long retryCount) {
+                ended.add(exception);
+              }
+            };
+          }
+        };
+    Dispatcher dispatcher =
+        new MatrixDispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            allSent.countDown();
+            HttpUrl url = request.getRequestUrl();
+            if (url.queryParameter("origins").startsWith("place 0|")
+                && url.queryParameter("destinations").startsWith("place 0|")) {
+              // The first tile fails once the other three are in flight, which never answer.
+              allSent.await(5, TimeUnit.SECONDS);
+              return new MockResponse()
+                  .setHeader("Content-Type", "application/json")
+                  .setBody("{\"status\":\"REQUEST_DENIED\",\"error_message\":\"Denied\"}");
+            }
+            release.await(5, TimeUnit.SECONDS);
+            return super.dispatch(request);
+          }
+        };
+
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(
+            new GeoApiContext.Builder().requestMetricsReporter(reporter), dispatcher)) {
+      try {
+        planner(sc.context, 30, 30).parallelism(4).await();
+        fail("Expected the failed tile to fail the matrix");
+      } catch (RequestDeniedException expected) {
+        // The first tile's failure is the matrix's.
+      }
+
+      // The other tiles end as their calls are cancelled, rather than when they are answered.
+      long deadline = System.currentTimeMillis() + 2000;
+      while (ended.size() < 4 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+      assertEquals(4, ended.size());
+      assertEquals(4, sc.requestCount());
+      int cancelled = 0;
+      for (Exception e : ended) {
+        if (e instanceof IOException) {
+          cancelled++;
+        }
+      }
+      assertEquals(3, cancelled);
+    }
+  }
+
+  @Test
+  public void testTilesAnsweredFromTheCacheDoNotDeepenTheStack() throws Exception {
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(
+            new GeoApiContext.Builder().responseCache(new ResponseCache(100, 1, TimeUnit.HOURS)),
+            new MatrixDispatcher())) {
+      planner(sc.context, 30, 60).await();
+      int sent = sc.requestCount();
+
+      // Every tile is now answered synchronously, from within the call that sends it.
+      final Set<Integer> depths = Collections.synchronizedSet(new HashSet<Integer>());
+      DistanceMatrix matrix =
+          planner(sc.context, 30, 60)
+              .parallelism(1)
+              .onTile(
+                  new DistanceMatrixPlanner.TileListener() {
+                    @Override
+                    public void onTile(DistanceMatrixPlanner.Tile tile, DistanceMatrix result) {
+                      depths.add(new Throwable().getStackTrace().length);
+                    }
+                  })
+              .await();
+
+      assertEquals(sent, sc.requestCount());
+      assertEquals(1, depths.size());
+      assertEquals(29059L, matrix.rows[29].elements[59].distance.inMeters);
+    }
+  }
+}
@@ -18,15 +18,22 @@ package com.google.maps;
 import static com.google.maps.TestUtils.retrieveBody;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import com.google.maps.errors.InvalidRequestException;
 import com.google.maps.errors.RequestDeniedException;
+import com.google.maps.internal.PolylineEncoding;
 import com.google.maps.model.ElevationResult;
 import com.google.maps.model.EncodedPolyline;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.LatLngAssert;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -157,6 +164,112 @@ public class ElevationApiTest {
     }
   }
 
+  @Test
+  public void testGridCacheOnlyFetchesUncachedPoints() throws Exception {
+    ElevationGridCache cache = new ElevationGridCache(3, 10);
+    ElevationResult cached = new ElevationResult();
+    cached.elevation = SYDNEY_ELEVATION;
+    cached.resolution = 4.771975994110107;
+    cache.put(SYDNEY, cached);
+    LatLng perth = new LatLng(-31.9523, 115.8613);
+
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(
+            new GeoApiContext.Builder().elevationGridCache(cache),
+            ""
+                + "{\n"
+                + "   \"results\" : [\n"
+                + "      {\n"
+                + "         \"elevation\" : 25.49982643127441,\n"
+                + "         \"location\" : {\n"
+                + "            \"lat\" : -37.81411,\n"
+                + "            \"lng\" : 144.96328\n"
+                + "         },\n"
+                + "         \"resolution\" : 152.7032318115234\n"
+                + "      },\n"
+                + "      {\n"
+                + "         \"elevation\" : 23.58,\n"
+                + "         \"location\" : {\n"
+                + "            \"lat\" : -31.9523,\n"
+                + "            \"lng\" : 115.8613\n"
+                + "         },\n"
+                + "         \"resolution\" : 152.7032318115234\n"
+                + "      }\n"
+                + "   ],\n"
+                + "   \"status\" : \"OK\"\n"
+                + "}\n")) {
+      ElevationResult[] results =
+          ElevationApi.getByPoints(sc.context, MELBOURNE, SYDNEY, perth).await();
+
+      // Sydney is answered from the cache; the other two are fetched, in the order asked for.
+      sc.assertParamValue("enc:dqxeFocxsZi{wb@j~rpD", "locations");
+      assertEquals(3, results.length);
+      assertEquals(MELBOURNE_ELEVATION, results[0].elevation, EPSILON);
+      assertEquals(SYDNEY_ELEVATION, results[1].elevation, EPSILON);
+      assertEquals(23.58, results[2].elevation, EPSILON);
+      assertEquals(1, cache.getHitCount());
+      assertEquals(23.58, cache.get(perth).elevation, EPSILON);
+    }
+  }
+
+  @Test
+  public void testGridCacheSplitsFetchesAtTheApiLimit() throws Exception {
+    final List<Integer> requestSizes = new CopyOnWriteArrayList<>();
+    Dispatcher dispatcher =
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            String param = request.getRequestUrl().queryParameter("locations");
+            List<LatLng> locations = new ArrayList<>();
+            if (param.startsWith("enc:")) {
+              locations.addAll(PolylineEncoding.decode(param.substring("enc:".length())));
+            } else {
+              for (String location : param.split("\\|")) {
+                String[] latLng = location.split(",");
+                locations.add(
+                    new LatLng(Double.parseDouble(latLng[0]), Double.parseDouble(latLng[1])));
+              }
+            }
+            requestSizes.add(locations.size());
+            // Answers each location with its latitude as its elevation.
+            StringBuilder results = new StringBuilder();
+            for (LatLng location : locations) {
+              if (results.length() > 0) {
+                results.append(",");
+              }
+              results.append(
+                  String.format(
+                      "{\"elevation\": %s, \"location\": {\"lat\": %s, \"lng\": %s}}",
+                      location.lat, location.lat, location.lng));
+            }
+            return new MockResponse()
+                .setResponseCode(200)
+                .setBody("{\"results\": [" + results + "], \"status\": \"OK\"}");
+          }
+        };
+    LatLng[] points = new LatLng[600];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new LatLng(10 + i / 1000.0, 20);
+    }
+
+    try (LocalTestServerContext sc =
+        new LocalTestServerContext(
+            new GeoApiContext.Builder().elevationGridCache(new ElevationGridCache(3, 10)),
+            dispatcher)) {
+      ElevationResult[] results = ElevationApi.getByPoints(sc.context, points).await();
+
+      // 600 grid nodes take two requests, as one can only have 512 locations.
+      assertEquals(2, sc.requestCount());
+      for (int size : requestSizes) {
+        assertTrue(size <= 512);
+      }
+      assertEquals(points.length, results.length);
+      for (int i = 0; i < points.length; i++) {
+        assertEquals(points[i].lat, results[i].elevation, 1e-5);
+      }
+    }
+  }
+
   @Test
   public void testGetPath() throws Exception {
     try (LocalTestServerContext sc =
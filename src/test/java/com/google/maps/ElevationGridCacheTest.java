@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.maps.model.ElevationResult;
+import com.google.maps.model.LatLng;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link ElevationGridCache}. */
+@Category(SmallTests.class)
+public class ElevationGridCacheTest {
+
+  private static ElevationResult elevation(double elevation, double resolution) {
+    ElevationResult result = new ElevationResult();
+    result.elevation = elevation;
+    result.resolution = resolution;
+    return result;
+  }
+
+  @Test
+  public void testLocationsTakeTheElevationOfTheirNearestNode() {
+    ElevationGridCache cache = new ElevationGridCache(3, 10);
+    assertNull(cache.get(new LatLng(-33.8688, 151.2093)));
+    cache.put(new LatLng(-33.8688, 151.2093), elevation(25.5, 4.8));
+
+    ElevationResult result = cache.get(new LatLng(-33.8686, 151.2091));
+    assertEquals(25.5, result.elevation, 0.001);
+    assertEquals(4.8, result.resolution, 0.001);
+    assertEquals(-33.8686, result.location.lat, 0);
+    assertNull(cache.get(new LatLng(-33.8678, 151.2093)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testInterpolatesBetweenTheNodesAroundALocation() {
+    ElevationGridCache cache = new ElevationGridCache(2, 10).interpolate();
+    LatLng location = new LatLng(10.0025, 20.0075);
+    List<LatLng> nodes = cache.locationsToFetch(location);
+    assertEquals(
+        Arrays.asList(
+            new LatLng(10.0, 20.0),
+            new LatLng(10.0, 20.01),
+            new LatLng(10.01, 20.0),
+            new LatLng(10.01, 20.01)),
+        nodes);
+    cache.put(nodes.get(0), elevation(100, 5));
+    cache.put(nodes.get(1), elevation(200, 5));
+    cache.put(nodes.get(2), elevation(300, 5));
+    assertNull(cache.get(location));
+    assertEquals(Collections.singletonList(nodes.get(3)), cache.locationsToFetch(location));
+    cache.put(nodes.get(3), elevation(400, 9));
+
+    // 100 + 100 * 0.75 across the lower edge, 300 + 100 * 0.75 across the upper, then a quarter
+    // of the way up.
+    ElevationResult result = cache.get(location);
+    assertEquals(175 + 200 * 0.25, result.elevation, 0.001);
+    assertEquals(9, result.resolution, 0);
+  }
+
+  @Test
+  public void testNodesAcrossTileBoundariesAndTheEquator() {
+    ElevationGridCache cache = new ElevationGridCache(4, 10).interpolate();
+    LatLng location = new LatLng(-0.00005, -0.00005);
+    for (LatLng node : cache.locationsToFetch(location)) {
+      cache.put(node, elevation(10, 1));
+    }
+    assertEquals(10, cache.get(location).elevation, 0.001);
+    assertEquals(4, cache.getTileCount());
+  }
+
+  @Test
+  public void testDropsLeastRecentlyUsedTiles() {
+    ElevationGridCache cache = new ElevationGridCache(3, 2);
+    cache.put(new LatLng(0, 0), elevation(1, 1));
+    cache.put(new LatLng(1, 0), elevation(2, 1));
+    cache.get(new LatLng(0, 0));
+    cache.put(new LatLng(2, 0), elevation(3, 1));
+
+    assertEquals(2, cache.getTileCount());
+    assertEquals(1, cache.get(new LatLng(0, 0)).elevation, 0);
+    assertNull(cache.get(new LatLng(1, 0)));
+  }
+
+  @Test
+  public void testMappedTilesSurviveANewCache() throws Exception {
+    File directory = Files.createTempDirectory("elevation").toFile();
+    ElevationGridCache cache = new ElevationGridCache(3, 1, directory);
+    cache.put(new LatLng(47.6, -122.3), elevation(56.25, 9.5));
+    cache.put(new LatLng(48.6, -122.3), elevation(12, 9.5));
+    assertEquals(1, cache.getTileCount());
+
+    // The first tile was dropped from memory but not from disk.
+    assertEquals(56.25, cache.get(new LatLng(47.6, -122.3)).elevation, 0);
+    ElevationGridCache reopened = new ElevationGridCache(3, 4, directory);
+    assertEquals(12, reopened.get(new LatLng(48.6, -122.3)).elevation, 0);
+    assertNull(new ElevationGridCache(4, 4, directory).get(new LatLng(48.6, -122.3)));
+  }
+}
@@ -24,18 +24,25 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
+import com.google.maps.errors.DeadlineExceededException;
 import com.google.maps.errors.OverQueryLimitException;
+import com.google.maps.errors.RequestQueueFullException;
 import com.google.maps.internal.ApiConfig;
 import com.google.maps.internal.ApiResponse;
 import com.google.maps.internal.HttpHeaders;
+import com.google.maps.internal.RateLimitExecutorService;
+import com.google.maps.model.ElevationResult;
 import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.LatLng;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import okhttp3.Headers;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -129,6 +136,100 @@ public class GeoApiContextTest {
     server.shutdown();
   }
 
+  @Test
+  public void testAsyncErrorResponseRetries() throws Exception {
+    server.enqueue(createMockBadResponse());
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    setMockBaseUrl();
+
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<GeocodingResult[]> result = new AtomicReference<>();
+    builder
+        .build()
+        .get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v")
+        .setCallback(
+            new PendingResult.Callback<GeocodingResult[]>() {
+              @Override
+              public void onResult(GeocodingResult[] r) {
+                result.set(r);
+                done.countDown();
+              }
+
+              @Override
+              public void onFailure(Throwable e) {
+                done.countDown();
+              }
+            });
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertNotNull("Retried request should have succeeded", result.get());
+    assertEquals(1, result.get().length);
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testRetryIsRefusedRatherThanBlockedByAFullQueue() throws Exception {
+    server.enqueue(createMockBadResponse());
+    MockResponse slowResponse = createMockGoodResponse();
+    slowResponse.setHeadersDelay(3, TimeUnit.SECONDS);
+    server.enqueue(slowResponse);
+    server.enqueue(createMockGoodResponse());
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    setMockBaseUrl();
+    GeoApiContext context =
+        builder
+            .requestHandlerBuilder(
+                new OkHttpRequestHandler.Builder()
+                    .maxQueueDepth(1, RateLimitExecutorService.OverflowPolicy.BLOCK)
+                    .maxConcurrentRequests(1))
+            .queryRateLimit(500)
+            .build();
+
+    // The first request fails and schedules its retry.
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    context
+        .get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v")
+        .setCallback(
+            new PendingResult.Callback<GeocodingResult[]>() {
+              @Override
+              public void onResult(GeocodingResult[] result) {
+                done.countDown();
+              }
+
+              @Override
+              public void onFailure(Throwable e) {
+                failure.set(e);
+                done.countDown();
+              }
+            });
+    server.takeRequest();
+    // Meanwhile a slow request takes the only slot, the next waits for it, and the last fills the
+    // queue, so there is no room for the retry until the slow response arrives.
+    for (int i = 0; i < 3; i++) {
+      context
+          .get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v")
+          .setCallback(
+              new PendingResult.Callback<GeocodingResult[]>() {
+                @Override
+                public void onResult(GeocodingResult[] result) {}
+
+                @Override
+                public void onFailure(Throwable e) {}
+              });
+      if (i == 0) {
+        server.takeRequest();
+      }
+    }
+
+    // The retry is refused at once rather than holding up the scheduler of every retry and hedge.
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertTrue(failure.get() instanceof RequestQueueFullException);
+    context.shutdown();
+  }
+
   @Test(expected = IOException.class)
   public void testSettingMaxRetries() throws Exception {
     MockResponse errorResponse = createMockBadResponse();
@@ -221,6 +322,116 @@ public class GeoApiContextTest {
     builder.build().get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
   }
 
+  @Test(expected = DeadlineExceededException.class)
+  public void testDeadlineCoversSlowResponses() throws Exception {
+    MockResponse slowResponse = createMockGoodResponse();
+    slowResponse.setHeadersDelay(2, TimeUnit.SECONDS);
+    server.enqueue(slowResponse);
+    server.start();
+    setMockBaseUrl();
+
+    builder.requestDeadline(500, TimeUnit.MILLISECONDS);
+    builder.build().get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+  }
+
+  @Test
+  public void testDeadlineStopsRetries() throws Exception {
+    server.enqueue(createMockBadResponse());
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    setMockBaseUrl();
+
+    // The first backoff is at least 250ms, which leaves no time for a retry.
+    builder.requestDeadline(200, TimeUnit.MILLISECONDS);
+    try {
+      builder.build().get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+      fail("Expected the deadline to be exceeded.");
+    } catch (DeadlineExceededException expected) {
+      // expected
+    }
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testSlowRequestIsHedged() throws Exception {
+    // Hedging only starts once there are enough latencies to take a percentile of.
+    for (int i = 0; i < 20; i++) {
+      server.enqueue(createMockGoodResponse());
+    }
+    MockResponse slowResponse = createMockGoodResponse();
+    slowResponse.setHeadersDelay(5, TimeUnit.SECONDS);
+    server.enqueue(slowResponse);
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    setMockBaseUrl();
+
+    GeoApiContext context =
+        builder
+            .requestHandlerBuilder(
+                new OkHttpRequestHandler.Builder().hedging(0.95, 50, TimeUnit.MILLISECONDS, 1.0))
+            .queryRateLimit(500)
+            .build();
+    for (int i = 0; i < 20; i++) {
+      context.get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+    }
+
+    long start = System.currentTimeMillis();
+    GeocodingResult[] result =
+        context.get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+    assertEquals(1, result.length);
+    assertTrue(System.currentTimeMillis() - start < 2000);
+    assertEquals(22, server.getRequestCount());
+  }
+
+  @Test
+  public void testQueueWaitDoesNotDelayHedging() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      server.enqueue(createMockGoodResponse());
+    }
+    MockResponse slowResponse = createMockGoodResponse();
+    slowResponse.setHeadersDelay(5, TimeUnit.SECONDS);
+    server.enqueue(slowResponse);
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    setMockBaseUrl();
+
+    // Twenty requests at once get fast responses, but wait up to two seconds for the rate limit.
+    GeoApiContext context =
+        builder
+            .requestHandlerBuilder(
+                new OkHttpRequestHandler.Builder().hedging(0.95, 50, TimeUnit.MILLISECONDS, 1.0))
+            .queryRateLimit(10)
+            .build();
+    final CountDownLatch done = new CountDownLatch(20);
+    for (int i = 0; i < 20; i++) {
+      context
+          .get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v")
+          .setCallback(
+              new PendingResult.Callback<GeocodingResult[]>() {
+                @Override
+                public void onResult(GeocodingResult[] result) {
+                  done.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                  done.countDown();
+                }
+              });
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    // Only the time on the network counts towards the hedge delay, so the slow request is hedged
+    // after the minimum delay rather than after the time the others spent queued.
+    long start = System.currentTimeMillis();
+    GeocodingResult[] result =
+        context.get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+    assertEquals(1, result.length);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertEquals(22, server.getRequestCount());
+    context.shutdown();
+  }
+
   @Test
   public void testRetryEventuallyReturnsTheRightException() throws Exception {
     MockResponse errorResponse = new MockResponse();
@@ -247,6 +458,38 @@ public class GeoApiContextTest {
     fail("Internal server error was expected but not observed.");
   }
 
+  @Test
+  public void testStreamedResponseIsDecoded() throws Exception {
+    server.enqueue(createMockGoodResponse());
+    server.start();
+    builder.requestHandlerBuilder(new OkHttpRequestHandler.Builder().streamResponses(true));
+    setMockBaseUrl();
+
+    GeocodingResult[] result =
+        builder.build().get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+    assertEquals(1, result.length);
+    assertEquals(
+        "1600 Amphitheatre Parkway, Mountain View, CA 94043, USA", result[0].formattedAddress);
+  }
+
+  @Test
+  public void testStreamedErrorResponseReportsHttpStatus() throws Exception {
+    server.enqueue(createMockBadResponse());
+    server.start();
+    builder
+        .requestHandlerBuilder(new OkHttpRequestHandler.Builder().streamResponses(true))
+        .disableRetries();
+    setMockBaseUrl();
+
+    try {
+      builder.build().get(new ApiConfig("/"), GeocodingApi.Response.class, "k", "v").await();
+    } catch (IOException ioe) {
+      assertEquals("Server Error: 500 Internal server error", ioe.getMessage());
+      return;
+    }
+    fail("Internal server error was expected but not observed.");
+  }
+
   @Test
   public void testQueryParamsHaveOrderPreserved() throws Exception {
     // This test is important for APIs (such as the speed limits API) where multiple parameters
@@ -410,4 +653,34 @@ public class GeoApiContextTest {
     delayThread.join(10);
     assertFalse(delayThread.isAlive());
   }
+
+  @Test
+  public void testShutdownCompletesRequestsWaitingForABatch() throws Exception {
+    server.enqueue(
+        new MockResponse()
+            .setBody(
+                "{\"results\":[{\"elevation\":19.1,\"location\":{\"lat\":-33.87,"
+                    + "\"lng\":151.21},\"resolution\":4.8}],\"status\":\"OK\"}"));
+    server.start();
+    setMockBaseUrl();
+    GeoApiContext context = builder.batchElevationRequests(1, TimeUnit.HOURS).build();
+
+    final CountDownLatch done = new CountDownLatch(1);
+    ElevationApi.getByPoint(context, new LatLng(-33.867487, 151.206990))
+        .setCallback(
+            new PendingResult.Callback<ElevationResult>() {
+              @Override
+              public void onResult(ElevationResult result) {
+                done.countDown();
+              }
+
+              @Override
+              public void onFailure(Throwable e) {
+                done.countDown();
+              }
+            });
+    // The request waits for the rest of its batch window, which shutting down must cut short.
+    context.shutdown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
 }
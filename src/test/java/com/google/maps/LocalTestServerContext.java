@@ -25,6 +25,7 @@ import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.List;
 import javax.imageio.ImageIO;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
@@ -59,6 +60,10 @@ public class LocalTestServerContext implements AutoCloseable {
   }
 
   LocalTestServerContext(String responseBody) throws IOException {
+    this(new GeoApiContext.Builder(), responseBody);
+  }
+
+  LocalTestServerContext(GeoApiContext.Builder builder, String responseBody) throws IOException {
     this.server = new MockWebServer();
     MockResponse response = new MockResponse();
     response.setHeader("Content-Type", "application/json");
@@ -67,12 +72,29 @@ public class LocalTestServerContext implements AutoCloseable {
     server.start();
 
     this.context =
-        new GeoApiContext.Builder()
+        builder
+            .apiKey("AIzaFakeKey")
+            .baseUrlOverride("http://127.0.0.1:" + server.getPort())
+            .build();
+  }
+
+  LocalTestServerContext(GeoApiContext.Builder builder, Dispatcher dispatcher) throws IOException {
+    this.server = new MockWebServer();
+    server.setDispatcher(dispatcher);
+    server.start();
+
+    this.context =
+        builder
             .apiKey("AIzaFakeKey")
             .baseUrlOverride("http://127.0.0.1:" + server.getPort())
             .build();
   }
 
+  /** @return The number of requests the server has received. */
+  public int requestCount() {
+    return server.getRequestCount();
+  }
+
   private List<NameValuePair> parseQueryParamsFromRequestLine(String requestLine)
       throws URISyntaxException {
     // Extract the URL part from the HTTP request line
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.maps.PlaceDetailsRequest.FieldMask;
+import com.google.maps.model.Geometry;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.PlaceDetails;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link PlaceDetailsCache}. */
+@Category(SmallTests.class)
+public class PlaceDetailsCacheTest {
+
+  private static PlaceDetails details() {
+    PlaceDetails details = new PlaceDetails();
+    details.placeId = "ChIJN1t_tDeuEmsRUsoyG83frY4";
+    details.name = "Google Sydney";
+    details.formattedAddress = "48 Pirrama Rd, Pyrmont NSW 2009, Australia";
+    details.geometry = new Geometry();
+    details.geometry.location = new LatLng(-33.866651, 151.195827);
+    return details;
+  }
+
+  private final PlaceDetailsCache cache = new PlaceDetailsCache(10, 1, TimeUnit.HOURS);
+
+  @Test
+  public void testOnlyMissingFieldsAreFetched() {
+    PlaceDetailsCache.CachedPlace entry = cache.entry("place");
+    List<FieldMask> nameOnly = Collections.singletonList(FieldMask.NAME);
+    assertEquals(nameOnly, cache.missing(entry, nameOnly));
+    cache.merge("place", entry, nameOnly, details(), nameOnly);
+
+    List<FieldMask> nameAndAddress = Arrays.asList(FieldMask.NAME, FieldMask.FORMATTED_ADDRESS);
+    assertNull(cache.get(entry, nameAndAddress));
+    assertEquals(
+        Collections.singletonList(FieldMask.FORMATTED_ADDRESS),
+        cache.missing(entry, nameAndAddress));
+
+    PlaceDetails addressOnly = new PlaceDetails();
+    addressOnly.formattedAddress = details().formattedAddress;
+    PlaceDetails merged =
+        cache.merge(
+            "place",
+            entry,
+            Collections.singletonList(FieldMask.FORMATTED_ADDRESS),
+            addressOnly,
+            nameAndAddress);
+    assertEquals("Google Sydney", merged.name);
+    assertEquals(details().formattedAddress, merged.formattedAddress);
+
+    PlaceDetails cached = cache.get(entry, nameAndAddress);
+    assertEquals("Google Sydney", cached.name);
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getPartialHitCount());
+  }
+
+  @Test
+  public void testFieldIsCoveredByTheFieldItIsPartOf() {
+    PlaceDetailsCache.CachedPlace entry = cache.entry("place");
+    List<FieldMask> geometry = Collections.singletonList(FieldMask.GEOMETRY);
+    cache.merge("place", entry, geometry, details(), geometry);
+
+    List<FieldMask> location = Collections.singletonList(FieldMask.GEOMETRY_LOCATION);
+    assertEquals(Collections.emptyList(), cache.missing(entry, location));
+    assertEquals(-33.866651, cache.get(entry, location).geometry.location.lat, 0);
+    // But not the other way around.
+    PlaceDetailsCache.CachedPlace other = cache.entry("other");
+    cache.merge("other", other, location, details(), location);
+    assertEquals(geometry, cache.missing(other, geometry));
+  }
+
+  @Test
+  public void testFieldsExpireButPlaceIdIsKept() throws Exception {
+    PlaceDetailsCache shortLived =
+        new PlaceDetailsCache(10, 1, TimeUnit.HOURS).ttl(FieldMask.NAME, 1, TimeUnit.MILLISECONDS);
+    PlaceDetailsCache.CachedPlace entry = shortLived.entry("place");
+    List<FieldMask> fields = Arrays.asList(FieldMask.PLACE_ID, FieldMask.NAME);
+    shortLived.merge("place", entry, fields, details(), fields);
+    Thread.sleep(5);
+
+    assertEquals(Collections.singletonList(FieldMask.NAME), shortLived.missing(entry, fields));
+    assertNotNull(shortLived.get(entry, Collections.singletonList(FieldMask.PLACE_ID)));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedPlaceIsEvicted() {
+    PlaceDetailsCache small = new PlaceDetailsCache(2, 1, TimeUnit.HOURS);
+    List<FieldMask> name = Collections.singletonList(FieldMask.NAME);
+    for (String key : new String[] {"a", "b"}) {
+      small.merge(key, small.entry(key), name, details(), name);
+    }
+    small.entry("a");
+    small.merge("c", small.entry("c"), name, details(), name);
+
+    assertEquals(2, small.size());
+    assertEquals(Collections.emptyList(), small.missing(small.entry("a"), name));
+    assertEquals(name, small.missing(small.entry("b"), name));
+  }
+
+  @Test
+  public void testPlaceIsOnlyAddedOnceFetched() {
+    List<FieldMask> name = Collections.singletonList(FieldMask.NAME);
+    PlaceDetailsCache.CachedPlace entry = cache.entry("place");
+    assertEquals(name, cache.missing(entry, name));
+    assertNull(cache.get(entry, name));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getMissCount());
+
+    cache.merge("place", entry, name, details(), name);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0, cache.getHitCount());
+
+    assertNotNull(cache.get(cache.entry("place"), name));
+    assertEquals(1, cache.getHitCount());
+  }
+}
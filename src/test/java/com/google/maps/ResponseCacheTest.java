@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.errors.ApiException;
+import com.google.maps.errors.InvalidRequestException;
+import com.google.maps.errors.ZeroResultsException;
+import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.ExceptionsAllowedToRetry;
+import com.google.maps.metrics.NoOpRequestMetricsReporter;
+import com.google.maps.metrics.RequestMetrics;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link ResponseCache} and {@link CachingRequestHandler}. */
+@Category(SmallTests.class)
+public class ResponseCacheTest {
+
+  /** Answers each request with the next outcome set by the test, counting the requests. */
+  private static class CountingRequestHandler implements GeoApiContext.RequestHandler {
+    private int requests;
+    private Object result;
+    private ApiException failure;
+
+    @Override
+    public <T, R extends ApiResponse<T>> PendingResult<T> handle(
+        String hostName,
+        String url,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics) {
+      final Object result = this.result;
+      final ApiException failure = this.failure;
+      return new PendingResult<T>() {
+        @Override
+        public void setCallback(Callback<T> callback) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T await() throws ApiException {
+          requests++;
+          if (failure != null) {
+            throw failure;
+          }
+          return (T) result;
+        }
+
+        @Override
+        public T awaitIgnoreError() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancel() {}
+      };
+    }
+
+    @Override
+    public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(
+        String hostName,
+        String url,
+        String payload,
+        String userAgent,
+        String experienceIdHeaderValue,
+        Class<R> clazz,
+        FieldNamingPolicy fieldNamingPolicy,
+        long errorTimeout,
+        Integer maxRetries,
+        ExceptionsAllowedToRetry exceptionsAllowedToRetry,
+        RequestMetrics metrics) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {}
+  }
+
+  /** Records how a request's metrics were ended. */
+  private static class RecordingMetrics implements RequestMetrics {
+    private int ended;
+    private Exception exception;
+
+    @Override
+    public void startNetwork() {}
+
+    @Override
+    public void endNetwork() {}
+
+    @Override
+    public void endRequest(Exception exception, int httpStatusCode, long retryCount) {
+      this.ended++;
+      this.exception = exception;
+    }
+  }
+
+  private final CountingRequestHandler delegate = new CountingRequestHandler();
+
+  private Object get(ResponseCache cache, String url) throws Exception {
+    return get(cache, url, new NoOpRequestMetricsReporter().newRequest(url));
+  }
+
+  private Object get(ResponseCache cache, String url, RequestMetrics metrics) throws Exception {
+    return new CachingRequestHandler(delegate, cache)
+        .handle(
+            "https://maps.googleapis.com",
+            url,
+            "user-agent",
+            null,
+            null,
+            FieldNamingPolicy.IDENTITY,
+            0,
+            0,
+            new ExceptionsAllowedToRetry(),
+            metrics)
+        .await();
+  }
+
+  @Test
+  public void testRepeatedRequestIsAnsweredFromCache() throws Exception {
+    ResponseCache cache = new ResponseCache(10, 1, TimeUnit.MINUTES);
+    Object result = new Object();
+    delegate.result = result;
+
+    assertSame(result, get(cache, "/maps/api/geocode/json?key=AIza1&address=Sydney&region=au"));
+    assertSame(result, get(cache, "/maps/api/geocode/json?region=au&address=Sydney&key=AIza2"));
+    assertEquals(1, delegate.requests);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testZeroResultsAreCachedButErrorsAreNot() throws Exception {
+    ResponseCache cache = new ResponseCache(10, 1, TimeUnit.MINUTES);
+    delegate.failure = new ZeroResultsException("none");
+    for (int i = 0; i < 2; i++) {
+      try {
+        get(cache, "/maps/api/elevation/json?locations=0,0");
+        fail("Expected ZeroResultsException");
+      } catch (ZeroResultsException expected) {
+        // Expected.
+      }
+    }
+    assertEquals(1, delegate.requests);
+
+    delegate.failure = new InvalidRequestException("invalid");
+    for (int i = 0; i < 2; i++) {
+      try {
+        get(cache, "/maps/api/elevation/json?locations=1,1");
+        fail("Expected InvalidRequestException");
+      } catch (InvalidRequestException expected) {
+        // Expected.
+      }
+    }
+    assertEquals(3, delegate.requests);
+  }
+
+  @Test
+  public void testHitsEndTheirMetrics() throws Exception {
+    ResponseCache cache = new ResponseCache(10, 1, TimeUnit.MINUTES);
+    delegate.result = new Object();
+    get(cache, "/maps/api/geocode/json?address=Sydney");
+
+    RecordingMetrics hit = new RecordingMetrics();
+    get(cache, "/maps/api/geocode/json?address=Sydney", hit);
+    assertEquals(1, hit.ended);
+    assertNull(hit.exception);
+  }
+
+  @Test
+  public void testEachZeroResultsHitThrowsItsOwnException() throws Exception {
+    ResponseCache cache = new ResponseCache(10, 1, TimeUnit.MINUTES);
+    delegate.failure = new ZeroResultsException("none");
+    ZeroResultsException[] thrown = new ZeroResultsException[3];
+    RecordingMetrics hit = new RecordingMetrics();
+    for (int i = 0; i < thrown.length; i++) {
+      try {
+        get(cache, "/maps/api/elevation/json?locations=0,0", hit);
+        fail("Expected ZeroResultsException");
+      } catch (ZeroResultsException e) {
+        thrown[i] = e;
+      }
+    }
+
+    assertEquals(1, delegate.requests);
+    assertNotSame(thrown[1], thrown[2]);
+    assertEquals("none", thrown[2].getMessage());
+    assertEquals(2, hit.ended);
+    assertSame(thrown[2], hit.exception);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedResponseIsEvicted() {
+    ResponseCache cache = new ResponseCache(2, 1, TimeUnit.MINUTES);
+    cache.put("a", "/a", "a", null);
+    cache.put("b", "/b", "b", null);
+    assertNotNull(cache.get("a"));
+    cache.put("c", "/c", "c", null);
+
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testTtlIsSetPerApi() throws Exception {
+    ResponseCache cache =
+        new ResponseCache(10, 1, TimeUnit.MINUTES)
+            .ttl("/maps/api/place/", 1, TimeUnit.MILLISECONDS)
+            .ttl("/maps/api/place/details/", 0, TimeUnit.SECONDS);
+    cache.put("geocode", "/maps/api/geocode/json", "geocode", null);
+    cache.put("search", "/maps/api/place/textsearch/json", "search", null);
+    cache.put("details", "/maps/api/place/details/json", "details", null);
+    Thread.sleep(5);
+
+    assertNotNull(cache.get("geocode"));
+    assertNull(cache.get("search"));
+    assertNull(cache.get("details"));
+    assertEquals(1, cache.size());
+  }
+}
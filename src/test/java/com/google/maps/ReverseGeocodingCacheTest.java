@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.maps.model.GeocodingResult;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link ReverseGeocodingCache}. */
+@Category(SmallTests.class)
+public class ReverseGeocodingCacheTest {
+
+  @Test
+  public void testNearbyLocationsShareACell() {
+    ReverseGeocodingCache cache = new ReverseGeocodingCache(4, 10, 1, TimeUnit.HOURS);
+    // About 3 m apart.
+    assertEquals(cache.cell(-33.86881, 151.20931), cache.cell(-33.86883, 151.20933));
+    // About 30 m apart.
+    assertFalse(cache.cell(-33.86881, 151.20931).equals(cache.cell(-33.86851, 151.20931)));
+  }
+
+  @Test
+  public void testResultsAreCachedPerCell() {
+    ReverseGeocodingCache cache = new ReverseGeocodingCache(3, 10, 1, TimeUnit.HOURS);
+    GeocodingResult[] results = new GeocodingResult[] {new GeocodingResult()};
+    String cell = cache.cell(-33.8688, 151.2093);
+    assertNull(cache.get(cell));
+    cache.put(cell, results);
+
+    assertSame(results, cache.get(cache.cell(-33.8686, 151.2091)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+}
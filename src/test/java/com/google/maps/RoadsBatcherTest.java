@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.maps.errors.InvalidRequestException;
+import com.google.maps.internal.MicroBatcher;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.SnappedPoint;
+import com.google.maps.model.SpeedLimit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for the batchers of {@link RoadsApi}. */
+@Category(SmallTests.class)
+public class RoadsBatcherTest {
+
+  private static SnappedPoint snapped(int originalIndex, String placeId) {
+    SnappedPoint point = new SnappedPoint();
+    point.originalIndex = originalIndex;
+    point.placeId = placeId;
+    return point;
+  }
+
+  private static SpeedLimit speedLimit(String placeId, double kph) {
+    SpeedLimit speedLimit = new SpeedLimit();
+    speedLimit.placeId = placeId;
+    speedLimit.speedLimit = kph;
+    return speedLimit;
+  }
+
+  @Test
+  public void testSnappedPointsGoBackToTheirCallersByOriginalIndex() {
+    RoadsApi.NearestRoadsBatcher batcher =
+        new RoadsApi.NearestRoadsBatcher(null, null, 10, TimeUnit.MILLISECONDS);
+    LatLng point = new LatLng(1, 2);
+    List<LatLng[]> requests =
+        Arrays.asList(
+            new LatLng[] {point, point}, new LatLng[] {point}, new LatLng[] {point, point});
+    // Point 1 has no road near it, and point 3 is on a two-way road.
+    SnappedPoint[] response =
+        new SnappedPoint[] {
+          snapped(0, "a"), snapped(2, "c"), snapped(3, "d1"), snapped(3, "d2"), snapped(4, "e")
+        };
+
+    SnappedPoint[] first = batcher.resultFor(response, requests, 0);
+    assertEquals(1, first.length);
+    assertEquals("a", first[0].placeId);
+    assertEquals(0, first[0].originalIndex);
+
+    SnappedPoint[] second = batcher.resultFor(response, requests, 1);
+    assertEquals(1, second.length);
+    assertEquals(0, second[0].originalIndex);
+
+    SnappedPoint[] third = batcher.resultFor(response, requests, 2);
+    assertEquals(3, third.length);
+    assertEquals("d2", third[1].placeId);
+    assertEquals(0, third[1].originalIndex);
+    assertEquals(1, third[2].originalIndex);
+    // The batch response itself is left as it was.
+    assertEquals(4, response[4].originalIndex);
+  }
+
+  @Test
+  public void testSpeedLimitsGoBackToEveryCallerThatAskedForThem() {
+    RoadsApi.SpeedLimitsBatcher batcher =
+        new RoadsApi.SpeedLimitsBatcher(null, null, 10, TimeUnit.MILLISECONDS);
+    List<String[]> requests = Arrays.asList(new String[] {"a", "b"}, new String[] {"b", "c"});
+    SpeedLimit[] response =
+        new SpeedLimit[] {speedLimit("a", 50), speedLimit("b", 80), speedLimit("c", 100)};
+
+    SpeedLimit[] first = batcher.resultFor(response, requests, 0);
+    assertEquals(2, first.length);
+    assertEquals(50, first[0].speedLimit, 0);
+    SpeedLimit[] second = batcher.resultFor(response, requests, 1);
+    assertEquals(2, second.length);
+    assertEquals("b", second[0].placeId);
+    assertEquals("c", second[1].placeId);
+  }
+
+  @Test
+  public void testAnInvalidPointOnlyFailsItsOwnCaller() throws Exception {
+    final List<Integer> batchSizes = new ArrayList<>();
+    ScheduledExecutorService scheduler = MicroBatcher.newScheduler();
+    RoadsApi.NearestRoadsBatcher batcher =
+        new RoadsApi.NearestRoadsBatcher(null, scheduler, 1, TimeUnit.HOURS) {
+          // Fails the whole request for one latitude out of range, as the Roads API does.
+          @Override
+          protected PendingResult<SnappedPoint[]> send(final List<LatLng[]> requests) {
+            batchSizes.add(requests.size());
+            return new PendingResult<SnappedPoint[]>() {
+              @Override
+              public void setCallback(Callback<SnappedPoint[]> callback) {
+                List<SnappedPoint> snappedPoints = new ArrayList<>();
+                for (LatLng[] request : requests) {
+                  for (LatLng point : request) {
+                    if (point.lat > 90) {
+                      callback.onFailure(new InvalidRequestException("Invalid points"));
+                      return;
+                    }
+                    snappedPoints.add(snapped(snappedPoints.size(), "road" + point.lat));
+                  }
+                }
+                callback.onResult(snappedPoints.toArray(new SnappedPoint[0]));
+              }
+
+              @Override
+              public SnappedPoint[] await() {
+                throw new UnsupportedOperationException();
+              }
+
+              @Override
+              public SnappedPoint[] awaitIgnoreError() {
+                throw new UnsupportedOperationException();
+              }
+
+              @Override
+              public void cancel() {}
+            };
+          }
+        };
+    final Map<Integer, Object> outcomes = new ConcurrentHashMap<>();
+    for (int i = 0; i < 4; i++) {
+      final int caller = i;
+      batcher
+          .add(new LatLng[] {new LatLng(caller == 2 ? 91 : caller, 0)})
+          .setCallback(
+              new PendingResult.Callback<SnappedPoint[]>() {
+                @Override
+                public void onResult(SnappedPoint[] result) {
+                  outcomes.put(caller, result);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                  outcomes.put(caller, e);
+                }
+              });
+    }
+    batcher.flush();
+
+    // The batch of four is split in halves, and the half with the bad point in halves again.
+    assertEquals(Arrays.asList(4, 2, 2, 1, 1), batchSizes);
+    assertTrue(outcomes.get(2) instanceof InvalidRequestException);
+    for (int caller : new int[] {0, 1, 3}) {
+      SnappedPoint[] own = (SnappedPoint[]) outcomes.get(caller);
+      assertEquals(1, own.length);
+      assertEquals("road" + (double) caller, own[0].placeId);
+      assertEquals(0, own[0].originalIndex);
+    }
+    scheduler.shutdown();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.maps.metrics.NoOpRequestMetricsReporter;
+import com.google.maps.metrics.RequestMetrics;
+import com.google.maps.metrics.RequestMetricsReporter;
+import com.google.maps.model.LatLng;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link TimeZoneCache}. */
+@Category(SmallTests.class)
+public class TimeZoneCacheTest {
+
+  @Test
+  public void testTimeZonesAreCachedPerCell() {
+    TimeZoneCache cache = new TimeZoneCache(1, 10, 1, TimeUnit.DAYS);
+    String cell = cache.cell(-33.8688, 151.2093);
+    assertNull(cache.get(cell));
+    cache.put(cell, ZoneId.of("Australia/Sydney"));
+
+    // About 1 km away.
+    assertEquals(ZoneId.of("Australia/Sydney"), cache.get(cache.cell(-33.8588, 151.2093)));
+    assertNull(cache.get(cache.cell(-37.8136, 144.9631)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testCachedTimeZoneStartsNoRequest() throws Exception {
+    TimeZoneCache cache = new TimeZoneCache(1, 10, 1, TimeUnit.DAYS);
+    LatLng sydney = new LatLng(-33.8688, 151.2093);
+    cache.put(cache.cell(sydney.lat, sydney.lng), ZoneId.of("Australia/Sydney"));
+    final AtomicInteger requests = new AtomicInteger();
+    GeoApiContext context =
+        new GeoApiContext.Builder()
+            .apiKey("AIza...")
+            .timeZoneCache(cache)
+            .requestMetricsReporter(
+                new RequestMetricsReporter() {
+                  @Override
+                  public RequestMetrics newRequest(String requestName) {
+                    requests.incrementAndGet();
+                    return new NoOpRequestMetricsReporter().newRequest(requestName);
+                  }
+                })
+            .build();
+
+    assertEquals("Australia/Sydney", TimeZoneApi.getTimeZone(context, sydney).await().getID());
+    // A request would start metrics that nothing ends, as it is never sent.
+    assertEquals(0, requests.get());
+    context.shutdown();
+  }
+
+  @Test
+  public void testOffsetsComeFromTheCachedZonesRules() {
+    TimeZoneCache cache = new TimeZoneCache(1, 10, 1, TimeUnit.DAYS);
+    LatLng sydney = new LatLng(-33.8688, 151.2093);
+    assertNull(cache.getRules(sydney));
+    cache.put(cache.cell(sydney.lat, sydney.lng), ZoneId.of("Australia/Sydney"));
+
+    ZoneRules rules = cache.getRules(sydney);
+    Instant winter = Instant.parse("2020-07-01T00:00:00Z");
+    Instant summer = Instant.parse("2020-01-01T00:00:00Z");
+    assertEquals(ZoneOffset.ofHours(10), rules.getOffset(winter));
+    assertEquals(ZoneOffset.ofHours(11), rules.getOffset(summer));
+    assertEquals(ZoneOffset.ofHours(10), rules.getStandardOffset(summer));
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.google.maps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.maps.CircuitBreakerState;
+import com.google.maps.SmallTests;
+import com.google.maps.metrics.RequestMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link CircuitBreaker}. */
+@Category(SmallTests.class)
+public class CircuitBreakerTest {
+
+  /** Records the state changes it is told about. */
+  private static class RecordingMetrics implements RequestMetrics {
+    private final List<CircuitBreakerState> states = new ArrayList<>();
+
+    @Override
+    public void circuitBreakerStateChanged(
+        String endpoint, CircuitBreakerState from, CircuitBreakerState to) {
+      states.add(to);
+    }
+
+    @Override
+    public void startNetwork() {}
+
+    @Override
+    public void endNetwork() {}
+
+    @Override
+    public void endRequest(Exception exception, int httpStatusCode, long retryCount) {}
+  }
+
+  private final RecordingMetrics metrics = new RecordingMetrics();
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker("/geocode", 3, 1, TimeUnit.MINUTES);
+    breaker.onFailure(metrics);
+    breaker.onFailure(metrics);
+    breaker.onSuccess(metrics);
+    breaker.onFailure(metrics);
+    breaker.onFailure(metrics);
+    assertTrue(breaker.tryAcquire(metrics));
+
+    breaker.onFailure(metrics);
+    assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire(metrics));
+    assertEquals(1, metrics.states.size());
+  }
+
+  @Test
+  public void testTrialRequestClosesBreaker() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("/geocode", 1, 50, TimeUnit.MILLISECONDS);
+    breaker.onFailure(metrics);
+    assertFalse(breaker.tryAcquire(metrics));
+
+    Thread.sleep(100);
+    assertTrue(breaker.tryAcquire(metrics));
+    // Only one trial request at a time.
+    assertFalse(breaker.tryAcquire(metrics));
+    breaker.onSuccess(metrics);
+
+    assertTrue(breaker.tryAcquire(metrics));
+    assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    assertEquals(metrics.states.toString(), 3, metrics.states.size());
+    assertEquals(CircuitBreakerState.HALF_OPEN, metrics.states.get(1));
+  }
+
+  @Test
+  public void testFailedTrialReopensBreaker() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("/geocode", 1, 50, TimeUnit.MILLISECONDS);
+    breaker.onFailure(metrics);
+    Thread.sleep(100);
+    assertTrue(breaker.tryAcquire(metrics));
+    breaker.onFailure(metrics);
+
+    assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire(metrics));
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.maps.SmallTests;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class HedgingPolicyTest {
+
+  @Test
+  public void testNoDelayUntilThereAreEnoughLatencies() {
+    HedgingPolicy policy = new HedgingPolicy(0.9, 10, TimeUnit.MILLISECONDS, 1.0);
+    for (int i = 0; i < 19; i++) {
+      policy.recordLatency("/a", 100);
+    }
+    assertEquals(-1, policy.hedgeDelayMillis("/a"));
+    assertEquals(-1, policy.hedgeDelayMillis("/b"));
+
+    policy.recordLatency("/a", 100);
+    assertEquals(100, policy.hedgeDelayMillis("/a"));
+  }
+
+  @Test
+  public void testDelayIsRefreshedEverySixteenLatencies() {
+    HedgingPolicy policy = new HedgingPolicy(0.5, 10, TimeUnit.MILLISECONDS, 1.0);
+    for (int i = 0; i < 20; i++) {
+      policy.recordLatency("/a", 100);
+    }
+    assertEquals(100, policy.hedgeDelayMillis("/a"));
+
+    // The delay stays as it was until enough slower latencies arrive to be worth sorting again.
+    for (int i = 0; i < 15; i++) {
+      policy.recordLatency("/a", 500);
+    }
+    assertEquals(100, policy.hedgeDelayMillis("/a"));
+    policy.recordLatency("/a", 500);
+    assertEquals(100, policy.hedgeDelayMillis("/a"));
+
+    for (int i = 0; i < 16; i++) {
+      policy.recordLatency("/a", 500);
+    }
+    assertEquals(500, policy.hedgeDelayMillis("/a"));
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.maps.PendingResult;
+import com.google.maps.SmallTests;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class MicroBatcherTest {
+
+  /** Answers each batch of numbers with ten times each number. */
+  private static class TimesTen extends MicroBatcher<Integer, List<Integer>, Integer> {
+    final List<List<Integer>> batches = new ArrayList<>();
+    IOException failure;
+
+    TimesTen(ScheduledExecutorService scheduler, long windowMillis, int maxItems, int maxWeight) {
+      super(scheduler, windowMillis, TimeUnit.MILLISECONDS, maxItems, maxWeight);
+    }
+
+    @Override
+    protected synchronized PendingResult<List<Integer>> send(final List<Integer> items) {
+      batches.add(items);
+      return new PendingResult<List<Integer>>() {
+        @Override
+        public void setCallback(Callback<List<Integer>> callback) {
+          if (failure != null) {
+            callback.onFailure(failure);
+            return;
+          }
+          List<Integer> results = new ArrayList<>();
+          for (int item : items) {
+            results.add(item * 10);
+          }
+          callback.onResult(results);
+        }
+
+        @Override
+        public List<Integer> await() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Integer> awaitIgnoreError() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancel() {}
+      };
+    }
+
+    @Override
+    protected Integer resultFor(List<Integer> response, List<Integer> items, int index) {
+      return response.get(index);
+    }
+
+    @Override
+    protected int weight(Integer item) {
+      return item;
+    }
+  }
+
+  @Test
+  public void testConcurrentRequestsShareABatch() throws Exception {
+    ScheduledExecutorService scheduler = MicroBatcher.newScheduler();
+    final TimesTen batcher = new TimesTen(scheduler, 200, 100, 1000);
+    ExecutorService callers = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      final int item = i;
+      results.add(
+          callers.submit(
+              new java.util.concurrent.Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                  return batcher.add(item).await();
+                }
+              }));
+    }
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i * 10, (int) results.get(i).get());
+    }
+    assertEquals(1, batcher.getBatchCount());
+    assertEquals(8, batcher.getItemCount());
+    callers.shutdown();
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testFullBatchesAreSentWithoutWaiting() throws Exception {
+    ScheduledExecutorService scheduler = MicroBatcher.newScheduler();
+    TimesTen batcher = new TimesTen(scheduler, TimeUnit.HOURS.toMillis(1), 3, 1000);
+    final List<Integer> results = new ArrayList<>();
+    PendingResult.Callback<Integer> collect =
+        new PendingResult.Callback<Integer>() {
+          @Override
+          public void onResult(Integer result) {
+            results.add(result);
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            fail(e.toString());
+          }
+        };
+    batcher.add(1).setCallback(collect);
+    batcher.add(2).setCallback(collect);
+    assertTrue(results.isEmpty());
+    batcher.add(3).setCallback(collect);
+
+    assertEquals(Arrays.asList(10, 20, 30), results);
+    assertEquals(Arrays.asList(Arrays.asList(1, 2, 3)), batcher.batches);
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testHeavyItemsStartANewBatch() throws Exception {
+    ScheduledExecutorService scheduler = MicroBatcher.newScheduler();
+    TimesTen batcher = new TimesTen(scheduler, 10, 100, 10);
+    PendingResult.Callback<Integer> ignore =
+        new PendingResult.Callback<Integer>() {
+          @Override
+          public void onResult(Integer result) {}
+
+          @Override
+          public void onFailure(Throwable e) {}
+        };
+    batcher.add(4).setCallback(ignore);
+    batcher.add(4).setCallback(ignore);
+    // Would take the batch to a weight of 11, so the first two are sent on their own.
+    batcher.add(3).setCallback(ignore);
+    assertEquals(Arrays.asList(Arrays.asList(4, 4)), batcher.batches);
+
+    assertEquals(0, (int) batcher.add(0).await());
+    assertEquals(Arrays.asList(Arrays.asList(4, 4), Arrays.asList(3, 0)), batcher.batches);
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testFailuresReachEveryCallerAndCancelledRequestsAreNotSent() throws Exception {
+    ScheduledExecutorService scheduler = MicroBatcher.newScheduler();
+    TimesTen batcher = new TimesTen(scheduler, 10, 100, 1000);
+    batcher.failure = new IOException("boom");
+    final List<Throwable> failures = new ArrayList<>();
+    PendingResult.Callback<Integer> collect =
+        new PendingResult.Callback<Integer>() {
+          @Override
+          public void onResult(Integer result) {
+            fail("Expected a failure");
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            failures.add(e);
+          }
+        };
+    PendingResult<Integer> cancelled = batcher.add(1);
+    cancelled.setCallback(collect);
+    cancelled.cancel();
+    batcher.add(2).setCallback(collect);
+    try {
+      batcher.add(3).await();
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("boom", e.getMessage());
+    }
+
+    assertEquals(Arrays.asList(Arrays.asList(2, 3)), batcher.batches);
+    assertEquals(2, failures.size());
+    assertEquals("Canceled", failures.get(0).getMessage());
+    assertEquals("boom", failures.get(1).getMessage());
+    assertEquals(1, batcher.getBatchCount());
+    scheduler.shutdown();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.maps.PendingResult;
+import com.google.maps.SmallTests;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link PendingResultFuture}. */
+@Category(SmallTests.class)
+public class PendingResultFutureTest {
+
+  /** A PendingResult whose outcome is delivered by the test. */
+  private static class ManualPendingResult implements PendingResult<String> {
+    private Callback<String> callback;
+    private boolean cancelled;
+
+    @Override
+    public void setCallback(Callback<String> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public String await() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String awaitIgnoreError() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  @Test
+  public void testCompletesWithResult() throws Exception {
+    ManualPendingResult pending = new ManualPendingResult();
+    CompletableFuture<String> future = pending.toCompletableFuture();
+    assertFalse(future.isDone());
+
+    pending.callback.onResult("result");
+    assertEquals("result", future.get());
+  }
+
+  @Test
+  public void testCompletesExceptionallyWithFailure() throws Exception {
+    ManualPendingResult pending = new ManualPendingResult();
+    CompletableFuture<String> future = pending.toCompletableFuture();
+    IOException failure = new IOException("failed");
+
+    pending.callback.onFailure(failure);
+    try {
+      future.get();
+      fail("Expected the failure to be propagated.");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void testCancelCancelsRequest() {
+    ManualPendingResult pending = new ManualPendingResult();
+    CompletableFuture<String> future = pending.toCompletableFuture();
+
+    assertTrue(future.cancel(true));
+    assertTrue(pending.cancelled);
+
+    // A response arriving after cancellation is dropped.
+    pending.callback.onResult("late");
+    assertTrue(future.isCancelled());
+  }
+
+  @Test
+  public void testCompletesOnExecutor() throws Exception {
+    ExecutorService executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                return new Thread(r, "completion-thread");
+              }
+            });
+    try {
+      ManualPendingResult pending = new ManualPendingResult();
+      CompletableFuture<String> threadName =
+          pending
+              .toCompletableFuture(executor)
+              .thenApply(
+                  new Function<String, String>() {
+                    @Override
+                    public String apply(String result) {
+                      return Thread.currentThread().getName();
+                    }
+                  });
+
+      pending.callback.onResult("result");
+      assertEquals("completion-thread", threadName.get(1, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -18,13 +18,26 @@ package com.google.maps.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import com.google.maps.MediumTests;
+import com.google.maps.RequestPriority;
+import com.google.maps.errors.RequestQueueFullException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
@@ -84,6 +97,428 @@ public class RateLimitExecutorServiceTest {
     service.shutdown();
   }
 
+  @Test
+  public void testVirtualThreadsRunDispatchedTasks() throws Exception {
+    assumeTrue("Virtual threads require Java 21", VirtualThreads.isSupported());
+    RateLimitExecutorService service = new RateLimitExecutorService(true);
+    final CountDownLatch ran = new CountDownLatch(1);
+    final AtomicReference<String> threadName = new AtomicReference<>();
+    service.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            threadName.set(Thread.currentThread().getName());
+            ran.countDown();
+          }
+        });
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    assertTrue(threadName.get().startsWith("Rate Limited Dispatcher-"));
+    service.shutdown();
+  }
+
+  /** A task that records whether it was run or rejected. */
+  private static class RecordingTask implements RateLimitExecutorService.RejectableTask {
+    private final CountDownLatch ran = new CountDownLatch(1);
+    private volatile RejectedExecutionException rejection;
+
+    @Override
+    public void run() {
+      ran.countDown();
+    }
+
+    @Override
+    public void reject(RejectedExecutionException e) {
+      rejection = e;
+    }
+  }
+
+  @Test
+  public void testFailFastRejectsWhenQueueIsFull() throws Exception {
+    RateLimitExecutorService service =
+        new RateLimitExecutorService(false, 2, RateLimitExecutorService.OverflowPolicy.FAIL_FAST);
+    service.setQueriesPerSecond(1);
+    // Let the delay thread take the first permit, so that the queue starts filling up.
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    service.execute(new RecordingTask());
+    service.execute(new RecordingTask());
+    assertEquals(2, service.getQueueDepth());
+    try {
+      service.execute(new RecordingTask());
+      fail("Expected the full queue to reject the task.");
+    } catch (RequestQueueFullException expected) {
+      // expected
+    }
+    service.shutdown();
+  }
+
+  @Test
+  public void testDropOldestRejectsLongestWaitingTask() throws Exception {
+    RateLimitExecutorService service =
+        new RateLimitExecutorService(false, 2, RateLimitExecutorService.OverflowPolicy.DROP_OLDEST);
+    service.setQueriesPerSecond(1);
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    RecordingTask oldest = new RecordingTask();
+    RecordingTask middle = new RecordingTask();
+    RecordingTask newest = new RecordingTask();
+    service.execute(oldest);
+    service.execute(middle);
+    service.execute(newest);
+
+    assertEquals(2, service.getQueueDepth());
+    assertTrue(oldest.rejection instanceof RequestQueueFullException);
+    assertNull(middle.rejection);
+    assertTrue(newest.ran.await(5, TimeUnit.SECONDS));
+    service.shutdown();
+  }
+
+  @Test
+  public void testShutdownRejectsQueuedTasks() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(1);
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    RecordingTask queued = new RecordingTask();
+    service.execute(queued);
+    service.shutdown();
+
+    assertNotNull(queued.rejection);
+  }
+
+  @Test
+  public void testInteractiveTasksOvertakeQueuedBatchTasks() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(10);
+    service.execute(new RecordingTask());
+    Thread.sleep(50);
+
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done = new CountDownLatch(4);
+    for (final String name : new String[] {"batch1", "batch2", "batch3", "interactive"}) {
+      RequestPriority priority =
+          name.startsWith("batch") ? RequestPriority.BATCH : RequestPriority.INTERACTIVE;
+      service.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              order.add(name);
+              done.countDown();
+            }
+          },
+          null,
+          priority);
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("interactive", "batch1", "batch2", "batch3"), order);
+    service.shutdown();
+  }
+
+  @Test
+  public void testZeroWeightIsRejectedForInteractiveLane() {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    try {
+      service.setPriorityWeight(RequestPriority.INTERACTIVE, 0);
+      fail("A zero weight would starve interactive requests behind batch ones");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void testZeroWeightBatchLaneWaitsForInteractiveLane() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(20);
+    service.setPriorityWeight(RequestPriority.BATCH, 0);
+    service.execute(new RecordingTask());
+    Thread.sleep(50);
+
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done = new CountDownLatch(4);
+    for (final String name : new String[] {"batch1", "interactive1", "batch2", "interactive2"}) {
+      RequestPriority priority =
+          name.startsWith("batch") ? RequestPriority.BATCH : RequestPriority.INTERACTIVE;
+      service.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              order.add(name);
+              done.countDown();
+            }
+          },
+          null,
+          priority);
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("interactive1", "interactive2", "batch1", "batch2"), order);
+    service.shutdown();
+  }
+
+  @Test
+  public void testDropOldestDropsBatchTasksFirst() throws Exception {
+    RateLimitExecutorService service =
+        new RateLimitExecutorService(false, 2, RateLimitExecutorService.OverflowPolicy.DROP_OLDEST);
+    service.setQueriesPerSecond(1);
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    RecordingTask interactive = new RecordingTask();
+    RecordingTask batch = new RecordingTask();
+    service.execute(interactive, null, RequestPriority.INTERACTIVE);
+    service.execute(batch, null, RequestPriority.BATCH);
+    service.execute(new RecordingTask(), null, RequestPriority.INTERACTIVE);
+
+    assertNull(interactive.rejection);
+    assertTrue(batch.rejection instanceof RequestQueueFullException);
+    service.shutdown();
+  }
+
+  @Test
+  public void testDropOldestNeverDropsMoreUrgentTasks() throws Exception {
+    RateLimitExecutorService service =
+        new RateLimitExecutorService(false, 2, RateLimitExecutorService.OverflowPolicy.DROP_OLDEST);
+    service.setQueriesPerSecond(1);
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    RecordingTask first = new RecordingTask();
+    RecordingTask second = new RecordingTask();
+    service.execute(first, null, RequestPriority.INTERACTIVE);
+    service.execute(second, null, RequestPriority.INTERACTIVE);
+    try {
+      service.execute(new RecordingTask(), null, RequestPriority.BATCH);
+      fail("A batch task must not push out interactive ones");
+    } catch (RequestQueueFullException expected) {
+      // expected
+    }
+
+    assertEquals(2, service.getQueueDepth());
+    assertNull(first.rejection);
+    assertNull(second.rejection);
+    service.shutdown();
+  }
+
+  @Test
+  public void testTimerThreadIsRefusedRatherThanBlocked() throws Exception {
+    final RateLimitExecutorService service =
+        new RateLimitExecutorService(false, 1, RateLimitExecutorService.OverflowPolicy.BLOCK);
+    // The first task holds the only slot, so the second waits for it and the third fills the queue.
+    service.setMaxConcurrentRequests(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    service.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+    service.execute(new RecordingTask());
+    assertEquals(1, service.getQueueDepth());
+
+    final AtomicReference<Exception> refusal = new AtomicReference<>();
+    Thread timer =
+        RateLimitExecutorService.newTimerThread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  service.execute(new RecordingTask());
+                } catch (RejectedExecutionException e) {
+                  refusal.set(e);
+                }
+              }
+            },
+            "Timer");
+    timer.start();
+    timer.join(500);
+
+    assertFalse("The timer thread waited for room in the queue", timer.isAlive());
+    assertTrue(refusal.get() instanceof RequestQueueFullException);
+    release.countDown();
+    service.shutdown();
+  }
+
+  @Test
+  public void testExpiredTasksAreShedWithoutUsingAPermit() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(1);
+    service.execute(new RecordingTask());
+    Thread.sleep(100);
+
+    RecordingTask expired =
+        new RecordingTask() {
+          @Override
+          public boolean isExpired() {
+            return true;
+          }
+        };
+    RecordingTask live = new RecordingTask();
+    service.execute(expired);
+    service.execute(live);
+
+    // The live task gets the next permit, rather than waiting a second for the one after.
+    assertTrue(live.ran.await(1500, TimeUnit.MILLISECONDS));
+    assertEquals(1, expired.ran.getCount());
+    assertNotNull(expired.rejection);
+    service.shutdown();
+  }
+
+  @Test
+  public void testConcurrentTasksAreBounded() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(100);
+    service.setMaxConcurrentRequests(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger started = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(5);
+    for (int i = 0; i < 5; i++) {
+      service.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              started.incrementAndGet();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              done.countDown();
+            }
+          });
+    }
+
+    // Plenty of permits have been handed out by now, but only two tasks may be running.
+    Thread.sleep(300);
+    assertEquals(2, started.get());
+    assertEquals(2, service.getRunningCount());
+
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(5, started.get());
+    service.shutdown();
+  }
+
+  @Test
+  public void testShutdownWakesDelayThreadWaitingForConcurrency() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(100);
+    service.setMaxConcurrentRequests(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    service.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+    RecordingTask waiting = new RecordingTask();
+    service.execute(waiting);
+    Thread.sleep(100);
+
+    service.shutdown();
+    service.delayThread.join(1000);
+    assertFalse(service.delayThread.isAlive());
+    assertEquals(1, waiting.ran.getCount());
+    assertNotNull(waiting.rejection);
+    release.countDown();
+  }
+
+  @Test
+  public void testApiRateLimitIsIndependentOfDefault() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(1);
+    service.setQueriesPerSecond("/maps/api/place/", 100);
+
+    // Saturate the default limit, then check that Places requests are not stuck behind it.
+    for (int i = 0; i < 5; i++) {
+      service.execute(new RecordingTask(), "/maps/api/geocode/json");
+    }
+    RecordingTask places = new RecordingTask();
+    service.execute(places, "/maps/api/place/details/json");
+
+    assertTrue(places.ran.await(500, TimeUnit.MILLISECONDS));
+    assertTrue(service.getQueueDepth() >= 3);
+    service.shutdown();
+  }
+
+  @Test
+  public void testGlobalRateLimitCapsAllApis() throws Exception {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond("/maps/api/place/", 100);
+    service.setQueriesPerSecond("/maps/api/directions/", 100);
+    service.setGlobalQueriesPerSecond(2);
+
+    final AtomicInteger executed = new AtomicInteger();
+    Runnable counter =
+        new Runnable() {
+          @Override
+          public void run() {
+            executed.incrementAndGet();
+          }
+        };
+    for (int i = 0; i < 10; i++) {
+      service.execute(counter, "/maps/api/place/details/json");
+      service.execute(counter, "/maps/api/directions/json");
+    }
+
+    Thread.sleep(1500);
+    assertTrue("Expected at most 4 queries, got " + executed.get(), executed.get() <= 4);
+    service.shutdown();
+  }
+
+  @Test
+  public void testAdaptiveRateBacksOffAndRecovers() {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(10);
+    service.setAdaptive(true);
+    String path = "/maps/api/geocode/json";
+
+    service.reportOverQueryLimit(path);
+    assertEquals(5.0, service.getQueriesPerSecond(path), 0.01);
+    // Further rejections from requests that were already in flight don't cut the rate again.
+    service.reportOverQueryLimit(path);
+    assertEquals(5.0, service.getQueriesPerSecond(path), 0.01);
+
+    for (int i = 0; i < 5; i++) {
+      service.reportSuccess(path);
+    }
+    assertEquals(6.0, service.getQueriesPerSecond(path), 0.01);
+
+    for (int i = 0; i < 100; i++) {
+      service.reportSuccess(path);
+    }
+    assertEquals(10.0, service.getQueriesPerSecond(path), 0.01);
+    service.shutdown();
+  }
+
+  @Test
+  public void testRateIsFixedWhenNotAdaptive() {
+    RateLimitExecutorService service = new RateLimitExecutorService();
+    service.setQueriesPerSecond(10);
+
+    service.reportOverQueryLimit("/maps/api/geocode/json");
+    assertEquals(10.0, service.getQueriesPerSecond("/maps/api/geocode/json"), 0.01);
+    service.shutdown();
+  }
+
   private static int countTotalRequests(AbstractMap<?, Integer> hashMap) {
     int counter = 0;
     for (Integer value : hashMap.values()) {
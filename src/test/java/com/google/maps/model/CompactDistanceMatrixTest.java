@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.model;
+
+import static com.google.maps.TestUtils.retrieveBody;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.DistanceMatrixApi;
+import com.google.maps.SmallTests;
+import com.google.maps.internal.ResponseCodecRegistry;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/** Test case for {@link CompactDistanceMatrix} and its response adapter. */
+@Category(SmallTests.class)
+public class CompactDistanceMatrixTest {
+
+  private static final String MIXED =
+      "{\"status\":\"OK\",\"origin_addresses\":[\"A\",\"B\"],"
+          + "\"destination_addresses\":[\"X\",\"Y\",\"Z\"],\"rows\":["
+          + "{\"elements\":["
+          + "{\"status\":\"OK\",\"duration\":{\"text\":\"5 mins\",\"value\":300},"
+          + "\"distance\":{\"text\":\"4 km\",\"value\":4000}},"
+          + "{\"status\":\"ZERO_RESULTS\"},"
+          + "{\"status\":\"OK\",\"duration\":{\"text\":\"2 mins\",\"value\":120},"
+          + "\"duration_in_traffic\":{\"text\":\"3 mins\",\"value\":180},"
+          + "\"distance\":{\"text\":\"5 km\",\"value\":5000},"
+          + "\"fare\":{\"currency\":\"USD\",\"value\":6,\"text\":\"$6.00\"}}]},"
+          + "{\"elements\":["
+          + "{\"status\":\"NOT_FOUND\"},"
+          + "{\"status\":\"OK\",\"duration\":{\"text\":\"1 min\",\"value\":60},"
+          + "\"distance\":{\"text\":\"1 km\",\"value\":1000}},"
+          + "{\"status\":\"OK\",\"duration\":{\"text\":\"1 min\",\"value\":60},"
+          + "\"distance\":{\"text\":\"2 km\",\"value\":2000}}]}]}";
+
+  private static CompactDistanceMatrix decode(String json) {
+    return ResponseCodecRegistry.getInstance()
+        .fromJson(json, DistanceMatrixApi.CompactResponse.class, FieldNamingPolicy.IDENTITY)
+        .getResult();
+  }
+
+  @Test
+  public void testMatchesFullDecoding() {
+    String json = retrieveBody("GetDistanceMatrixWithBasicStringParams.json");
+    DistanceMatrix full =
+        ResponseCodecRegistry.getInstance()
+            .fromJson(
+                json,
+                DistanceMatrixApi.Response.class,
+                FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .getResult();
+    CompactDistanceMatrix compact = decode(json);
+
+    assertEquals(8, compact.originCount);
+    assertEquals(5, compact.destinationCount);
+    assertArrayEquals(full.originAddresses, compact.originAddresses);
+    assertArrayEquals(full.destinationAddresses, compact.destinationAddresses);
+    for (int o = 0; o < compact.originCount; o++) {
+      for (int d = 0; d < compact.destinationCount; d++) {
+        DistanceMatrixElement element = full.rows[o].elements[d];
+        assertEquals(element.status, compact.status(o, d));
+        assertEquals(element.duration.inSeconds, compact.duration(o, d));
+        assertEquals(element.distance.inMeters, compact.distance(o, d));
+        assertEquals(-1, compact.durationInTraffic(o, d));
+      }
+    }
+  }
+
+  @Test
+  public void testMissingValues() {
+    CompactDistanceMatrix matrix = decode(MIXED);
+
+    assertEquals(2, matrix.originCount);
+    assertEquals(3, matrix.destinationCount);
+    assertEquals(DistanceMatrixElementStatus.ZERO_RESULTS, matrix.status(0, 1));
+    assertEquals(-1, matrix.duration(0, 1));
+    assertEquals(-1, matrix.distance(0, 1));
+    assertEquals(180, matrix.durationInTraffic(0, 2));
+    assertEquals(-1, matrix.durationInTraffic(0, 0));
+    assertEquals(DistanceMatrixElementStatus.NOT_FOUND, matrix.status(1, 0));
+  }
+
+  @Test
+  public void testMinAndNearest() {
+    CompactDistanceMatrix matrix = decode(MIXED);
+
+    assertEquals(2, matrix.argmin(0, CompactDistanceMatrix.Metric.DURATION));
+    assertEquals(120, matrix.min(0, CompactDistanceMatrix.Metric.DURATION));
+    assertEquals(0, matrix.argmin(0, CompactDistanceMatrix.Metric.DISTANCE));
+    assertEquals(4000, matrix.min(0, CompactDistanceMatrix.Metric.DISTANCE));
+    assertEquals(2, matrix.argmin(0, CompactDistanceMatrix.Metric.DURATION_IN_TRAFFIC));
+    assertEquals(-1, matrix.argmin(1, CompactDistanceMatrix.Metric.DURATION_IN_TRAFFIC));
+    assertEquals(-1, matrix.min(1, CompactDistanceMatrix.Metric.DURATION_IN_TRAFFIC));
+
+    assertArrayEquals(
+        new int[] {2, 0}, matrix.nearest(0, 5, CompactDistanceMatrix.Metric.DURATION));
+    assertArrayEquals(new int[] {2}, matrix.nearest(0, 1, CompactDistanceMatrix.Metric.DURATION));
+    assertArrayEquals(
+        new int[] {1, 2}, matrix.nearest(1, 2, CompactDistanceMatrix.Metric.DISTANCE));
+    assertArrayEquals(new int[0], matrix.nearest(1, 0, CompactDistanceMatrix.Metric.DISTANCE));
+  }
+
+  @Test
+  public void testMatrixWithoutDestinations() {
+    CompactDistanceMatrix matrix =
+        new CompactDistanceMatrix(
+            null,
+            null,
+            2,
+            0,
+            new long[0],
+            new long[0],
+            new long[0],
+            new DistanceMatrixElementStatus[0]);
+
+    assertEquals(-1, matrix.argmin(1, CompactDistanceMatrix.Metric.DURATION));
+    assertEquals(-1, matrix.min(1, CompactDistanceMatrix.Metric.DURATION));
+    assertArrayEquals(new int[0], matrix.nearest(1, 3, CompactDistanceMatrix.Metric.DURATION));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testMatrixWithoutDestinationsStillChecksTheOrigin() {
+    new CompactDistanceMatrix(
+            null,
+            null,
+            2,
+            0,
+            new long[0],
+            new long[0],
+            new long[0],
+            new DistanceMatrixElementStatus[0])
+        .argmin(2, CompactDistanceMatrix.Metric.DURATION);
+  }
+
+  @Test
+  public void testNearestAgainstSort() {
+    int count = 200;
+    long[] durations = new long[count];
+    DistanceMatrixElementStatus[] statuses = new DistanceMatrixElementStatus[count];
+    for (int i = 0; i < count; i++) {
+      durations[i] = (i * 7919L) % 211;
+      statuses[i] =
+          i % 10 == 3 ? DistanceMatrixElementStatus.NOT_FOUND : DistanceMatrixElementStatus.OK;
+    }
+    CompactDistanceMatrix matrix =
+        new CompactDistanceMatrix(
+            null, null, 1, count, durations, new long[count], new long[count], statuses);
+
+    int[] nearest = matrix.nearest(0, 20, CompactDistanceMatrix.Metric.DURATION);
+    assertEquals(20, nearest.length);
+    long previous = -1;
+    for (int destination : nearest) {
+      assertEquals(DistanceMatrixElementStatus.OK, matrix.status(0, destination));
+      assertTrue(durations[destination] >= previous);
+      previous = durations[destination];
+    }
+    // Nothing left out is closer than the furthest destination returned.
+    for (int i = 0; i < count; i++) {
+      if (statuses[i] == DistanceMatrixElementStatus.OK && durations[i] < previous) {
+        boolean included = false;
+        for (int destination : nearest) {
+          included |= destination == i;
+        }
+        assertTrue("destination " + i, included);
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.maps.MediumTests;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class TokenStoreRateLimiterTest {
+
+  @Test
+  public void testInMemoryStoreHoldsOneSecondOfPermits() {
+    InMemoryTokenStore store = new InMemoryTokenStore();
+    assertEquals(10, store.lease("key", 100, 10));
+    assertEquals(0, store.lease("key", 100, 10));
+    // Buckets are independent.
+    assertEquals(5, store.lease("other", 5, 10));
+  }
+
+  @Test
+  public void testFileStoreIsSharedBetweenInstances() throws Exception {
+    File directory = Files.createTempDirectory("tokens").toFile();
+    FileTokenStore first = new FileTokenStore(directory);
+    FileTokenStore second = new FileTokenStore(directory);
+
+    assertEquals(6, first.lease("key", 6, 10));
+    assertEquals(4, second.lease("key", 6, 10));
+    assertEquals(0, first.lease("key", 6, 10));
+  }
+
+  @Test
+  public void testLimitersShareTheStoreRate() throws Exception {
+    final InMemoryTokenStore store = new InMemoryTokenStore();
+    final AtomicInteger acquired = new AtomicInteger();
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+    Thread[] clients = new Thread[2];
+    for (int i = 0; i < clients.length; i++) {
+      final TokenStoreRateLimiter limiter = new TokenStoreRateLimiter(store, "key", 10, 2);
+      clients[i] =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    while (System.nanoTime() < deadline) {
+                      limiter.acquire();
+                      acquired.incrementAndGet();
+                    }
+                  } catch (InterruptedException e) {
+                    // finish early
+                  }
+                }
+              });
+      clients[i].start();
+    }
+    for (Thread client : clients) {
+      client.join();
+    }
+
+    // A full bucket of 10, plus 10 per second refilled, for both clients together.
+    assertTrue("Acquired " + acquired.get(), acquired.get() <= 10 + 15 + 2);
+    assertTrue("Acquired " + acquired.get(), acquired.get() >= 10);
+  }
+
+  @Test
+  public void testLeasesFollowDemand() throws Exception {
+    final List<Long> requested = new ArrayList<>();
+    TokenStore store =
+        new TokenStore() {
+          @Override
+          public synchronized long lease(String bucket, long permits, double permitsPerSecond) {
+            requested.add(permits);
+            return permits;
+          }
+        };
+    TokenStoreRateLimiter limiter = new TokenStoreRateLimiter(store, "key", 100, 8);
+
+    // Each block is used up, so the next one doubles until it reaches the block size.
+    for (int i = 0; i < 1 + 2 + 4 + 8 + 1; i++) {
+      limiter.acquire();
+    }
+    assertEquals(Arrays.asList(1L, 2L, 4L, 8L, 8L), requested);
+
+    // Only one permit of the last block is used before it lapses, so the next block is one permit.
+    Thread.sleep(1100);
+    limiter.acquire();
+    assertEquals(Long.valueOf(1), requested.get(requested.size() - 1));
+  }
+
+  @Test
+  public void testWaitingDoesNotBlockOtherThreads() throws Exception {
+    TokenStore empty =
+        new TokenStore() {
+          @Override
+          public long lease(String bucket, long permits, double permitsPerSecond) {
+            return 0;
+          }
+        };
+    // One permit every ten seconds, so both threads spend the test asleep waiting for it.
+    final TokenStoreRateLimiter limiter = new TokenStoreRateLimiter(empty, "key", 0.1, 1);
+    Thread[] waiters = new Thread[2];
+    for (int i = 0; i < waiters.length; i++) {
+      waiters[i] =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    limiter.acquire();
+                  } catch (InterruptedException e) {
+                    // expected
+                  }
+                }
+              });
+      waiters[i].start();
+    }
+    Thread.sleep(200);
+
+    // Neither thread is stuck behind the other, so both stop promptly when interrupted.
+    for (Thread waiter : waiters) {
+      waiter.interrupt();
+    }
+    for (Thread waiter : waiters) {
+      waiter.join(1000);
+      assertFalse(waiter.isAlive());
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.maps.MediumTests;
+import com.google.maps.model.AddressComponent;
+import com.google.maps.model.AddressComponentType;
+import com.google.maps.model.AddressType;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.Geometry;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.LocationType;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class GeocodingResultStoreTest {
+
+  private static GeocodingResult[] result(String address) {
+    GeocodingResult result = new GeocodingResult();
+    result.formattedAddress = address;
+    result.placeId = "place-" + address;
+    result.types = new AddressType[] {AddressType.STREET_ADDRESS};
+    AddressComponent component = new AddressComponent();
+    component.longName = "Sydney";
+    component.types = new AddressComponentType[] {AddressComponentType.LOCALITY};
+    result.addressComponents = new AddressComponent[] {component};
+    result.geometry = new Geometry();
+    result.geometry.location = new LatLng(-33.8688, 151.2093);
+    result.geometry.locationType = LocationType.ROOFTOP;
+    return new GeocodingResult[] {result};
+  }
+
+  @Test
+  public void testResultsSurviveReopening() throws Exception {
+    File directory = Files.createTempDirectory("geocoding").toFile();
+    try (GeocodingResultStore store = new GeocodingResultStore(directory)) {
+      store.put("address=sydney", result("Sydney NSW, Australia"));
+      assertNull(store.get("address=melbourne"));
+    }
+
+    try (GeocodingResultStore store = new GeocodingResultStore(directory)) {
+      GeocodingResult[] results = store.get("address=sydney");
+      assertEquals(1, results.length);
+      assertEquals("Sydney NSW, Australia", results[0].formattedAddress);
+      assertEquals("place-Sydney NSW, Australia", results[0].placeId);
+      assertArrayEquals(new AddressType[] {AddressType.STREET_ADDRESS}, results[0].types);
+      assertEquals("Sydney", results[0].addressComponents[0].longName);
+      assertNull(results[0].addressComponents[0].shortName);
+      assertEquals(LocationType.ROOFTOP, results[0].geometry.locationType);
+      assertEquals(151.2093, results[0].geometry.location.lng, 0);
+      assertNull(results[0].geometry.viewport);
+    }
+  }
+
+  @Test
+  public void testLaterResultsReplaceEarlierOnes() throws Exception {
+    File directory = Files.createTempDirectory("geocoding").toFile();
+    try (GeocodingResultStore store = new GeocodingResultStore(directory)) {
+      store.put("address=sydney", result("first"));
+      store.put("address=sydney", result("second"));
+      assertEquals("second", store.get("address=sydney")[0].formattedAddress);
+      assertEquals(1, store.size());
+    }
+  }
+
+  @Test
+  public void testIndexGrowsAndIsRebuiltIfLost() throws Exception {
+    File directory = Files.createTempDirectory("geocoding").toFile();
+    try (GeocodingResultStore store = new GeocodingResultStore(directory)) {
+      for (int i = 0; i < 5000; i++) {
+        store.put("address=" + i, result(Integer.toString(i)));
+      }
+      assertEquals(5000, store.size());
+    }
+
+    Files.delete(new File(directory, "geocoding.idx").toPath());
+    try (GeocodingResultStore store = new GeocodingResultStore(directory)) {
+      assertEquals(5000, store.size());
+      for (int i = 0; i < 5000; i += 499) {
+        assertEquals(Integer.toString(i), store.get("address=" + i)[0].formattedAddress);
+      }
+    }
+  }
+
+  @Test
+  public void testOldResultsAreIgnored() throws Exception {
+    File directory = Files.createTempDirectory("geocoding").toFile();
+    try (GeocodingResultStore store =
+        new GeocodingResultStore(directory, 1, TimeUnit.MILLISECONDS)) {
+      store.put("address=sydney", result("Sydney"));
+      Thread.sleep(5);
+      assertNull(store.get("address=sydney"));
+    }
+  }
+}
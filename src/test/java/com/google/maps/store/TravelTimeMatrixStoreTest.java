@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Google Inc. All rights reserved.
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF
+ * ANY KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.google.maps.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.maps.MediumTests;
+import com.google.maps.model.Distance;
+import com.google.maps.model.DistanceMatrix;
+import com.google.maps.model.DistanceMatrixElement;
+import com.google.maps.model.DistanceMatrixElementStatus;
+import com.google.maps.model.DistanceMatrixRow;
+import com.google.maps.model.Duration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class TravelTimeMatrixStoreTest {
+
+  private static DistanceMatrixElement element(long seconds, long meters) {
+    DistanceMatrixElement element = new DistanceMatrixElement();
+    element.status = DistanceMatrixElementStatus.OK;
+    element.duration = new Duration();
+    element.duration.inSeconds = seconds;
+    element.distance = new Distance();
+    element.distance.inMeters = meters;
+    return element;
+  }
+
+  private static DistanceMatrix matrix(DistanceMatrixElement[]... rows) {
+    DistanceMatrixRow[] matrixRows = new DistanceMatrixRow[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      matrixRows[i] = new DistanceMatrixRow();
+      matrixRows[i].elements = rows[i];
+    }
+    return new DistanceMatrix(new String[rows.length], new String[0], matrixRows);
+  }
+
+  private static File file() throws IOException {
+    return new File(Files.createTempDirectory("matrix").toFile(), "matrix.ttm");
+  }
+
+  @Test
+  public void testElementsSurviveReopening() throws Exception {
+    File file = file();
+    try (TravelTimeMatrixStore store = new TravelTimeMatrixStore(file, 3, 4)) {
+      DistanceMatrixElement noRoute = new DistanceMatrixElement();
+      noRoute.status = DistanceMatrixElementStatus.ZERO_RESULTS;
+      DistanceMatrixElement inTraffic = element(600, 9000);
+      inTraffic.durationInTraffic = new Duration();
+      inTraffic.durationInTraffic.inSeconds = 720;
+      store.put(1, 2, matrix(new DistanceMatrixElement[] {inTraffic, noRoute}));
+    }
+
+    try (TravelTimeMatrixStore store = new TravelTimeMatrixStore(file, 3, 4)) {
+      assertEquals(600, store.getDurationSeconds(1, 2));
+      assertEquals(9000, store.getDistanceMeters(1, 2));
+      assertEquals(720, store.getDurationInTrafficSeconds(1, 2));
+      assertEquals(DistanceMatrixElementStatus.OK, store.getStatus(1, 2));
+      assertEquals(DistanceMatrixElementStatus.ZERO_RESULTS, store.getStatus(1, 3));
+      assertEquals(-1, store.getDurationSeconds(1, 3));
+      assertTrue(store.isFetched(1, 3));
+      assertFalse(store.isFetched(1, 1));
+      assertNull(store.getStatus(0, 0));
+    }
+  }
+
+  @Test
+  public void testBlocksAreFilledOnceEveryElementIsStored() throws Exception {
+    try (TravelTimeMatrixStore store = new TravelTimeMatrixStore(file(), 4, 4)) {
+      assertFalse(store.isFilled(0, 2, 0, 2));
+      store.put(
+          0,
+          0,
+          matrix(
+              new DistanceMatrixElement[] {element(1, 1), element(2, 2)},
+              new DistanceMatrixElement[] {element(3, 3)}));
+      assertFalse(store.isFilled(0, 2, 0, 2));
+      store.put(1, 1, matrix(new DistanceMatrixElement[] {element(4, 4)}));
+      assertTrue(store.isFilled(0, 2, 0, 2));
+      assertFalse(store.isFilled(0, 2, 0, 3));
+      assertEquals(4, store.getDistanceMeters(1, 1));
+    }
+  }
+
+  @Test
+  public void testStatusesReachTheFileWhenFlushed() throws Exception {
+    File file = file();
+    try (TravelTimeMatrixStore store = new TravelTimeMatrixStore(file, 2, 2)) {
+      store.put(1, 0, matrix(new DistanceMatrixElement[] {element(5, 50)}));
+      assertTrue(store.isFetched(1, 0));
+      // The status byte of (1, 0) follows a 32 byte header and three columns of four ints.
+      int statusOffset = 32 + 3 * 4 * 4 + 2;
+      assertEquals(0, Files.readAllBytes(file.toPath())[statusOffset]);
+
+      store.flush();
+      assertEquals(1, Files.readAllBytes(file.toPath())[statusOffset]);
+    }
+  }
+
+  @Test
+  public void testRefusesAMatrixOfAnotherSize() throws Exception {
+    File file = file();
+    new TravelTimeMatrixStore(file, 3, 4).close();
+    try {
+      new TravelTimeMatrixStore(file, 4, 3);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("3 x 4"));
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testRejectsElementsOutsideTheMatrix() throws Exception {
+    try (TravelTimeMatrixStore store = new TravelTimeMatrixStore(file(), 2, 2)) {
+      store.put(1, 1, matrix(new DistanceMatrixElement[] {element(1, 1), element(2, 2)}));
+    }
+  }
+}